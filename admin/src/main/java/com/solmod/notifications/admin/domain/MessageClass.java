@@ -1,7 +1,33 @@
 package com.solmod.notifications.admin.domain;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 public enum MessageClass {
     GEN, // Generic, sent to everyone, marketing, etc
     TEAM, // Regarding a team or team member
     SELF; //
-}
\ No newline at end of file
+
+    /**
+     * Parse a comma-delimited list of message classes, such as a recipient's supported classes, ignoring case and
+     * whitespace. Entries naming no class are ignored
+     *
+     * @param commaDelimited {@code String}, may be null
+     * @return {@link EnumSet} of the classes listed
+     */
+    public static Set<MessageClass> parseAll(String commaDelimited) {
+        EnumSet<MessageClass> result = EnumSet.noneOf(MessageClass.class);
+        if (commaDelimited == null) {
+            return result;
+        }
+
+        for (String entry : commaDelimited.split(",")) {
+            for (MessageClass messageClass : values()) {
+                if (messageClass.name().equalsIgnoreCase(entry.strip())) {
+                    result.add(messageClass);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,12 @@
+package com.solmod.notifications.admin.domain;
+
+/**
+ * Published whenever NotificationGroups, or the Themes and MessageTemplates within them, are changed, so that
+ * anything holding a copy of the notification configuration knows to reload it
+ *
+ * @param tenantId {@code Long} tenant of the changed NotificationGroup
+ * @param subject {@code String} subject of the changed NotificationGroup
+ * @param verb {@code String} verb of the changed NotificationGroup
+ */
+public record NotificationGroupsChangedEvent(Long tenantId, String subject, String verb) {
+}
@@ -0,0 +1,10 @@
+package com.solmod.notifications.admin.domain;
+
+/**
+ * A recipient's address paired with a sender, by which the recipient's delivery preferences are kept
+ *
+ * @param recipientAddress {@code String}
+ * @param sender {@code String} naming the send protocol
+ */
+public record RecipientSender(String recipientAddress, String sender) {
+}
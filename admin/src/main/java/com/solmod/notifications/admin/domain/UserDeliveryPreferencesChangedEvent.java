@@ -0,0 +1,11 @@
+package com.solmod.notifications.admin.domain;
+
+/**
+ * Published whenever a recipient's delivery preferences for a sender are saved or deleted, so that anything holding a
+ * copy of them knows to drop it
+ *
+ * @param recipientAddress {@code String} recipient of the changed preferences
+ * @param sender {@code String} sender of the changed preferences
+ */
+public record UserDeliveryPreferencesChangedEvent(String recipientAddress, String sender) {
+}
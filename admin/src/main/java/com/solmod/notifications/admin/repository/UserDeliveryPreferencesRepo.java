@@ -5,11 +5,12 @@ import jakarta.validation.constraints.NotNull;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 @Repository
-public interface UserDeliveryPreferencesRepo extends CrudRepository<UserDeliveryPreferences, UUID> {
+public interface UserDeliveryPreferencesRepo extends CrudRepository<UserDeliveryPreferences, Long> {
 
     List<UserDeliveryPreferences> findByUserId(@NotNull UUID userId);
 
@@ -21,4 +22,14 @@ public interface UserDeliveryPreferencesRepo extends CrudRepository<UserDelivery
      * @return {@link UserDeliveryPreferences}
      */
     UserDeliveryPreferences findByRecipientAddressAndSender(@NotNull String recipientAddress, @NotNull String sender);
+
+    /**
+     * Preferences of any of the recipients for any of the senders; a superset of those for particular pairs of the two
+     *
+     * @param recipientAddresses Collection of {@code String}
+     * @param senders Collection of {@code String}
+     * @return List of {@link UserDeliveryPreferences}
+     */
+    List<UserDeliveryPreferences> findByRecipientAddressInAndSenderIn(@NotNull Collection<String> recipientAddresses,
+                                                                      @NotNull Collection<String> senders);
 }
@@ -1,30 +1,74 @@
 package com.solmod.notifications.admin.service;
 
+import com.solmod.notifications.admin.domain.NotificationGroupsChangedEvent;
 import com.solmod.notifications.admin.repository.NotificationGroupRepo;
 import com.solmod.notifications.admin.repository.model.NotificationGroup;
 import com.solmod.notifications.admin.web.model.DTOFactory;
 import com.solmod.notifications.admin.web.model.MessageTemplateGroupDTO;
 import jakarta.validation.constraints.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 public class NotificationAccessService {
 
     NotificationGroupRepo groupRepo;
+    ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public NotificationAccessService(NotificationGroupRepo groupRepo) {
+    public NotificationAccessService(NotificationGroupRepo groupRepo, ApplicationEventPublisher eventPublisher) {
         this.groupRepo = groupRepo;
+        this.eventPublisher = eventPublisher;
     }
 
+    /**
+     * Get the templates of the NotificationGroup for the given tenant, subject and verb
+     *
+     * @param tenantId {@code Long}
+     * @param subject {@code String}
+     * @param verb {@code String}
+     * @return {@link MessageTemplateGroupDTO} or null if there is no such NotificationGroup
+     */
     @Transactional
     public MessageTemplateGroupDTO getNotificationTemplateGroup(Long tenantId, @NotNull String subject, @NotNull String verb) {
         NotificationGroup templateGroup = groupRepo.findByTenantIdAndSubjectAndVerb(tenantId, subject, verb);
 
-        return DTOFactory.fromEntity(templateGroup);
+        return templateGroup == null ? null : DTOFactory.fromEntity(templateGroup);
     }
 
-}
+    /**
+     * Get the templates of every NotificationGroup, such as to build a routing index of all configured groups
+     *
+     * @return List of {@link MessageTemplateGroupDTO}, one per NotificationGroup
+     */
+    @Transactional(readOnly = true)
+    public List<MessageTemplateGroupDTO> getAllNotificationTemplateGroups() {
+        List<MessageTemplateGroupDTO> result = new ArrayList<>();
+        for (NotificationGroup group : groupRepo.findAll()) {
+            result.add(DTOFactory.fromEntity(group));
+        }
+
+        return result;
+    }
 
+    /**
+     * Save the NotificationGroup, along with its Themes and MessageTemplates, announcing the change with a
+     * {@link NotificationGroupsChangedEvent}
+     *
+     * @param group {@link NotificationGroup}
+     * @return {@link NotificationGroup} as saved
+     */
+    @Transactional
+    public NotificationGroup saveNotificationGroup(@NotNull NotificationGroup group) {
+        NotificationGroup saved = groupRepo.save(group);
+        eventPublisher.publishEvent(
+                new NotificationGroupsChangedEvent(saved.getTenantId(), saved.getSubject(), saved.getVerb()));
+
+        return saved;
+    }
+}
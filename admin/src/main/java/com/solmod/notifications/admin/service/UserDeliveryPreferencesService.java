@@ -1,15 +1,24 @@
 package com.solmod.notifications.admin.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solmod.notifications.admin.domain.RecipientSender;
+import com.solmod.notifications.admin.domain.UserDeliveryPreferencesChangedEvent;
 import com.solmod.notifications.admin.repository.UserDeliveryPreferencesRepo;
 import com.solmod.notifications.admin.repository.model.UserDeliveryPreferences;
 import com.solmod.notifications.admin.web.model.UserDeliveryPreferencesDTO;
 import jakarta.validation.constraints.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -18,11 +27,14 @@ public class UserDeliveryPreferencesService {
 
     UserDeliveryPreferencesRepo repo;
     ObjectMapper mapper;
+    ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public UserDeliveryPreferencesService(UserDeliveryPreferencesRepo repo, ObjectMapper mapper) {
+    public UserDeliveryPreferencesService(UserDeliveryPreferencesRepo repo, ObjectMapper mapper,
+                                          ApplicationEventPublisher eventPublisher) {
         this.repo = repo;
         this.mapper = mapper;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional
@@ -38,5 +50,72 @@ public class UserDeliveryPreferencesService {
 
         return mapper.convertValue(preferences, UserDeliveryPreferencesDTO.class);
     }
-}
 
+    /**
+     * Get the preferences for each of the given recipient/sender pairs, in one query
+     *
+     * @param recipientSenders Collection of {@link RecipientSender}
+     * @return Map of {@link RecipientSender} to {@link UserDeliveryPreferencesDTO}, without those having no preferences
+     */
+    @Transactional(readOnly = true)
+    public Map<RecipientSender, UserDeliveryPreferencesDTO> getDeliveryPreferences(
+            @NotNull Collection<RecipientSender> recipientSenders) {
+        Map<RecipientSender, UserDeliveryPreferencesDTO> result = new HashMap<>();
+        if (recipientSenders.isEmpty()) {
+            return result;
+        }
+
+        Set<RecipientSender> wanted = new HashSet<>(recipientSenders);
+        Set<String> recipients = new HashSet<>();
+        Set<String> senders = new HashSet<>();
+        for (RecipientSender recipientSender : wanted) {
+            recipients.add(recipientSender.recipientAddress());
+            senders.add(recipientSender.sender());
+        }
+
+        for (UserDeliveryPreferences preferences : repo.findByRecipientAddressInAndSenderIn(recipients, senders)) {
+            RecipientSender key = new RecipientSender(preferences.getRecipientAddress(), preferences.getSender());
+            if (wanted.contains(key)) {
+                result.putIfAbsent(key, mapper.convertValue(preferences, UserDeliveryPreferencesDTO.class));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Save the recipient's preferences for a sender, announcing the change with a
+     * {@link UserDeliveryPreferencesChangedEvent}. Should the recipient or sender of saved preferences change, the
+     * change is announced for the ones they had before as well
+     *
+     * @param preferences {@link UserDeliveryPreferences}
+     * @return {@link UserDeliveryPreferences} as saved
+     */
+    @Transactional
+    public UserDeliveryPreferences saveDeliveryPreferences(@NotNull UserDeliveryPreferences preferences) {
+        UserDeliveryPreferences previous = preferences.getId() == null ? null : repo.findById(preferences.getId()).orElse(null);
+        UserDeliveryPreferences saved = repo.save(preferences);
+
+        eventPublisher.publishEvent(
+                new UserDeliveryPreferencesChangedEvent(saved.getRecipientAddress(), saved.getSender()));
+        if (previous != null && (!Objects.equals(previous.getRecipientAddress(), saved.getRecipientAddress())
+                || !Objects.equals(previous.getSender(), saved.getSender()))) {
+            eventPublisher.publishEvent(
+                    new UserDeliveryPreferencesChangedEvent(previous.getRecipientAddress(), previous.getSender()));
+        }
+
+        return saved;
+    }
+
+    /**
+     * Delete the recipient's preferences for a sender, announcing the change with a
+     * {@link UserDeliveryPreferencesChangedEvent}
+     *
+     * @param preferences {@link UserDeliveryPreferences}
+     */
+    @Transactional
+    public void deleteDeliveryPreferences(@NotNull UserDeliveryPreferences preferences) {
+        repo.delete(preferences);
+        eventPublisher.publishEvent(
+                new UserDeliveryPreferencesChangedEvent(preferences.getRecipientAddress(), preferences.getSender()));
+    }
+}
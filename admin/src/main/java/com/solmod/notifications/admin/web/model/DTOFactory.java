@@ -31,6 +31,9 @@ public class DTOFactory {
             }
         }
 
+        result.setTenantId(entity.getTenantId());
+        result.setSubject(entity.getSubject());
+        result.setVerb(entity.getVerb());
         result.setMessageTemplates(messageTemplates);
         return result;
     }
@@ -44,7 +47,7 @@ public class DTOFactory {
         templateDTO.setSender(templateEntity.getSender());
         templateDTO.setMinWaitForRetry(templateEntity.getMinWaitForRetry());
         templateDTO.setMaxRetries(templateEntity.getMaxRetries());
-        templateDTO.setMessageClass(templateEntity.getMessageClass().name());
+        templateDTO.setMessageClass(templateEntity.getMessageClass());
         // Limit to the lowest value between Theme and Template
 
         Integer resultMaxSend = null;
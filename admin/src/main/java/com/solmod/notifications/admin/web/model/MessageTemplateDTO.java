@@ -1,5 +1,6 @@
 package com.solmod.notifications.admin.web.model;
 
+import com.solmod.notifications.admin.domain.MessageClass;
 import lombok.Data;
 
 @Data
@@ -16,5 +17,5 @@ public class MessageTemplateDTO {
     // Resends control how many times a message could possibly be delivered in response to a repeat SolBus event
     private Integer maxSend;
     private Integer resendInterval; // in minutes
-    private String messageClass;
+    private MessageClass messageClass;
 }
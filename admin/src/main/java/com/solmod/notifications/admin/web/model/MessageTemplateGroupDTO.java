@@ -10,6 +10,9 @@ import java.util.Set;
 @Setter
 public class MessageTemplateGroupDTO implements Serializable {
 
+    private Long tenantId;
+    private String subject;
+    private String verb;
     // Collection of MessageTemplates is keyed on rule-set
     private Set<MessageTemplateDTO> messageTemplates;
 }
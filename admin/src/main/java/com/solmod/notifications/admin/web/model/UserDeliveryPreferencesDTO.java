@@ -1,8 +1,16 @@
 package com.solmod.notifications.admin.web.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.solmod.notifications.admin.domain.MessageClass;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.UUID;
 
 @Data
@@ -16,4 +24,24 @@ public class UserDeliveryPreferencesDTO {
     private String timezone;
     private String recipientAddress;
     private Integer resendInterval; // In minutes
+
+    // supportedMessageClasses, parsed as they're set so that checking a class is a bit test
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Set<MessageClass> permittedMessageClasses = EnumSet.noneOf(MessageClass.class);
+
+    public void setSupportedMessageClasses(String supportedMessageClasses) {
+        this.supportedMessageClasses = supportedMessageClasses;
+        this.permittedMessageClasses = MessageClass.parseAll(supportedMessageClasses);
+    }
+
+    /**
+     * @param messageClass {@link MessageClass}, may be null
+     * @return true if these preferences support messages of the class
+     */
+    public boolean permits(MessageClass messageClass) {
+        return messageClass != null && permittedMessageClasses.contains(messageClass);
+    }
 }
@@ -0,0 +1,82 @@
+-- Admin schema as previously generated by Hibernate (ddl-auto). Tables are only created when absent, so databases
+-- created before migrations were introduced are brought under management as they stand.
+
+CREATE TABLE IF NOT EXISTS notification_groups_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO notification_groups_seq SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM notification_groups_seq);
+
+CREATE TABLE IF NOT EXISTS notification_groups
+(
+    id          BIGINT NOT NULL,
+    tenant_id   BIGINT,
+    subject     VARCHAR(255),
+    verb        VARCHAR(255),
+    description VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS message_themes_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO message_themes_seq SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM message_themes_seq);
+
+CREATE TABLE IF NOT EXISTS message_themes
+(
+    id                    BIGINT NOT NULL,
+    notification_group_id BIGINT,
+    description           VARCHAR(255),
+    max_send              INTEGER,
+    resend_interval       INTEGER,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_message_themes_notification_group FOREIGN KEY (notification_group_id) REFERENCES notification_groups (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS message_theme_criteria_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO message_theme_criteria_seq SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM message_theme_criteria_seq);
+
+CREATE TABLE IF NOT EXISTS message_theme_criteria
+(
+    id               BIGINT NOT NULL,
+    message_theme_id BIGINT,
+    `meta-key`       VARCHAR(255),
+    `meta-key-value` VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_message_theme_criteria_theme FOREIGN KEY (message_theme_id) REFERENCES message_themes (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS basic_message_templates_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO basic_message_templates_seq SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM basic_message_templates_seq);
+
+CREATE TABLE IF NOT EXISTS basic_message_templates
+(
+    id                            BIGINT NOT NULL,
+    template_type                 CHAR(1),
+    message_theme_id              BIGINT,
+    sender                        VARCHAR(255),
+    recipient_address_context_key VARCHAR(255),
+    message_body_content_key      VARCHAR(255),
+    message_subject_content_key   VARCHAR(255),
+    node_title_content_key        VARCHAR(255),
+    timeline_node_type            ENUM ('TIMELINE','ALERT','COMMUNITY'),
+    max_retries                   INTEGER,
+    min_wait_for_retry            INTEGER,
+    max_send                      INTEGER,
+    resend_interval               INTEGER,
+    message_class                 ENUM ('GEN','TEAM','SELF'),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_basic_message_templates_theme FOREIGN KEY (message_theme_id) REFERENCES message_themes (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS user_delivery_preferences_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO user_delivery_preferences_seq SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM user_delivery_preferences_seq);
+
+CREATE TABLE IF NOT EXISTS user_delivery_preferences
+(
+    id                        BIGINT NOT NULL,
+    user_id                   BINARY(16),
+    recipient_address         VARCHAR(255),
+    sender                    VARCHAR(255),
+    supported_message_classes VARCHAR(255),
+    send_window_start         INTEGER,
+    send_window_end           INTEGER,
+    timezone                  VARCHAR(255),
+    resend_interval           INTEGER,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
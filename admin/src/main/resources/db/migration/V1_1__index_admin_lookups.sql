@@ -0,0 +1,8 @@
+-- NotificationGroupRepo.findByTenantIdAndSubjectAndVerb: a group is resolved by its route, so there is only ever one
+CREATE UNIQUE INDEX uk_notification_groups_route ON notification_groups (tenant_id, subject, verb);
+
+-- UserDeliveryPreferencesRepo.findByRecipientAddressAndSender
+CREATE INDEX idx_user_delivery_preferences_recipient_sender ON user_delivery_preferences (recipient_address, sender);
+
+-- UserDeliveryPreferencesRepo.findByUserId
+CREATE INDEX idx_user_delivery_preferences_user ON user_delivery_preferences (user_id);
@@ -0,0 +1,34 @@
+package com.solmod.notifications.admin.domain;
+
+import com.solmod.notifications.admin.web.model.UserDeliveryPreferencesDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageClassTest {
+
+    @Test
+    void parseAll_CaseAndWhitespaceIgnored() {
+        assertEquals(EnumSet.of(MessageClass.TEAM, MessageClass.SELF), MessageClass.parseAll(" team,Self "));
+    }
+
+    @Test
+    void parseAll_UnknownAndPartialNamesIgnored() {
+        assertEquals(EnumSet.of(MessageClass.GEN), MessageClass.parseAll("GEN,TEAMS,,SEL"));
+        assertEquals(EnumSet.noneOf(MessageClass.class), MessageClass.parseAll(null));
+    }
+
+    @Test
+    void permits_ParsedAsSupportedClassesSet() {
+        UserDeliveryPreferencesDTO prefs = new UserDeliveryPreferencesDTO();
+        prefs.setSupportedMessageClasses("TEAMS,SELF");
+
+        assertTrue(prefs.permits(MessageClass.SELF));
+        assertFalse(prefs.permits(MessageClass.TEAM));
+        assertFalse(prefs.permits(null));
+    }
+}
@@ -69,7 +69,7 @@ class NotificationAccessServiceTest extends TestCommons {
         assertEquals("messagebodycontentkey", resultTemplateDTO.getContentKeySet().getContentKeys().get("messageBodyContentKey"));
         assertEquals(15, resultTemplateDTO.getMaxRetries());
         assertEquals(600, resultTemplateDTO.getMinWaitForRetry());
-        assertEquals(MessageClass.GEN.name(), resultTemplateDTO.getMessageClass());
+        assertEquals(MessageClass.GEN, resultTemplateDTO.getMessageClass());
         assertEquals(mockTemplate.getMinWaitForRetry(), resultTemplateDTO.getMinWaitForRetry());
         assertEquals(mockTemplate.getRecipientAddressContextKey(), resultTemplateDTO.getRecipientAddressContextKey());
         assertEquals(mockTemplate.getSender(), resultTemplateDTO.getSender());
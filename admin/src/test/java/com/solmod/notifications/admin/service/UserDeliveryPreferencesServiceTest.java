@@ -1,29 +1,38 @@
 package com.solmod.notifications.admin.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solmod.notifications.admin.domain.RecipientSender;
+import com.solmod.notifications.admin.domain.UserDeliveryPreferencesChangedEvent;
 import com.solmod.notifications.admin.repository.UserDeliveryPreferencesRepo;
 import com.solmod.notifications.admin.repository.model.UserDeliveryPreferences;
 import com.solmod.notifications.admin.web.model.UserDeliveryPreferencesDTO;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class UserDeliveryPreferencesServiceTest extends TestCommons {
 
     UserDeliveryPreferencesService service;
     private UserDeliveryPreferencesRepo repo;
+    private ApplicationEventPublisher eventPublisher;
 
     @BeforeEach
     void setup() {
         repo = mock(UserDeliveryPreferencesRepo.class);
-        service = new UserDeliveryPreferencesService(repo, new ObjectMapper());
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        service = new UserDeliveryPreferencesService(repo, new ObjectMapper(), eventPublisher);
     }
 
     @Test
@@ -53,4 +62,58 @@ class UserDeliveryPreferencesServiceTest extends TestCommons {
             assertNotNull(curPref.getTimezone());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void getDeliveryPreferences_OnlyRequestedPairsReturned() {
+        // Arrange
+        UUID userId = UUID.randomUUID();
+        when(repo.findByRecipientAddressInAndSenderIn(
+                Set.of("someone@somewhere.com", "+8015551212", "nobody@somewhere.com"), Set.of("email", "sms")))
+                .thenReturn(List.of(
+                        buildUserDeliveryPreferences("someone@somewhere.com", "email", 10, userId),
+                        buildUserDeliveryPreferences("someone@somewhere.com", "sms", 10, userId),
+                        buildUserDeliveryPreferences("+8015551212", "sms", 10, userId)));
+
+        // Act
+        Map<RecipientSender, UserDeliveryPreferencesDTO> result = service.getDeliveryPreferences(List.of(
+                new RecipientSender("someone@somewhere.com", "email"),
+                new RecipientSender("+8015551212", "sms"),
+                new RecipientSender("nobody@somewhere.com", "email")));
+
+        // Assert
+        assertEquals(Set.of(new RecipientSender("someone@somewhere.com", "email"), new RecipientSender("+8015551212", "sms")),
+                result.keySet());
+    }
+
+    @Test
+    void saveDeliveryPreferences_ChangeAnnounced() {
+        // Arrange
+        UserDeliveryPreferences prefs = buildUserDeliveryPreferences("someone@somewhere.com", "email", 10, UUID.randomUUID());
+        when(repo.save(prefs)).thenReturn(prefs);
+
+        // Act
+        service.saveDeliveryPreferences(prefs);
+
+        // Assert
+        verify(eventPublisher).publishEvent(new UserDeliveryPreferencesChangedEvent("someone@somewhere.com", "email"));
+    }
+
+    @Test
+    void saveDeliveryPreferences_PreviousRecipientAnnounced() {
+        // Arrange
+        UUID userId = UUID.randomUUID();
+        UserDeliveryPreferences previous = buildUserDeliveryPreferences("someone@somewhere.com", "email", 10, userId);
+        previous.setId(5L);
+        UserDeliveryPreferences prefs = buildUserDeliveryPreferences("someone.else@somewhere.com", "email", 10, userId);
+        prefs.setId(5L);
+        when(repo.findById(5L)).thenReturn(Optional.of(previous));
+        when(repo.save(prefs)).thenReturn(prefs);
+
+        // Act
+        service.saveDeliveryPreferences(prefs);
+
+        // Assert
+        verify(eventPublisher).publishEvent(new UserDeliveryPreferencesChangedEvent("someone.else@somewhere.com", "email"));
+        verify(eventPublisher).publishEvent(new UserDeliveryPreferencesChangedEvent("someone@somewhere.com", "email"));
+    }
+}
@@ -1,8 +1,10 @@
 package com.solmod.notifications.dispatcher;
 
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = "com.solmod.notifications")
+@EnableScheduling
 public class DispatcherApplication {
     public static void main(String[] args) {
 
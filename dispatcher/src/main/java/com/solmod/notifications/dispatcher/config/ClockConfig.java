@@ -0,0 +1,19 @@
+package com.solmod.notifications.dispatcher.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+@Configuration
+public class ClockConfig {
+
+    /**
+     * The time against which time-based delivery rules are evaluated. Its zone is that of recipients who have not
+     * specified one.
+     */
+    @Bean
+    Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+}
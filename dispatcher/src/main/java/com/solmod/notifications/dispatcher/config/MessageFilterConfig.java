@@ -7,20 +7,18 @@ import com.solmod.notifications.dispatcher.filter.UserPreferencesFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
 @Configuration
 public class MessageFilterConfig {
 
+    /**
+     * The filter chain, in the order filters run: cheapest first, so templates rejected in memory never cost a query
+     */
     @Bean
-    Set<MessageDeliveryFilter> deliveryFilters(ThemeCriteriaFilter themeCriteriaFilter,
-                                               MessageDeliveryRulesFilter messageDeliveryRulesFilter,
-                                               UserPreferencesFilter userPreferencesFilter) {
-        HashSet<MessageDeliveryFilter> messageDeliveryFilters = new HashSet<>();
-        messageDeliveryFilters.add(themeCriteriaFilter);
-        messageDeliveryFilters.add(messageDeliveryRulesFilter);
-        messageDeliveryFilters.add(userPreferencesFilter);
-        return messageDeliveryFilters;
+    List<MessageDeliveryFilter> deliveryFilters(ThemeCriteriaFilter themeCriteriaFilter,
+                                                MessageDeliveryRulesFilter messageDeliveryRulesFilter,
+                                                UserPreferencesFilter userPreferencesFilter) {
+        return List.of(themeCriteriaFilter, messageDeliveryRulesFilter, userPreferencesFilter);
     }
 }
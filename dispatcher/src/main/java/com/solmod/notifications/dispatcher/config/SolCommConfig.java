@@ -0,0 +1,28 @@
+package com.solmod.notifications.dispatcher.config;
+
+import com.solmod.notifications.dispatcher.service.SolCommTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.CompletableFuture;
+
+@Configuration
+public class SolCommConfig {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Stand-in for a binder-backed transport, for running without one: every batch is rejected, so communications
+     * written to the outbox stay there, unpublished, until a transport is configured
+     */
+    @Bean
+    @ConditionalOnMissingBean(SolCommTransport.class)
+    SolCommTransport solCommTransport() {
+        log.warn("No SolComm transport configured; communications will be kept in the outbox, unpublished");
+        return communications -> CompletableFuture.failedFuture(
+                new IllegalStateException("No SolComm transport configured"));
+    }
+}
@@ -0,0 +1,13 @@
+package com.solmod.notifications.dispatcher.domain;
+
+import java.util.List;
+
+/**
+ * Published with each batch of deliveries whose recipients' send windows have opened. Some may no longer be pending
+ * their send window, or be released by another dispatcher too; those still pending are claimed, and moved on, once.
+ * Should the dispatcher restart before then, they are released again
+ *
+ * @param deliveryIds List of the ids of the released deliveries
+ */
+public record DeferredDeliveriesReleasedEvent(List<Long> deliveryIds) {
+}
@@ -0,0 +1,13 @@
+package com.solmod.notifications.dispatcher.domain;
+
+import java.time.Instant;
+
+/**
+ * Published when a delivery is recorded as pending its recipient's send window, so that it is released once the window
+ * opens
+ *
+ * @param deliveryId {@code Long} id of the deferred delivery
+ * @param sendAfter {@link Instant} the recipient's send window opens
+ */
+public record DeliveryDeferredEvent(Long deliveryId, Instant sendAfter) {
+}
@@ -3,9 +3,9 @@ package com.solmod.notifications.dispatcher.domain;
 import com.solmod.notifications.admin.web.model.MessageTemplateDTO;
 import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
 import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
+import com.solmod.notifications.dispatcher.service.domain.DeliverySummary;
 import lombok.Getter;
 import lombok.Setter;
-import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,7 +18,29 @@ import java.util.Objects;
 @Setter
 public class MessageTemplate extends MessageTemplateDTO {
 
-    private Logger log = LoggerFactory.getLogger(MessageTemplate.class);
+    private static final Logger log = LoggerFactory.getLogger(MessageTemplate.class);
+
+    /**
+     * Copy the given template's fields into a new dispatch template. Criteria and content keys are shared with the
+     * DTO rather than copied, so the DTO should not be modified afterwards
+     *
+     * @param dto {@link MessageTemplateDTO}
+     * @return {@link MessageTemplate}
+     */
+    public static MessageTemplate fromDTO(MessageTemplateDTO dto) {
+        MessageTemplate result = new MessageTemplate();
+        result.setDeliveryCriteria(dto.getDeliveryCriteria());
+        result.setMessageTemplateID(dto.getMessageTemplateID());
+        result.setSender(dto.getSender());
+        result.setRecipientAddressContextKey(dto.getRecipientAddressContextKey());
+        result.setContentKeySet(dto.getContentKeySet());
+        result.setMaxRetries(dto.getMaxRetries());
+        result.setMinWaitForRetry(dto.getMinWaitForRetry());
+        result.setMaxSend(dto.getMaxSend());
+        result.setResendInterval(dto.getResendInterval());
+        result.setMessageClass(dto.getMessageClass());
+        return result;
+    }
 
     /**
      * True indicates there are send rules to validate
@@ -36,24 +58,32 @@ public class MessageTemplate extends MessageTemplateDTO {
      * @return boolean
      */
     public DeliveryPermission applySendRules(List<MessageDelivery> allDuplicateDeliveries) {
+        return applySendRules(DeliverySummary.of(allDuplicateDeliveries));
+    }
+
+    /**
+     * Determine if the rules of this template are met, given the summary of matching deliveries made before
+     *
+     * @param deliveries {@link DeliverySummary} of all delivered and any pending deliveries
+     * @return {@link DeliveryPermission}
+     */
+    public DeliveryPermission applySendRules(DeliverySummary deliveries) {
 
         // If there've been no previous duplicate deliveries, call it good
-        if (allDuplicateDeliveries == null || allDuplicateDeliveries.isEmpty()) {
+        if (deliveries == null || !deliveries.hasDeliveries()) {
             return DeliveryPermission.SEND_NOW_PERMISSION;
         }
 
         // Compare for deliveries numbering fewer than maxSend, if there is a maxSend
-        if (hasMaxSendRules() && allDuplicateDeliveries.size() >= getMaxSend()) {
+        if (hasMaxSendRules() && deliveries.deliveryCount() >= getMaxSend()) {
             return new DeliveryPermission(DeliveryPermission.Verdict.SEND_NEVER,
-                    String.format("Recipient received the max duplicates (%s), per template rules", allDuplicateDeliveries.size()));
+                    String.format("Recipient received the max duplicates (%s), per template rules", deliveries.deliveryCount()));
         }
 
         // Ensure not sending duplicate until after resendInterval is met
-        if (hasResendInterval()) {
-            MessageDelivery latestDelivery = allDuplicateDeliveries.get(0); // First in list is latest
+        if (hasResendInterval() && deliveries.lastDeliveryDate() != null) {
             // Compare the latest delivery as being at least earlier than the resendInterval
-            Date latestDeliveryDate = ObjectUtils.defaultIfNull(latestDelivery.getDateCompleted(), latestDelivery.getDateCreated());
-            Date earliestValidSend = DateUtils.addMinutes(latestDeliveryDate, getResendInterval());
+            Date earliestValidSend = DateUtils.addMinutes(deliveries.lastDeliveryDate(), getResendInterval());
             Date now = new Date();
 
             if (!earliestValidSend.before(now)) {
@@ -83,6 +113,6 @@ public class MessageTemplate extends MessageTemplateDTO {
 
     @Override
     public int hashCode() {
-        return super.hashCode();
+        return Objects.hashCode(getMessageTemplateID());
     }
 }
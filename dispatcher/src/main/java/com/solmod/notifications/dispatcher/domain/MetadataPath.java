@@ -0,0 +1,114 @@
+package com.solmod.notifications.dispatcher.domain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Resolves a single flattened metadata key, such as {@code parent.children[0].property} or
+ * {@code parent["dotted.name"]}, against a JSON tree, yielding what {@code JsonFlattener.flattenAsMap} would have held
+ * for that key without flattening the rest of the tree.
+ */
+final class MetadataPath {
+
+    private MetadataPath() {
+    }
+
+    /**
+     * @param root {@link JsonNode} tree of the message data
+     * @param key flattened metadata key
+     * @return The leaf value at the key: String, Number, Boolean, an empty Map or List for an empty object or array,
+     * or null when the key is absent, holds null, or holds a non-empty object or array
+     */
+    static Object resolve(JsonNode root, String key) {
+        List<Object> segments = segments(key);
+        if (segments == null) {
+            return null;
+        }
+
+        JsonNode node = root;
+        for (int i = 0; node != null && i < segments.size(); i++) {
+            Object segment = segments.get(i);
+            node = segment instanceof Integer index
+                    ? (node.isArray() ? node.get(index) : null)
+                    : (node.isObject() ? node.get((String) segment) : null);
+        }
+
+        return toValue(node);
+    }
+
+    /**
+     * Split a flattened metadata key into the steps from the root to its value
+     *
+     * @param key flattened metadata key
+     * @return List of String field names and Integer array indexes, or null if the key is malformed
+     */
+    static List<Object> segments(String key) {
+        List<Object> result = new ArrayList<>();
+        int i = 0;
+        int length = key.length();
+        while (i < length) {
+            char c = key.charAt(i);
+            if (c == '.') {
+                i++;
+            } else if (c == '[' && i + 1 < length && key.charAt(i + 1) == '"') {
+                // Quoted name, as the flattener writes names holding dots or brackets; quotes within are escaped
+                StringBuilder name = new StringBuilder();
+                i += 2;
+                while (i < length && key.charAt(i) != '"') {
+                    if (key.charAt(i) == '\\' && i + 1 < length) {
+                        i++;
+                    }
+                    name.append(key.charAt(i++));
+                }
+                result.add(name.toString());
+                i += 2; // closing quote and bracket
+            } else if (c == '[') {
+                int close = key.indexOf(']', i);
+                if (close < 0) {
+                    return null;
+                }
+                try {
+                    result.add(Integer.parseInt(key, i + 1, close, 10));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                i = close + 1;
+            } else {
+                int end = i;
+                while (end < length && key.charAt(end) != '.' && key.charAt(end) != '[') {
+                    end++;
+                }
+                result.add(key.substring(i, end));
+                i = end;
+            }
+        }
+
+        return result;
+    }
+
+    private static Object toValue(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        if (node.isTextual()) {
+            return node.textValue();
+        }
+        if (node.isNumber()) {
+            return node.numberValue();
+        }
+        if (node.isBoolean()) {
+            return node.booleanValue();
+        }
+        if (node.isObject() && node.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        if (node.isArray() && node.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return node.isValueNode() ? node.asText() : null;
+    }
+}
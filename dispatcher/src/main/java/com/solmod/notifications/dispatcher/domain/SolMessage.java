@@ -1,19 +1,27 @@
 package com.solmod.notifications.dispatcher.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.wnameless.json.flattener.JsonFlattener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * On the SolBus, all messages follow this format
+ * Metadata, the data addressed by flattened keys such as {@code parent.child.property}, is resolved one key at a time
+ * on demand via {@link #getMetadata(String)}, each resolved key being remembered. Flattening all the data at once is
+ * left to {@link #getMetadata()}, for when every key is wanted.
  */
 public class SolMessage {
     public static final ObjectMapper objectMapper = new ObjectMapper();
     public static final Logger log = LoggerFactory.getLogger(SolMessage.class);
+    // Stands in for a key resolved to null, which the concurrent map of resolved keys can't hold
+    private static final Object ABSENT = new Object();
 
     private String subject;
     private String verb;
@@ -23,7 +31,9 @@ public class SolMessage {
     private Long tenantId;
     private Long entityId;
     private Object data;
-    private Map<String, Object> metadata;
+    private volatile Map<String, Object> metadata;
+    private volatile JsonNode dataTree;
+    private final Map<String, Object> resolvedMetadata = new ConcurrentHashMap<>();
 
     /**
      * Create a flat, Properties-like, construct representing the data in the provided context. This facilitates
@@ -113,13 +123,52 @@ public class SolMessage {
 
     public void setData(Object data) {
         this.data = data;
+        this.metadata = null;
+        this.dataTree = null;
+        this.resolvedMetadata.clear();
     }
 
+    /**
+     * Flatten all the data into metadata. Where only some keys are wanted, prefer {@link #getMetadata(String)}
+     *
+     * @return Map of every flattened key to its value
+     */
+    @JsonIgnore
     public Map<String, Object> getMetadata() {
         return metadata == null ? buildMetadata() : metadata;
     }
 
+    /**
+     * Get the value of a single metadata key, resolving it from the data without flattening the rest
+     *
+     * @param key flattened metadata key, e.g. {@code parent.children[0].property}
+     * @return value at the key, as {@link #getMetadata()} would hold it, or null if none
+     */
     public Object getMetadata(String key) {
-        return metadata.get(key);
+        Map<String, Object> flattened = metadata;
+        if (flattened != null) {
+            return flattened.get(key);
+        }
+        if (key == null || data == null) {
+            return null;
+        }
+
+        Object resolved = resolvedMetadata.get(key);
+        if (resolved == null) {
+            resolved = MetadataPath.resolve(getDataTree(), key);
+            resolved = resolved == null ? ABSENT : resolved;
+            resolvedMetadata.putIfAbsent(key, resolved);
+        }
+
+        return resolved == ABSENT ? null : resolved;
+    }
+
+    private JsonNode getDataTree() {
+        JsonNode tree = dataTree;
+        if (tree == null) {
+            tree = data instanceof JsonNode node ? node : objectMapper.valueToTree(data);
+            dataTree = tree;
+        }
+        return tree;
     }
 }
@@ -0,0 +1,169 @@
+package com.solmod.notifications.dispatcher.domain;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads {@link SolMessage}s from raw SolBus payloads with Jackson's streaming API, in two steps so that a message
+ * which triggers no notification costs no more than reading its header:
+ * <ol>
+ *     <li>{@link #readHeader(byte[])} reads the header fields, skipping over the data and noting where it lies</li>
+ *     <li>{@link #readData(Header, Collection)} reads from the data just the metadata keys asked for, skipping the
+ *     rest without materializing it</li>
+ * </ol>
+ */
+public class SolMessageReader {
+
+    private final JsonFactory jsonFactory = SolMessage.objectMapper.getFactory();
+    private final JsonNodeFactory nodeFactory = SolMessage.objectMapper.getNodeFactory();
+
+    /**
+     * A {@link SolMessage} holding only its header fields, along with where its data lies within the payload
+     *
+     * @param message {@link SolMessage} without data
+     * @param payload The raw payload read
+     * @param dataOffset Byte offset of the data within the payload, -1 if the message has no data
+     * @param dataLength Length in bytes of the data
+     */
+    public record Header(SolMessage message, byte[] payload, int dataOffset, int dataLength) {
+    }
+
+    /**
+     * Read the header fields of a raw SolBus payload
+     *
+     * @param payload UTF-8 JSON of a {@link SolMessage}
+     * @return {@link Header}
+     * @throws IOException in the event the payload is not a JSON object
+     */
+    public Header readHeader(byte[] payload) throws IOException {
+        SolMessage message = new SolMessage();
+        int dataOffset = -1;
+        int dataLength = 0;
+
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "SolMessage payload is not a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "subject" -> message.setSubject(parser.getValueAsString());
+                    case "verb" -> message.setVerb(parser.getValueAsString());
+                    case "idMetadataKey" -> message.setIdMetadataKey(parser.getValueAsString());
+                    case "idMetadataValue" -> message.setIdMetadataValue(parser.getValueAsString());
+                    case "publisher" -> message.setPublisher(parser.getValueAsString());
+                    case "tenantId" -> message.setTenantId(value == JsonToken.VALUE_NULL ? null : parser.getValueAsLong());
+                    case "entityId" -> message.setEntityId(value == JsonToken.VALUE_NULL ? null : parser.getValueAsLong());
+                    case "data" -> {
+                        if (value != JsonToken.VALUE_NULL) {
+                            dataOffset = (int) parser.currentTokenLocation().getByteOffset();
+                            parser.skipChildren();
+                            parser.finishToken();
+                            dataLength = (int) parser.currentLocation().getByteOffset() - dataOffset;
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        return new Header(message, payload, dataOffset, dataLength);
+    }
+
+    /**
+     * Read the given metadata keys from the data of the header's payload, setting what was read as the message's data.
+     * The message's metadata then resolves the given keys as it would have from the full data; other keys may not.
+     *
+     * @param header {@link Header} as read by {@link #readHeader(byte[])}
+     * @param metadataKeys flattened metadata keys to read, e.g. {@code parent.children[0].property}
+     * @return The header's {@link SolMessage}, with data
+     * @throws IOException in the event the data is not valid JSON
+     */
+    public SolMessage readData(Header header, Collection<String> metadataKeys) throws IOException {
+        SolMessage message = header.message();
+        if (header.dataOffset() < 0) {
+            return message;
+        }
+
+        PathNode paths = new PathNode();
+        for (String key : metadataKeys) {
+            List<Object> segments = key == null ? null : MetadataPath.segments(key);
+            if (segments != null) {
+                paths.add(segments);
+            }
+        }
+
+        try (JsonParser parser = jsonFactory.createParser(header.payload(), header.dataOffset(), header.dataLength())) {
+            parser.nextToken();
+            message.setData(project(parser, paths));
+        }
+        return message;
+    }
+
+    /**
+     * Read the value at the parser's current token, keeping only what lies on the given paths
+     */
+    private JsonNode project(JsonParser parser, PathNode paths) throws IOException {
+        if (paths.leaf || !parser.currentToken().isStructStart()) {
+            return SolMessage.objectMapper.readTree(parser);
+        }
+
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            ObjectNode result = nodeFactory.objectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                PathNode child = paths.children.get(name);
+                if (child == null) {
+                    parser.skipChildren();
+                } else {
+                    result.set(name, project(parser, child));
+                }
+            }
+            return result;
+        }
+
+        // Elements not on a path are kept as nulls, so those that are keep their index
+        ArrayNode result = nodeFactory.arrayNode();
+        for (int index = 0; parser.nextToken() != JsonToken.END_ARRAY; index++) {
+            PathNode child = paths.children.get(index);
+            if (child == null) {
+                parser.skipChildren();
+                result.addNull();
+            } else {
+                result.add(project(parser, child));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Trie of the segments of the metadata keys to read
+     */
+    private static class PathNode {
+        private final Map<Object, PathNode> children = new HashMap<>();
+        private boolean leaf;
+
+        private void add(List<Object> segments) {
+            PathNode node = this;
+            for (Object segment : segments) {
+                node = node.children.computeIfAbsent(segment, s -> new PathNode());
+            }
+            node.leaf = true;
+        }
+    }
+}
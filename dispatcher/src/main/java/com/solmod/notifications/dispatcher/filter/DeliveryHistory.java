@@ -0,0 +1,63 @@
+package com.solmod.notifications.dispatcher.filter;
+
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.domain.SolMessage;
+import com.solmod.notifications.dispatcher.service.MessageDeliveryService;
+import com.solmod.notifications.dispatcher.service.domain.DeliverySummary;
+import com.solmod.notifications.dispatcher.service.domain.DispatchContext;
+import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTemplateGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Delivery history lookups shared by the filters which need it.
+ * History is loaded through the group's {@link DispatchContext} in one query per recipient for every qualified template
+ * of the group addressed to that recipient, so each filter, and each template, after the first is answered from memory.
+ * What's loaded is each template's delivery counter rather than its deliveries, so a lookup costs the same however
+ * many times the recipient has been sent the template.
+ */
+final class DeliveryHistory {
+
+    private DeliveryHistory() {
+    }
+
+    /**
+     * Get the summary of deliveries of the template to the recipient, for the message's id metadata
+     *
+     * @param deliveryService {@link MessageDeliveryService}
+     * @param templateGroup {@link TriggeredMessageTemplateGroup} the template is being filtered with
+     * @param template {@link MessageTemplate}
+     * @param recipientAddress {@code String} the template resolves to for the message
+     * @param solMessage {@link SolMessage}
+     * @return {@link DeliverySummary}
+     */
+    static DeliverySummary getSummary(MessageDeliveryService deliveryService, TriggeredMessageTemplateGroup templateGroup,
+                                      MessageTemplate template, String recipientAddress, SolMessage solMessage) {
+        String idMetadataKey = solMessage.getIdMetadataKey();
+        String idMetadataValue = solMessage.getIdMetadataValue();
+        DispatchContext context = templateGroup.getContext();
+
+        return context.getDeliveries(template.getMessageTemplateID(), recipientAddress, idMetadataKey, idMetadataValue,
+                () -> {
+                    List<Long> templateIds = new ArrayList<>();
+                    for (MessageTemplate curTemplate : templateGroup.getQualifiedTemplates()) {
+                        Object address = solMessage.getMetadata(curTemplate.getRecipientAddressContextKey());
+                        if (address != null && recipientAddress.equals(address.toString())) {
+                            templateIds.add(curTemplate.getMessageTemplateID());
+                        }
+                    }
+                    if (!templateIds.contains(template.getMessageTemplateID())) {
+                        templateIds.add(template.getMessageTemplateID());
+                    }
+
+                    Map<Long, DeliverySummary> byTemplate = Objects.requireNonNullElse(deliveryService.getDeliverySummaries(
+                            templateIds, recipientAddress, idMetadataKey, idMetadataValue), Map.of());
+                    byTemplate.forEach((templateId, summary) -> context.putDeliveries(
+                            templateId, recipientAddress, idMetadataKey, idMetadataValue, summary));
+                    return byTemplate.getOrDefault(template.getMessageTemplateID(), DeliverySummary.NONE);
+                });
+    }
+}
@@ -23,4 +23,17 @@ public class FilterResponse {
         this.permissions.put(templateId, permission);
         return this;
     }
+
+    /**
+     * Fold the permissions of another response into this one, keeping the prevailing permission for each template
+     * per {@link DeliveryPermission#mostRestrictive}
+     *
+     * @param other {@link FilterResponse}
+     * @return this {@link FilterResponse}
+     */
+    public FilterResponse merge(FilterResponse other) {
+        other.getPermissions().forEach((templateId, permission) ->
+                this.permissions.merge(templateId, permission, DeliveryPermission::mostRestrictive));
+        return this;
+    }
 }
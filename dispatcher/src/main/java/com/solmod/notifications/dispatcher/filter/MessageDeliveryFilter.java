@@ -6,6 +6,10 @@ import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTempla
 @FunctionalInterface
 public interface MessageDeliveryFilter {
 
+    // Cost hints: a filter evaluated from the message and templates alone, and one which queries per template
+    int IN_MEMORY_COST = 1;
+    int QUERY_COST = 10;
+
     /**
      * Run logic to determine send'ability of a message
      * Implementations of MessageDeliveryFilter must:
@@ -19,4 +23,26 @@ public interface MessageDeliveryFilter {
      */
     FilterResponse apply(final TriggeredMessageTemplateGroup templateGroup, SolMessage solMessage)
             throws FilterException;
+
+    /**
+     * Load, into the group's {@link com.solmod.notifications.dispatcher.service.domain.DispatchContext}, what
+     * {@link #apply} would otherwise look up template by template. Called once for the whole group before it is split
+     * to filter each template on its own, so the lookups are batched across the group's templates rather than made
+     * one per template.
+     *
+     * @param templateGroup {@link TriggeredMessageTemplateGroup}
+     * @param solMessage    {@link SolMessage}
+     */
+    default void prefetch(final TriggeredMessageTemplateGroup templateGroup, SolMessage solMessage) {
+    }
+
+    /**
+     * Relative cost of evaluating a template with this filter. The filter chain runs cheaper filters first, so
+     * templates they reject never reach the costlier ones.
+     *
+     * @return {@link #IN_MEMORY_COST}, {@link #QUERY_COST}, or somewhere relative to them
+     */
+    default int getCostHint() {
+        return QUERY_COST;
+    }
 }
@@ -2,22 +2,22 @@ package com.solmod.notifications.dispatcher.filter;
 
 import com.solmod.notifications.dispatcher.domain.MessageTemplate;
 import com.solmod.notifications.dispatcher.domain.SolMessage;
-import com.solmod.notifications.dispatcher.repository.MessageDeliveryRepo;
-import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.service.MessageDeliveryService;
 import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
+import com.solmod.notifications.dispatcher.service.domain.DeliverySummary;
 import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTemplateGroup;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 @Component
 public class MessageDeliveryRulesFilter implements MessageDeliveryFilter {
 
-    MessageDeliveryRepo messageDeliveryRepo;
+    MessageDeliveryService messageDeliveryService;
 
-    public MessageDeliveryRulesFilter(MessageDeliveryRepo messageDeliveryRepo) {
-        this.messageDeliveryRepo = messageDeliveryRepo;
+    public MessageDeliveryRulesFilter(MessageDeliveryService messageDeliveryService) {
+        this.messageDeliveryService = messageDeliveryService;
     }
 
     @Override
@@ -30,16 +30,13 @@ public class MessageDeliveryRulesFilter implements MessageDeliveryFilter {
         Set<MessageTemplate> qualifyingTemplates = templateGroup.getQualifiedTemplates();
         for (MessageTemplate curTemplate : qualifyingTemplates) {
             // Filter only if there are send-rules in place
-            String recipientAddress = solMessage.getMetadata().getOrDefault(
-                    curTemplate.getRecipientAddressContextKey(), "").toString();
+            String recipientAddress = Objects.toString(
+                    solMessage.getMetadata(curTemplate.getRecipientAddressContextKey()), "");
             if (curTemplate.hasSendRules()) {
-                List<MessageDelivery> allDeliveries = messageDeliveryRepo.findAllDeliveries(
-                        curTemplate.getMessageTemplateID(),
-                        recipientAddress,
-                        solMessage.getIdMetadataKey(),
-                        solMessage.getIdMetadataValue());
+                DeliverySummary deliveries = DeliveryHistory.getSummary(
+                        messageDeliveryService, templateGroup, curTemplate, recipientAddress, solMessage);
 
-                response.addDeliveryPermission(curTemplate.getMessageTemplateID(), curTemplate.applySendRules(allDeliveries));
+                response.addDeliveryPermission(curTemplate.getMessageTemplateID(), curTemplate.applySendRules(deliveries));
             } else {
                 response.addDeliveryPermission(curTemplate.getMessageTemplateID(), DeliveryPermission.SEND_NOW_PERMISSION);
             }
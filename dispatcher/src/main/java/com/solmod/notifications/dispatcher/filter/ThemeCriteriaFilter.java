@@ -1,12 +1,10 @@
 package com.solmod.notifications.dispatcher.filter;
 
-import com.solmod.notifications.admin.web.model.MessageTemplateDTO;
 import com.solmod.notifications.dispatcher.domain.MessageTemplate;
 import com.solmod.notifications.dispatcher.domain.SolMessage;
+import com.solmod.notifications.dispatcher.service.domain.CriteriaIndex;
 import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
 import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTemplateGroup;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
@@ -22,30 +20,25 @@ public class ThemeCriteriaFilter  implements MessageDeliveryFilter {
             return response;
         }
 
-        Map<String, Object> flattened = solMessage.getMetadata();
+        // Use the group's compiled criteria, evaluated once per message across the groups split from it, unless
+        // templates have been added to the group since it was compiled
         Set<MessageTemplate> messageTemplates = templateGroup.getQualifiedTemplates();
-        for (MessageTemplateDTO curTemplate : messageTemplates) { // use iter.hasNext because of iter.remove used herein
-            response.addDeliveryPermission(curTemplate.getMessageTemplateID(), qualifyTemplate(curTemplate, flattened));
+        CriteriaIndex criteriaIndex = templateGroup.getCriteriaIndex();
+        Map<Long, DeliveryPermission> verdicts;
+        if (criteriaIndex == null || !criteriaIndex.getTemplates().containsAll(messageTemplates)) {
+            verdicts = new CriteriaIndex(messageTemplates).evaluate(solMessage);
+        } else {
+            verdicts = templateGroup.getContext().getCriteriaVerdicts(criteriaIndex, solMessage);
+        }
+        for (MessageTemplate curTemplate : messageTemplates) {
+            response.addDeliveryPermission(curTemplate.getMessageTemplateID(), verdicts.get(curTemplate.getMessageTemplateID()));
         }
 
         return response;
     }
 
-    private DeliveryPermission qualifyTemplate(MessageTemplateDTO curTemplate, Map<String, Object> flattenedMetadata) {
-        if (curTemplate.getDeliveryCriteria() == null || curTemplate.getDeliveryCriteria().getCriteria().isEmpty()) {
-            return DeliveryPermission.SEND_NOW_PERMISSION;
-        }
-
-        for (Map.Entry<String, String> s : curTemplate.getDeliveryCriteria().getCriteria().entrySet()) {
-            Object metadataValue = flattenedMetadata.get(s.getKey());
-            if (metadataValue == null) {
-                return new DeliveryPermission(DeliveryPermission.Verdict.SEND_NEVER, "Message metadata missing template criterion " + s.getKey());
-            }
-            if (!metadataValue.toString().equals(s.getValue())) {
-                return new DeliveryPermission(DeliveryPermission.Verdict.SEND_NEVER, "Message metadata has incorrect value for template criterion " + s.getKey());
-            }
-        }
-
-        return DeliveryPermission.SEND_NOW_PERMISSION;
+    @Override
+    public int getCostHint() {
+        return IN_MEMORY_COST;
     }
 }
@@ -1,36 +1,42 @@
 package com.solmod.notifications.dispatcher.filter;
 
-import com.solmod.notifications.admin.service.UserDeliveryPreferencesService;
+import com.solmod.notifications.admin.domain.RecipientSender;
 import com.solmod.notifications.admin.web.model.UserDeliveryPreferencesDTO;
 import com.solmod.notifications.dispatcher.domain.MessageTemplate;
 import com.solmod.notifications.dispatcher.domain.SolMessage;
-import com.solmod.notifications.dispatcher.repository.MessageDeliveryRepo;
-import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.service.MessageDeliveryService;
+import com.solmod.notifications.dispatcher.service.SendWindowEvaluator;
+import com.solmod.notifications.dispatcher.service.UserDeliveryPreferencesCache;
 import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
+import com.solmod.notifications.dispatcher.service.domain.DeliverySummary;
+import com.solmod.notifications.dispatcher.service.domain.DispatchContext;
 import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTemplateGroup;
-import org.apache.commons.lang3.time.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 
 import static com.solmod.notifications.dispatcher.service.domain.DeliveryPermission.Verdict.*;
-import static java.util.Collections.emptyList;
 
 @Component
 public class UserPreferencesFilter implements MessageDeliveryFilter {
 
-    private final MessageDeliveryRepo deliveryRepo;
-    private final UserDeliveryPreferencesService userDeliveryPreferencesService;
+    private final MessageDeliveryService deliveryService;
+    private final UserDeliveryPreferencesCache userDeliveryPreferencesCache;
+    private final SendWindowEvaluator sendWindowEvaluator;
     private final Logger logger = LoggerFactory.getLogger(UserPreferencesFilter.class);
 
     @Autowired
-    public UserPreferencesFilter(MessageDeliveryRepo deliveryRepo,
-                                 UserDeliveryPreferencesService userDeliveryPreferencesService) {
-        this.deliveryRepo = deliveryRepo;
-        this.userDeliveryPreferencesService = userDeliveryPreferencesService;
+    public UserPreferencesFilter(MessageDeliveryService deliveryService,
+                                 UserDeliveryPreferencesCache userDeliveryPreferencesCache,
+                                 SendWindowEvaluator sendWindowEvaluator) {
+        this.deliveryService = deliveryService;
+        this.userDeliveryPreferencesCache = userDeliveryPreferencesCache;
+        this.sendWindowEvaluator = sendWindowEvaluator;
     }
 
     @Override
@@ -42,15 +48,46 @@ public class UserPreferencesFilter implements MessageDeliveryFilter {
             return response;
         }
 
+        prefetch(templateGroup, solMessage);
+
         // Determine send'ability for each template in the group
         for (MessageTemplate curTemplate : templateGroup.getQualifiedTemplates()) {
-            DeliveryPermission permissionToSendTemplate = processRules(solMessage, curTemplate);
+            DeliveryPermission permissionToSendTemplate = processRules(solMessage, curTemplate, templateGroup);
             response.addDeliveryPermission(curTemplate.getMessageTemplateID(), permissionToSendTemplate);
         }
 
         return response;
     }
 
+    /**
+     * Load the preferences of every template's recipient for its sender into the group's {@link DispatchContext}, in
+     * one lookup for those not already known to it. Templates whose recipient can't be determined are left to
+     * {@link #processRules} to reject. Applying the filter to a group prefetched already, or split from one which was,
+     * looks up nothing more.
+     *
+     * @param templateGroup {@link TriggeredMessageTemplateGroup}
+     * @param solMessage {@link SolMessage}
+     */
+    @Override
+    public void prefetch(TriggeredMessageTemplateGroup templateGroup, SolMessage solMessage) {
+        DispatchContext context = templateGroup.getContext();
+        Set<RecipientSender> unknown = new HashSet<>();
+        for (MessageTemplate curTemplate : templateGroup.getQualifiedTemplates()) {
+            Object address = solMessage.getMetadata(curTemplate.getRecipientAddressContextKey());
+            if (address != null && !context.hasPreferences(address.toString(), curTemplate.getSender())) {
+                unknown.add(new RecipientSender(address.toString(), curTemplate.getSender()));
+            }
+        }
+        if (unknown.isEmpty()) {
+            return;
+        }
+
+        Map<RecipientSender, UserDeliveryPreferencesDTO> found = userDeliveryPreferencesCache.getDeliveryPreferences(unknown);
+        for (RecipientSender recipientSender : unknown) {
+            context.putPreferences(recipientSender.recipientAddress(), recipientSender.sender(), found.get(recipientSender));
+        }
+    }
+
     /**
      * Determine if the following hold true before permitting:
      * <ul>
@@ -63,16 +100,20 @@ public class UserPreferencesFilter implements MessageDeliveryFilter {
      *
      * @param solMessage {@link SolMessage}
      * @param curTemplate {@link MessageTemplate}
+     * @param templateGroup {@link TriggeredMessageTemplateGroup} through whose {@link DispatchContext} lookups are
+     *                      shared with other filters and messages
      * @return {@link DeliveryPermission}
      * @throws FilterException in the event of processing error, such as recipient can't be gleaned from message
      */
-    private DeliveryPermission processRules(SolMessage solMessage, MessageTemplate curTemplate) throws FilterException {
+    private DeliveryPermission processRules(SolMessage solMessage, MessageTemplate curTemplate,
+                                            TriggeredMessageTemplateGroup templateGroup)
+            throws FilterException {
         DeliveryPermission result;
         String recipientAddress = getRecipientAddressOrException(solMessage, curTemplate);
 
         String templateSender = curTemplate.getSender();
-        UserDeliveryPreferencesDTO usersPrefs =
-                userDeliveryPreferencesService.getDeliveryPreferences(recipientAddress, templateSender);
+        UserDeliveryPreferencesDTO usersPrefs = templateGroup.getContext().getPreferences(recipientAddress, templateSender,
+                () -> userDeliveryPreferencesCache.getDeliveryPreferences(recipientAddress, templateSender));
 
         // Ensure the user has preferences specified for the template's sender
         if (usersPrefs == null) {
@@ -80,24 +121,17 @@ public class UserPreferencesFilter implements MessageDeliveryFilter {
             result = new DeliveryPermission(SEND_NEVER, message);
         }
         // Ensure the user's preferences for the template's sender allow for the template's class
-        else if (!Objects.requireNonNullElse(usersPrefs.getSupportedMessageClasses(), "").toUpperCase()
-                .contains(curTemplate.getMessageClass().toUpperCase())) {
+        else if (!usersPrefs.permits(curTemplate.getMessageClass())) {
             String message = String.format("User preferences do not allow %s messages via %s",
                     curTemplate.getMessageClass(), curTemplate.getSender());
             result = new DeliveryPermission(SEND_NEVER, message);
         }
         // Ensure the message does not violate time-based settings: resendInterval and deliveryWindow
         else {
+            DeliverySummary deliveries = DeliveryHistory.getSummary(
+                    deliveryService, templateGroup, curTemplate, recipientAddress, solMessage);
 
-            // TODO: This should come from a service, not via repo
-            List<MessageDelivery> allDeliveries =
-                    Objects.requireNonNullElse(deliveryRepo.findAllDeliveries(curTemplate.getMessageTemplateID(),
-                            recipientAddress,
-                            solMessage.getIdMetadataKey(),
-                            solMessage.getIdMetadataValue()), emptyList());
-
-            MessageDelivery latestDelivery = allDeliveries.stream().findFirst().orElse(null);
-            result = applyTimeBasedRules(usersPrefs, latestDelivery);
+            result = applyTimeBasedRules(usersPrefs, deliveries);
         }
 
         return result;
@@ -106,7 +140,7 @@ public class UserPreferencesFilter implements MessageDeliveryFilter {
     private String getRecipientAddressOrException(SolMessage solMessage, MessageTemplate curTemplate)
             throws FilterException {
         String addyKey = curTemplate.getRecipientAddressContextKey();
-        Object addressData = solMessage.getMetadata().get(addyKey);
+        Object addressData = solMessage.getMetadata(addyKey);
         if (addressData == null) {
             throw new FilterException("Could not determine recipient address, expected at " + addyKey);
         }
@@ -116,46 +150,31 @@ public class UserPreferencesFilter implements MessageDeliveryFilter {
     /**
      * Two factors here:
      * <ul>
-     *     <li>{@code UserDeliveryPreferences.sendWindowStart} - {@code UserDeliveryPreferences.sendWindowEnd} delivery
-     *     wind ow (results in a digest)</li>
      *     <li>{@code UserDeliveryPreferences.resendInterval} - Min amount of time to elapse before a resend (does not
-     *     result in a digest</li>
-     *  </li>
+     *     result in a digest)</li>
+     *     <li>{@code UserDeliveryPreferences.sendWindowStart} - {@code UserDeliveryPreferences.sendWindowEnd} delivery
+     *     window, in the recipient's {@code timezone} (results in a digest)</li>
      * </ul>
+     * Both are evaluated against the {@link SendWindowEvaluator}'s clock.
      *
      * @param usersPrefs {@link UserDeliveryPreferencesDTO}
-     * @param latestDelivery {@link MessageDelivery} Could be null if no previous deliveries sent
-     * @return {@link DeliveryPermission} Indicating the permissions as they relate to time-based criteria
+     * @param deliveries {@link DeliverySummary} of previous deliveries, if any
+     * @return {@link DeliveryPermission} Indicating the permissions as they relate to time-based criteria. When
+     * SEND_LATER, it carries the instant the recipient's send window next opens
      */
-    DeliveryPermission applyTimeBasedRules(UserDeliveryPreferencesDTO usersPrefs, MessageDelivery latestDelivery) {
-        Date now = new Date();
-
-        if (latestDelivery == null) {
-            return DeliveryPermission.SEND_NOW_PERMISSION;
-        }
+    DeliveryPermission applyTimeBasedRules(UserDeliveryPreferencesDTO usersPrefs, DeliverySummary deliveries) {
+        Instant now = sendWindowEvaluator.now();
 
         // If duplicate sent, ensure at least resendInterval has elapsed since the last delivery
-        if (usersPrefs.getResendInterval() != null) {
-            Date effectiveLatestDeliveryDate =
-                    Objects.requireNonNullElse(latestDelivery.getDateCompleted(), latestDelivery.getDateCreated());
-            Date resendIntervalAgo = DateUtils.addMinutes(now, -usersPrefs.getResendInterval());
-            if (effectiveLatestDeliveryDate.after(resendIntervalAgo)) {
+        if (usersPrefs.getResendInterval() != null && deliveries != null && deliveries.hasDeliveries()) {
+            Date effectiveLatestDeliveryDate = deliveries.lastDeliveryDate();
+            Instant resendIntervalAgo = now.minus(Duration.ofMinutes(usersPrefs.getResendInterval()));
+            if (effectiveLatestDeliveryDate != null && effectiveLatestDeliveryDate.toInstant().isAfter(resendIntervalAgo)) {
                 return new DeliveryPermission(SEND_NEVER, "Recipient's interval settings for duplicate message has not elapsed");
             }
         }
 
         // Ensure this delivery will fall within the user's preferred delivery window
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(now);
-        long fragmentInHours = DateUtils.getFragmentInHours(cal, 6);
-
-        boolean withinDeliveryWindow = usersPrefs.getSendWindowStart() == null || usersPrefs.getSendWindowEnd() == null ||
-                fragmentInHours >= usersPrefs.getSendWindowStart() && fragmentInHours <= usersPrefs.getSendWindowEnd();
-
-        if (!withinDeliveryWindow) {
-            return new DeliveryPermission(SEND_LATER, "Cannot deliver within recipient blackout period. Sending later");
-        }
-
-        return DeliveryPermission.SEND_NOW_PERMISSION;
+        return sendWindowEvaluator.evaluate(usersPrefs, now);
     }
 }
@@ -0,0 +1,62 @@
+package com.solmod.notifications.dispatcher.repository;
+
+import com.solmod.notifications.dispatcher.repository.domain.MessageDeliveryCounter;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Repository
+public interface MessageDeliveryCounterRepo extends CrudRepository<MessageDeliveryCounter, Long> {
+
+    /**
+     * @param idMetadataKey {@code String} as keyed per {@link MessageDeliveryCounter#toKeyPart}, never null
+     * @param idMetadataValue {@code String} as keyed per {@link MessageDeliveryCounter#toKeyPart}, never null
+     * @return The counters of those templates with deliveries to the recipient for the id metadata
+     */
+    @Query("SELECT c from MessageDeliveryCounters c " +
+            "where c.messageTemplateId in :templateIds " +
+            "and c.recipientAddress = :recipientAddress " +
+            "and c.idMetadataKey = :idMetadataKey and c.idMetadataValue = :idMetadataValue")
+    List<MessageDeliveryCounter> findCounters(Collection<Long> templateIds, String recipientAddress,
+                                              String idMetadataKey, String idMetadataValue);
+
+    /**
+     * Stream the keys of every counter with deliveries counted. To be consumed within a transaction
+     *
+     * @param deliveryCount {@code long} count the counters must exceed, i.e. 0
+     * @return Stream of {@link CounterKey}
+     */
+    Stream<CounterKey> streamByDeliveryCountGreaterThan(long deliveryCount);
+
+    /**
+     * Stream the keys of every counter adjusted at or after the given time. To be consumed within a transaction
+     *
+     * @param since {@link Date} by the database's clock
+     * @return Stream of {@link CounterKey}
+     */
+    Stream<CounterKey> streamByDateModifiedGreaterThanEqual(Date since);
+
+    /**
+     * @return Number of deliveries counted by counters which can be looked up, having a template and recipient
+     */
+    @Query("SELECT coalesce(sum(c.deliveryCount), 0) from MessageDeliveryCounters c " +
+            "where c.messageTemplateId is not null and c.recipientAddress is not null")
+    long sumKeyedDeliveryCounts();
+
+    interface CounterKey {
+        Long getMessageTemplateId();
+
+        String getRecipientAddress();
+
+        String getIdMetadataKey();
+
+        String getIdMetadataValue();
+
+        Date getDateModified();
+    }
+}
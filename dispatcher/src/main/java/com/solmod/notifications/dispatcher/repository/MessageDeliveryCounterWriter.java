@@ -0,0 +1,92 @@
+package com.solmod.notifications.dispatcher.repository;
+
+import com.solmod.notifications.dispatcher.repository.domain.MessageDeliveryCounter;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Adjusts {@link MessageDeliveryCounter}s with a single upsert on the connection of the current transaction, creating
+ * the counter with the adjustment when it doesn't exist yet. Concurrent first deliveries to the same key then take the
+ * row lock one after another rather than racing to insert it, so neither fails nor deadlocks on the unique key.
+ * MySQL's {@code INSERT ... ON DUPLICATE KEY UPDATE} is used there; other databases, i.e. H2 locally, are given the
+ * standard {@code MERGE}. Each upsert draws an id from the entity's generator whether or not it inserts, so ids are not
+ * contiguous.
+ */
+@Repository
+public class MessageDeliveryCounterWriter {
+
+    // The new row is aliased, VALUES() being deprecated as of MySQL 8.0.20
+    private static final String UPSERT_COUNTER_MYSQL = "INSERT INTO message_delivery_counters (id, " +
+            "message_template_id, recipient_address, id_metadata_key, id_metadata_value, delivery_count, " +
+            "last_delivery_date, date_modified) VALUES (?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP(6)) AS v " +
+            "ON DUPLICATE KEY UPDATE " +
+            "delivery_count = message_delivery_counters.delivery_count + v.delivery_count, " +
+            "last_delivery_date = GREATEST(COALESCE(message_delivery_counters.last_delivery_date, v.last_delivery_date), " +
+            "COALESCE(v.last_delivery_date, message_delivery_counters.last_delivery_date)), " +
+            "date_modified = v.date_modified";
+    private static final String UPSERT_COUNTER_STANDARD = "MERGE INTO message_delivery_counters c " +
+            "USING (SELECT CAST(? AS BIGINT) id, CAST(? AS BIGINT) message_template_id, " +
+            "CAST(? AS VARCHAR(255)) recipient_address, CAST(? AS VARCHAR(255)) id_metadata_key, " +
+            "CAST(? AS VARCHAR(255)) id_metadata_value, CAST(? AS BIGINT) delivery_count, " +
+            "CAST(? AS TIMESTAMP) last_delivery_date FROM DUAL) v " +
+            "ON (c.message_template_id = v.message_template_id AND c.recipient_address = v.recipient_address " +
+            "AND c.id_metadata_key = v.id_metadata_key AND c.id_metadata_value = v.id_metadata_value) " +
+            "WHEN MATCHED THEN UPDATE SET c.delivery_count = c.delivery_count + v.delivery_count, " +
+            "c.last_delivery_date = GREATEST(COALESCE(c.last_delivery_date, v.last_delivery_date), " +
+            "COALESCE(v.last_delivery_date, c.last_delivery_date)), c.date_modified = CURRENT_TIMESTAMP " +
+            "WHEN NOT MATCHED THEN INSERT (id, message_template_id, recipient_address, id_metadata_key, " +
+            "id_metadata_value, delivery_count, last_delivery_date, date_modified) VALUES (v.id, " +
+            "v.message_template_id, v.recipient_address, v.id_metadata_key, v.id_metadata_value, v.delivery_count, " +
+            "v.last_delivery_date, CURRENT_TIMESTAMP)";
+
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private volatile String upsertCounter;
+
+    @Autowired
+    public MessageDeliveryCounterWriter(EntityManager entityManager, JdbcTemplate jdbcTemplate) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Add to the count of the counter for the given key, creating it if need be, and move its last delivery date
+     * forward to the given date, leaving it be if already later. Absent id metadata is keyed per
+     * {@link MessageDeliveryCounter#toKeyPart}. Must be called within a transaction. The persistence context is flushed
+     * before and cleared after, as for the repos' in place updates, so no counter loaded earlier is read stale
+     *
+     * @param delta {@code long} to add to the count
+     * @param deliveryDate {@link Date} of the latest delivery counted, or null to leave the last delivery date be
+     */
+    public void adjust(Long templateId, String recipientAddress, String idMetadataKey, String idMetadataValue,
+                       long delta, Date deliveryDate) {
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        BeforeExecutionGenerator counterIds = (BeforeExecutionGenerator) session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(MessageDeliveryCounter.class).getGenerator();
+        Long id = (Long) counterIds.generate(session, null, null, EventType.INSERT);
+
+        entityManager.flush();
+        jdbcTemplate.update(getUpsertCounter(), id, templateId, recipientAddress,
+                MessageDeliveryCounter.toKeyPart(idMetadataKey), MessageDeliveryCounter.toKeyPart(idMetadataValue), delta,
+                deliveryDate != null ? new Timestamp(deliveryDate.getTime()) : null);
+        entityManager.clear();
+    }
+
+    private String getUpsertCounter() {
+        if (upsertCounter == null) {
+            String product = jdbcTemplate.execute(
+                    (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+            upsertCounter = "MySQL".equalsIgnoreCase(product) ? UPSERT_COUNTER_MYSQL : UPSERT_COUNTER_STANDARD;
+        }
+        return upsertCounter;
+    }
+}
@@ -1,21 +1,109 @@
 package com.solmod.notifications.dispatcher.repository;
 
+import com.solmod.notifications.dispatcher.repository.domain.DeliveryKey;
 import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface MessageDeliveryRepo extends CrudRepository<MessageDelivery, Long> {
 
     @Query("SELECT d from MessageDeliveries d " +
-            "LEFT JOIN MessageMetadata m on m.messageDelivery = d " +
-            "where m.metadataKey = :metadataKey and m.metadataValue = :metadataValue " +
-            "and d.messageTemplateId = :templateId " +
-            "and d.recipientAddress = :recipientAddress " +
+            "where d.deliveryKey = :deliveryKey " +
             "and d.status <> 'F' " +
             "order by d.dateCompleted DESC, d.dateCreated DESC ")
-    List<MessageDelivery> findAllDeliveries(Long templateId, String recipientAddress, String metadataKey, String metadataValue);
+    List<MessageDelivery> findAllDeliveries(String deliveryKey);
+
+    @Query("SELECT d from MessageDeliveries d " +
+            "where d.deliveryKey in :deliveryKeys " +
+            "and d.status <> 'F' " +
+            "order by d.dateCompleted DESC, d.dateCreated DESC ")
+    List<MessageDelivery> findAllDeliveriesForKeys(Collection<String> deliveryKeys);
+
+    /**
+     * @return Number of deliveries which have not failed and have a template and recipient, as counters are kept for
+     */
+    @Query("SELECT count(d) from MessageDeliveries d " +
+            "where d.status <> 'F' and d.messageTemplateId is not null and d.recipientAddress is not null")
+    long countKeyedDeliveries();
+
+    /**
+     * Stream the id and release time of every delivery pending its recipient's send window, without loading the
+     * deliveries themselves. To be consumed within a transaction
+     *
+     * @return Stream of {@link DeferredDelivery}
+     */
+    @Query("SELECT d.id as id, d.sendAfter as sendAfter from MessageDeliveries d " +
+            "where d.status = 'PT' and d.sendAfter is not null")
+    Stream<DeferredDelivery> streamDeferredDeliveries();
+
+    /**
+     * Stream the id and release time of every delivery pending its recipient's send window whose window opens before
+     * the given time, as {@link #streamDeferredDeliveries} does. To be consumed within a transaction
+     *
+     * @param before {@link Date}
+     * @return Stream of {@link DeferredDelivery}
+     */
+    @Query("SELECT d.id as id, d.sendAfter as sendAfter from MessageDeliveries d " +
+            "where d.status = 'PT' and d.sendAfter < :before")
+    Stream<DeferredDelivery> streamDeferredDeliveriesBefore(Date before);
+
+    /**
+     * Of the given deliveries, move those still pending their recipient's send window on to pending delivery. A
+     * delivery released at once by two dispatchers is moved by whichever updates it first; the other finds it moved
+     *
+     * @param ids Collection of delivery ids
+     * @return Number of deliveries moved from PT to PD
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE MessageDeliveries d set d.status = 'PD' where d.id in :ids and d.status = 'PT'")
+    int releaseDeferred(Collection<Long> ids);
+
+    /**
+     * Claim a batch of deliveries due to be retried, locking them until the end of the transaction. Rows already locked
+     * by another claim are skipped rather than waited on, so several dispatchers claim separate batches at once; on
+     * databases without skip-locked support, the claim waits instead
+     *
+     * @param now {@link Date} by which the next attempt must be due
+     * @param limit {@link Limit} on the size of the batch
+     * @return List of {@link MessageDelivery} with status PR, earliest due first
+     */
+    // A lock timeout of -2 has Hibernate lock with SKIP LOCKED; the constant which held it, LockOptions.SKIP_LOCKED, is
+    // deprecated
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT d from MessageDeliveries d " +
+            "where d.status = 'PR' and d.nextAttemptAt <= :now " +
+            "order by d.nextAttemptAt")
+    List<MessageDelivery> claimDueRetries(Date now, Limit limit);
+
+    default List<MessageDelivery> findAllDeliveries(Long templateId, String recipientAddress, String metadataKey,
+                                                    String metadataValue) {
+        return findAllDeliveries(DeliveryKey.of(templateId, recipientAddress, metadataKey, metadataValue));
+    }
+
+    default List<MessageDelivery> findAllDeliveriesForTemplates(Collection<Long> templateIds, String recipientAddress,
+                                                                String metadataKey, String metadataValue) {
+        return findAllDeliveriesForKeys(templateIds.stream()
+                .map(templateId -> DeliveryKey.of(templateId, recipientAddress, metadataKey, metadataValue))
+                .toList());
+    }
+
+    interface DeferredDelivery {
+        Long getId();
+
+        Date getSendAfter();
+    }
 }
@@ -0,0 +1,115 @@
+package com.solmod.notifications.dispatcher.repository;
+
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.repository.domain.MessageMetadata;
+import com.solmod.notifications.dispatcher.repository.domain.MetadataJsonConverter;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes new {@link MessageDelivery}s, and any {@link MessageMetadata} rows of theirs, in JDBC batches on the connection of the
+ * current transaction, bypassing the persistence context: nothing is held per row, and no row is read back.
+ * Ids are assigned from the entities' own generators, so they're drawn from the same sequences, a block at a time, as
+ * those saved through {@link MessageDeliveryRepo}. Deliveries written here aren't managed; load them through the repo
+ * to change them.
+ */
+@Repository
+public class MessageDeliveryWriter {
+
+    private static final String INSERT_DELIVERY = "INSERT INTO message_deliveries (id, message_template_id, " +
+            "recipient_address, sender, id_metadata_key, id_metadata_value, delivery_key, status, status_message, " +
+            "date_created, date_completed, send_after, retry_count, next_attempt_at, metadata) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_METADATA = "INSERT INTO message_metadata (id, message_delivery_id, " +
+            "metadata_key, metadata_value, date_created) VALUES (?, ?, ?, ?, ?)";
+
+    private final MetadataJsonConverter metadataConverter = new MetadataJsonConverter();
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public MessageDeliveryWriter(EntityManager entityManager, JdbcTemplate jdbcTemplate,
+                                 @Value("${solmod.notification-engine.delivery-writer.batch-size:1000}") int batchSize) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Insert new deliveries and their metadata, assigning each its id and delivery key. Must be called within a
+     * transaction
+     *
+     * @param deliveries Collection of {@link MessageDelivery}, none yet saved
+     */
+    public void insertAll(Collection<MessageDelivery> deliveries) {
+        if (deliveries.isEmpty()) {
+            return;
+        }
+
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        BeforeExecutionGenerator deliveryIds = generator(session, MessageDelivery.class);
+        BeforeExecutionGenerator metadataIds = generator(session, MessageMetadata.class);
+
+        List<MessageMetadata> metadata = new ArrayList<>();
+        for (MessageDelivery delivery : deliveries) {
+            delivery.setId((Long) deliveryIds.generate(session, delivery, null, EventType.INSERT));
+            delivery.updateDeliveryKey();
+            if (delivery.getMessageMetadata() != null) {
+                for (MessageMetadata entry : delivery.getMessageMetadata()) {
+                    entry.setMessageDelivery(delivery);
+                    entry.updateDateCreated();
+                    entry.setId((Long) metadataIds.generate(session, entry, null, EventType.INSERT));
+                    metadata.add(entry);
+                }
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_DELIVERY, deliveries, batchSize, (ps, delivery) -> {
+            ps.setLong(1, delivery.getId());
+            ps.setObject(2, delivery.getMessageTemplateId(), Types.BIGINT);
+            ps.setString(3, delivery.getRecipientAddress());
+            ps.setString(4, delivery.getSender());
+            ps.setString(5, delivery.getIdMetadataKey());
+            ps.setString(6, delivery.getIdMetadataValue());
+            ps.setString(7, delivery.getDeliveryKey());
+            ps.setString(8, delivery.getStatus() != null ? delivery.getStatus().name() : null);
+            ps.setString(9, delivery.getStatusMessage());
+            ps.setTimestamp(10, toTimestamp(delivery.getDateCreated()));
+            ps.setTimestamp(11, toTimestamp(delivery.getDateCompleted()));
+            ps.setTimestamp(12, toTimestamp(delivery.getSendAfter()));
+            ps.setInt(13, delivery.getRetryCount());
+            ps.setTimestamp(14, toTimestamp(delivery.getNextAttemptAt()));
+            ps.setString(15, metadataConverter.convertToDatabaseColumn(delivery.getMetadata()));
+        });
+        jdbcTemplate.batchUpdate(INSERT_METADATA, metadata, batchSize, (ps, entry) -> {
+            ps.setLong(1, entry.getId());
+            ps.setLong(2, entry.getMessageDelivery().getId());
+            ps.setString(3, entry.getMetadataKey());
+            ps.setString(4, entry.getMetadataValue());
+            ps.setTimestamp(5, toTimestamp(entry.getDateCreated()));
+        });
+    }
+
+    private static BeforeExecutionGenerator generator(SharedSessionContractImplementor session, Class<?> entityClass) {
+        return (BeforeExecutionGenerator) session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(entityClass).getGenerator();
+    }
+
+    private static Timestamp toTimestamp(Date date) {
+        return date != null ? new Timestamp(date.getTime()) : null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.solmod.notifications.dispatcher.repository;
+
+import com.solmod.notifications.dispatcher.repository.domain.SolCommOutboxEntry;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface SolCommOutboxRepo extends CrudRepository<SolCommOutboxEntry, Long> {
+
+    /**
+     * Claim a batch of available entries, earliest available first, locking them until the end of the transaction, in
+     * which they are to be leased. Entries which are held, quarantined, or leased to a relay until after now are not
+     * claimed; entries locked by another relay are skipped rather than waited on
+     *
+     * @param now {@link Date} by which entries must be available, and any lease have run out
+     * @param limit {@link Limit} on the size of the batch
+     * @return List of {@link SolCommOutboxEntry} not yet published
+     */
+    // A lock timeout of -2 has Hibernate lock with SKIP LOCKED; the constant which held it, LockOptions.SKIP_LOCKED, is
+    // deprecated
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e from SolCommOutbox e " +
+            "where e.datePublished is null and e.dateQuarantined is null and e.availableAt <= :now " +
+            "and (e.claimedUntil is null or e.claimedUntil <= :now) " +
+            "order by e.availableAt, e.id")
+    List<SolCommOutboxEntry> claimAvailable(Date now, Limit limit);
+
+    /**
+     * @return Number of entries marked published
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE SolCommOutbox e set e.datePublished = :datePublished where e.id in :ids")
+    int markPublished(Collection<Long> ids, Date datePublished);
+
+    /**
+     * Make available the held entries of those of the given deliveries still pending their send window, so they're
+     * claimed once the deliveries are released
+     *
+     * @return Number of entries made available
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE SolCommOutbox e set e.availableAt = :availableAt " +
+            "where e.availableAt is null and e.datePublished is null and e.messageDeliveryId in " +
+            "(SELECT d.id from MessageDeliveries d where d.id in :deliveryIds and d.status = 'PT')")
+    int makeDeferredAvailable(Collection<Long> deliveryIds, Date availableAt);
+
+    /**
+     * Of the given deliveries, find those with a communication which can be sent again: one not quarantined
+     *
+     * @param deliveryIds Collection of delivery ids
+     * @return List of the ids of those deliveries
+     */
+    @Query("SELECT e.messageDeliveryId from SolCommOutbox e " +
+            "where e.messageDeliveryId in :deliveryIds and e.dateQuarantined is null")
+    List<Long> findResendableDeliveryIds(Collection<Long> deliveryIds);
+
+    /**
+     * Put the communications of the given deliveries back to be published, available now, as if newly written
+     *
+     * @return Number of entries requeued
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE SolCommOutbox e set e.datePublished = null, e.availableAt = :availableAt, e.claimedUntil = null, " +
+            "e.attempts = 0 where e.messageDeliveryId in :deliveryIds and e.dateQuarantined is null")
+    int requeue(Collection<Long> deliveryIds, Date availableAt);
+
+    long countByDatePublishedIsNullAndDateQuarantinedIsNull();
+
+    long countByDateQuarantinedIsNotNull();
+}
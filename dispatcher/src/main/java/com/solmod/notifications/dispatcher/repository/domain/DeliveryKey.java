@@ -0,0 +1,51 @@
+package com.solmod.notifications.dispatcher.repository.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * Fixed-length key identifying duplicate deliveries: those of the same template, to the same recipient, triggered by
+ * messages with the same id metadata. Stored on each {@link MessageDelivery} so duplicates are found by one indexed
+ * column rather than by joining to {@link MessageMetadata}.
+ * The key is the MD5 of the four values, hex encoded. It identifies rather than secures, so MD5's speed is what counts.
+ */
+public final class DeliveryKey {
+
+    public static final int LENGTH = 32;
+
+    private static final char SEPARATOR = '\u001F';
+    private static final HexFormat HEX = HexFormat.of();
+
+    private DeliveryKey() {
+    }
+
+    /**
+     * @param templateId {@code Long}
+     * @param recipientAddress {@code String}
+     * @param idMetadataKey {@code String}
+     * @param idMetadataValue {@code String}
+     * @return 32 lowercase hex characters; null values are keyed as empty
+     */
+    public static String of(Long templateId, String recipientAddress, String idMetadataKey, String idMetadataValue) {
+        String source = Objects.toString(templateId, "") + SEPARATOR + Objects.toString(recipientAddress, "") +
+                SEPARATOR + Objects.toString(idMetadataKey, "") + SEPARATOR + Objects.toString(idMetadataValue, "");
+        try {
+            return HEX.formatHex(MessageDigest.getInstance("MD5").digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support MD5
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param delivery {@link MessageDelivery}
+     * @return The key of the given delivery
+     */
+    public static String of(MessageDelivery delivery) {
+        return of(delivery.getMessageTemplateId(), delivery.getRecipientAddress(),
+                delivery.getIdMetadataKey(), delivery.getIdMetadataValue());
+    }
+}
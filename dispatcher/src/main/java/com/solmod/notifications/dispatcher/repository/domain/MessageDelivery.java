@@ -1,9 +1,14 @@
 package com.solmod.notifications.dispatcher.repository.domain;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import java.util.Date;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Record of a delivery of a message which will archive the delivery from before any attempts to delivery until
@@ -17,13 +22,27 @@ import java.util.Set;
  * </ol>
  */
 @Entity(name = "MessageDeliveries")
+@Table(indexes = {
+        @Index(name = "idx_message_deliveries_delivery_key", columnList = "deliveryKey"),
+        @Index(name = "idx_message_deliveries_status_send_after", columnList = "status, sendAfter"),
+        @Index(name = "idx_message_deliveries_status_next_attempt", columnList = "status, nextAttemptAt")})
 public class MessageDelivery {
+    // Ids are taken from the sequence a thousand at a time, the lowest of each block being the value read
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    @GeneratedValue(generator = "message_deliveries_seq")
+    @GenericGenerator(name = "message_deliveries_seq", type = SequenceStyleGenerator.class, parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "message_deliveries_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "1000"),
+            @Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo")})
     private Long id;
-    @Column(unique = true)
     private String recipientAddress;
     private Long messageTemplateId;
+    // The triggering message's id metadata, by which duplicate deliveries are counted
+    private String idMetadataKey;
+    private String idMetadataValue;
+    // Hash of the above, see DeliveryKey; kept up to date as they change
+    @Column(length = DeliveryKey.LENGTH)
+    private String deliveryKey;
     @Enumerated(EnumType.STRING)
     @Column(length = 3)
     private Status status;
@@ -31,8 +50,15 @@ public class MessageDelivery {
     private String sender;
     @OneToMany(mappedBy = "messageDelivery", cascade = CascadeType.ALL)
     private Set<MessageMetadata> messageMetadata;
+    // Metadata kept on the delivery itself, see MetadataStorage.COLUMN; lookups use the id metadata and key above
+    @Convert(converter = MetadataJsonConverter.class)
+    @Column(length = 4000)
+    private Map<String, String> metadata;
     private Date dateCreated;
     private Date dateCompleted;
+    private Date sendAfter; // With status PT, when the recipient's send window opens
+    private int retryCount; // Retries attempted so far
+    private Date nextAttemptAt; // With status PR, when the delivery is next to be retried
 
     public enum Status {
         D,  // Delivered
@@ -43,6 +69,14 @@ public class MessageDelivery {
         PT; // Pending time window
     }
 
+    /**
+     * Where a delivery's metadata is written
+     */
+    public enum MetadataStorage {
+        ROWS,   // A MessageMetadata row per key
+        COLUMN; // One JSON column on the delivery
+    }
+
     public Long getId() {
         return id;
     }
@@ -67,6 +101,36 @@ public class MessageDelivery {
         this.messageTemplateId = messageTemplateId;
     }
 
+    public String getIdMetadataKey() {
+        return idMetadataKey;
+    }
+
+    public void setIdMetadataKey(String idMetadataKey) {
+        this.idMetadataKey = idMetadataKey;
+    }
+
+    public String getIdMetadataValue() {
+        return idMetadataValue;
+    }
+
+    public void setIdMetadataValue(String idMetadataValue) {
+        this.idMetadataValue = idMetadataValue;
+    }
+
+    public String getDeliveryKey() {
+        return deliveryKey;
+    }
+
+    /**
+     * Hash the template, recipient and id metadata into the delivery key. Called on persist and update, and by writers
+     * bypassing the persistence context
+     */
+    @PrePersist
+    @PreUpdate
+    public void updateDeliveryKey() {
+        this.deliveryKey = DeliveryKey.of(this);
+    }
+
     public Status getStatus() {
         return status;
     }
@@ -99,6 +163,40 @@ public class MessageDelivery {
         this.messageMetadata = messageMetadata;
     }
 
+    /**
+     * @return Metadata kept in the delivery's own column, null if none; see {@link #getAllMetadata()}
+     */
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    public void setMetadata(Map<String, String> metadata) {
+        this.metadata = metadata;
+    }
+
+    /**
+     * @return All of the delivery's metadata, whether kept in its column or in rows, by key
+     */
+    public Map<String, String> getAllMetadata() {
+        Map<String, String> all = metadata != null ? new TreeMap<>(metadata) : new TreeMap<>();
+        if (messageMetadata != null) {
+            messageMetadata.forEach(entry -> all.put(entry.getMetadataKey(), entry.getMetadataValue()));
+        }
+        return all;
+    }
+
+    /**
+     * Move the metadata of a delivery not yet saved out of its {@link MessageMetadata} rows and into its own column,
+     * so that it's written as part of the delivery
+     */
+    public void compactMetadata() {
+        if (messageMetadata == null || messageMetadata.isEmpty()) {
+            return;
+        }
+        metadata = getAllMetadata();
+        messageMetadata = null;
+    }
+
     public Date getDateCreated() {
         return dateCreated;
     }
@@ -114,4 +212,28 @@ public class MessageDelivery {
     public void setDateCompleted(Date dateCompleted) {
         this.dateCompleted = dateCompleted;
     }
+
+    public Date getSendAfter() {
+        return sendAfter;
+    }
+
+    public void setSendAfter(Date sendAfter) {
+        this.sendAfter = sendAfter;
+    }
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(int retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    public Date getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Date nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
 }
@@ -0,0 +1,124 @@
+package com.solmod.notifications.dispatcher.repository.domain;
+
+import jakarta.persistence.*;
+
+import java.util.Date;
+
+/**
+ * Summary of the deliveries of a template to a recipient for a given id metadata key/value: how many did not fail, and
+ * when the latest was made. Maintained alongside {@link MessageDelivery} so that send rules can be checked without
+ * loading delivery history.
+ * Absent id metadata is keyed by {@link #NO_ID_METADATA} in its place: NULL is neither equal to itself in a lookup nor
+ * unique in the key, so counters keyed by it could never be found, and would be created again for every delivery.
+ */
+@Entity(name = "MessageDeliveryCounters")
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_message_delivery_counters",
+        columnNames = {"messageTemplateId", "recipientAddress", "idMetadataKey", "idMetadataValue"}),
+        indexes = @Index(name = "idx_message_delivery_counters_modified", columnList = "dateModified"))
+public class MessageDeliveryCounter {
+
+    public static final String NO_ID_METADATA = "-";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+    private Long messageTemplateId;
+    private String recipientAddress;
+    private String idMetadataKey;
+    private String idMetadataValue;
+    private long deliveryCount;
+    private Date lastDeliveryDate;
+    private Date dateModified; // By the database's clock, on every adjustment
+
+    public MessageDeliveryCounter() {
+
+    }
+
+    public MessageDeliveryCounter(Long messageTemplateId, String recipientAddress, String idMetadataKey,
+                                  String idMetadataValue) {
+        this.messageTemplateId = messageTemplateId;
+        this.recipientAddress = recipientAddress;
+        this.idMetadataKey = toKeyPart(idMetadataKey);
+        this.idMetadataValue = toKeyPart(idMetadataValue);
+    }
+
+    /**
+     * @param idMetadata Id metadata key or value, possibly null
+     * @return The given id metadata as it is keyed in a counter
+     */
+    public static String toKeyPart(String idMetadata) {
+        return idMetadata != null ? idMetadata : NO_ID_METADATA;
+    }
+
+    /**
+     * @param keyPart Id metadata key or value of a counter
+     * @return The id metadata it was keyed from, null if none
+     */
+    public static String fromKeyPart(String keyPart) {
+        return NO_ID_METADATA.equals(keyPart) ? null : keyPart;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getMessageTemplateId() {
+        return messageTemplateId;
+    }
+
+    public void setMessageTemplateId(Long messageTemplateId) {
+        this.messageTemplateId = messageTemplateId;
+    }
+
+    public String getRecipientAddress() {
+        return recipientAddress;
+    }
+
+    public void setRecipientAddress(String recipientAddress) {
+        this.recipientAddress = recipientAddress;
+    }
+
+    public String getIdMetadataKey() {
+        return idMetadataKey;
+    }
+
+    public void setIdMetadataKey(String idMetadataKey) {
+        this.idMetadataKey = idMetadataKey;
+    }
+
+    public String getIdMetadataValue() {
+        return idMetadataValue;
+    }
+
+    public void setIdMetadataValue(String idMetadataValue) {
+        this.idMetadataValue = idMetadataValue;
+    }
+
+    public long getDeliveryCount() {
+        return deliveryCount;
+    }
+
+    public void setDeliveryCount(long deliveryCount) {
+        this.deliveryCount = deliveryCount;
+    }
+
+    public Date getLastDeliveryDate() {
+        return lastDeliveryDate;
+    }
+
+    public void setLastDeliveryDate(Date lastDeliveryDate) {
+        this.lastDeliveryDate = lastDeliveryDate;
+    }
+
+    public Date getDateModified() {
+        return dateModified;
+    }
+
+    public void setDateModified(Date dateModified) {
+        this.dateModified = dateModified;
+    }
+}
@@ -1,17 +1,29 @@
 package com.solmod.notifications.dispatcher.repository.domain;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import java.util.Date;
 
 @Entity(name = "MessageMetadata")
 public class MessageMetadata {
+    // Ids are taken from the sequence a thousand at a time, as for MessageDelivery; a delivery has several
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    @GeneratedValue(generator = "message_metadata_seq")
+    @GenericGenerator(name = "message_metadata_seq", type = SequenceStyleGenerator.class, parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "message_metadata_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "1000"),
+            @Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo")})
     private Long id;
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "message_delivery_id")
     private MessageDelivery messageDelivery;
     private String metadataKey;
     private String metadataValue;
+    // That of the delivery, by which both are partitioned
+    private Date dateCreated;
 
     public MessageMetadata() {
 
@@ -54,4 +66,22 @@ public class MessageMetadata {
     public void setMetadataValue(String metadataValue) {
         this.metadataValue = metadataValue;
     }
+
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(Date dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+
+    /**
+     * Take the creation date of the delivery. Called on persist, and by writers bypassing the persistence context
+     */
+    @PrePersist
+    public void updateDateCreated() {
+        if (messageDelivery != null) {
+            this.dateCreated = messageDelivery.getDateCreated();
+        }
+    }
 }
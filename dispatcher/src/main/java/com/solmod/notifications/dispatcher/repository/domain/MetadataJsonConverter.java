@@ -0,0 +1,48 @@
+package com.solmod.notifications.dispatcher.repository.domain;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stores a delivery's metadata in one column as a flat JSON object of key to value, keys in order. Empty metadata is
+ * stored as null.
+ */
+@Converter
+public class MetadataJsonConverter implements AttributeConverter<Map<String, String>, String> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<TreeMap<String, String>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    @Override
+    public String convertToDatabaseColumn(Map<String, String> metadata) {
+        if (metadata == null || metadata.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return MAPPER.writeValueAsString(metadata instanceof TreeMap ? metadata : new TreeMap<>(metadata));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not write delivery metadata: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, String> convertToEntityAttribute(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return MAPPER.readValue(json, METADATA_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not read delivery metadata: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.solmod.notifications.dispatcher.repository.domain;
+
+import jakarta.persistence.*;
+
+import java.util.Date;
+
+/**
+ * A communication to be sent to SolComm for a {@link MessageDelivery}, written in the same transaction as the delivery
+ * and published from there by the outbox relay. Unpublished until the broker has acknowledged it.
+ * Available to the relay from availableAt; held while that is null. Once claimed, the relay has until claimedUntil for
+ * the communication to be acknowledged before it may be claimed again. Quarantined when its payload can't be read.
+ */
+@Entity(name = "SolCommOutbox")
+@Table(indexes = {
+        @Index(name = "idx_sol_comm_outbox_available", columnList = "datePublished, dateQuarantined, availableAt"),
+        @Index(name = "idx_sol_comm_outbox_delivery", columnList = "messageDeliveryId")
+})
+public class SolCommOutboxEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+    private Long messageDeliveryId;
+    @Lob
+    private String payload; // The SolCommunication, as JSON
+    private Date dateCreated;
+    private Date datePublished;
+    private Date availableAt;
+    private Date claimedUntil;
+    private int attempts;
+    private Date dateQuarantined;
+    private String quarantineReason;
+
+    public SolCommOutboxEntry() {
+
+    }
+
+    public SolCommOutboxEntry(Long messageDeliveryId, String payload, Date dateCreated) {
+        this.messageDeliveryId = messageDeliveryId;
+        this.payload = payload;
+        this.dateCreated = dateCreated;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getMessageDeliveryId() {
+        return messageDeliveryId;
+    }
+
+    public void setMessageDeliveryId(Long messageDeliveryId) {
+        this.messageDeliveryId = messageDeliveryId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(Date dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+
+    public Date getDatePublished() {
+        return datePublished;
+    }
+
+    public void setDatePublished(Date datePublished) {
+        this.datePublished = datePublished;
+    }
+
+    public Date getAvailableAt() {
+        return availableAt;
+    }
+
+    public void setAvailableAt(Date availableAt) {
+        this.availableAt = availableAt;
+    }
+
+    public Date getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    public void setClaimedUntil(Date claimedUntil) {
+        this.claimedUntil = claimedUntil;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getDateQuarantined() {
+        return dateQuarantined;
+    }
+
+    public void setDateQuarantined(Date dateQuarantined) {
+        this.dateQuarantined = dateQuarantined;
+    }
+
+    public String getQuarantineReason() {
+        return quarantineReason;
+    }
+
+    public void setQuarantineReason(String quarantineReason) {
+        this.quarantineReason = quarantineReason;
+    }
+}
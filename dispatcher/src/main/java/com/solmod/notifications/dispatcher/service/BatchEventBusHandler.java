@@ -0,0 +1,149 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.domain.SolMessage;
+import com.solmod.notifications.dispatcher.service.domain.CriteriaIndex;
+import com.solmod.notifications.dispatcher.service.domain.DispatchContext;
+import com.solmod.notifications.dispatcher.service.domain.OutboundDelivery;
+import com.solmod.notifications.dispatcher.service.domain.RoutingKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Batch-consuming variant of {@link EventBusHandler}, bound to the same {@code NotificationDispatcher-in-0} binding
+ * when selected as the function definition with the binding's consumer in batch-mode.
+ * Messages of a batch are grouped by tenant/subject/verb so each NotificationGroup is resolved once per batch. Within
+ * a group, filters share a {@link DispatchContext}, so preferences and delivery history for a given recipient are
+ * queried once for the group rather than once per message.
+ * Messages which could count against the same delivery history, having a template of the group resolve to the same
+ * recipient for the same id metadata, are chained, to be dispatched one after another in the order received: each
+ * counts the deliveries it is granted into the context before the next is filtered, so a template's send rules hold
+ * within a batch. Each chain is a unit of work of the {@link DispatchExecutor}, so when it is concurrent the messages
+ * of a batch which don't share history are dispatched at the same time. The deliveries of the whole batch are then
+ * recorded together, with their communications written to the SolComm outbox.
+ */
+@Service("NotificationDispatcherBatch")
+public class BatchEventBusHandler implements Consumer<List<SolMessage>> {
+
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    NotificationRoutingIndex routingIndex;
+    EventBusHandler eventBusHandler;
+    DispatchExecutor dispatchExecutor;
+
+    @Autowired
+    public BatchEventBusHandler(NotificationRoutingIndex routingIndex, EventBusHandler eventBusHandler,
+                                DispatchExecutor dispatchExecutor) {
+        this.routingIndex = routingIndex;
+        this.eventBusHandler = eventBusHandler;
+        this.dispatchExecutor = dispatchExecutor;
+    }
+
+    /**
+     * Message Bus Subscriber
+     * Accepts a batch of messages from the message bus, any of which may trigger notifications.
+     *
+     * @param solMessages List of {@link SolMessage} event messages from off the bus, in the order received
+     */
+    @Override
+    public void accept(final List<SolMessage> solMessages) {
+        Map<RoutingKey, List<SolMessage>> byRoute = solMessages.stream().collect(
+                Collectors.groupingBy(RoutingKey::of, LinkedHashMap::new, Collectors.toList()));
+        log.debug("Dispatching batch of {} messages across {} notification groups", solMessages.size(), byRoute.size());
+
+        List<Callable<List<OutboundDelivery>>> perChain = new ArrayList<>();
+        for (Map.Entry<RoutingKey, List<SolMessage>> route : byRoute.entrySet()) {
+            CriteriaIndex dispatchTemplates = routingIndex.getCriteriaIndex(route.getKey());
+            if (dispatchTemplates.getTemplates().isEmpty()) {
+                continue;
+            }
+
+            // One context per group: lookups are keyed by recipient, so messages for a recipient share them
+            DispatchContext context = new DispatchContext();
+            for (List<SolMessage> chain : chainByDeliveryHistory(route.getValue(), dispatchTemplates.getTemplates())) {
+                perChain.add(() -> {
+                    List<OutboundDelivery> outboundDeliveries = new ArrayList<>();
+                    for (SolMessage solMessage : chain) {
+                        List<OutboundDelivery> dispatched = eventBusHandler.dispatch(solMessage, dispatchTemplates, context);
+                        if (dispatched != null) {
+                            outboundDeliveries.addAll(dispatched);
+                        }
+                    }
+                    return outboundDeliveries;
+                });
+            }
+        }
+
+        List<OutboundDelivery> result = new ArrayList<>();
+        try {
+            for (List<OutboundDelivery> outboundDeliveries : dispatchExecutor.invokeMessages(perChain)) {
+                if (outboundDeliveries != null) {
+                    result.addAll(outboundDeliveries);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Exception dispatching batch: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        eventBusHandler.publish(result);
+    }
+
+    /**
+     * Split the messages of a group into chains, any two messages resolving a template to the same recipient for the
+     * same id metadata being in the same chain
+     *
+     * @param solMessages List of {@link SolMessage} of the group, in the order received
+     * @param templates Collection of the group's {@link MessageTemplate}s
+     * @return List of chains, each in the order received
+     */
+    static List<List<SolMessage>> chainByDeliveryHistory(List<SolMessage> solMessages,
+                                                         Collection<MessageTemplate> templates) {
+        // Union-find over the messages, joined by the first message seen with each delivery history key
+        int[] parent = new int[solMessages.size()];
+        Map<List<Object>, Integer> firstByKey = new HashMap<>();
+        for (int i = 0; i < solMessages.size(); i++) {
+            parent[i] = i;
+            SolMessage solMessage = solMessages.get(i);
+            for (MessageTemplate template : templates) {
+                Object address = solMessage.getMetadata(template.getRecipientAddressContextKey());
+                if (address == null) {
+                    continue;
+                }
+                List<Object> key = Arrays.asList(template.getMessageTemplateID(), address.toString(),
+                        solMessage.getIdMetadataKey(), solMessage.getIdMetadataValue());
+                Integer first = firstByKey.putIfAbsent(key, i);
+                if (first != null) {
+                    parent[find(parent, i)] = find(parent, first);
+                }
+            }
+        }
+
+        Map<Integer, List<SolMessage>> chains = new LinkedHashMap<>();
+        for (int i = 0; i < solMessages.size(); i++) {
+            chains.computeIfAbsent(find(parent, i), root -> new ArrayList<>()).add(solMessages.get(i));
+        }
+        return new ArrayList<>(chains.values());
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,175 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.DeferredDeliveriesReleasedEvent;
+import com.solmod.notifications.dispatcher.domain.DeliveryDeferredEvent;
+import com.solmod.notifications.dispatcher.repository.MessageDeliveryRepo;
+import com.solmod.notifications.dispatcher.service.domain.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Holds deliveries pending their recipient's send window (status PT) until the window opens, then releases them in
+ * batches with a {@link DeferredDeliveriesReleasedEvent}.
+ * Pending deliveries are read once at startup, their ids and release times only, and those deferred since are added as
+ * their {@link DeliveryDeferredEvent}s arrive. Events are local, so every reload interval those coming due within the
+ * next two intervals are read again, by the status and send time index, picking up deliveries deferred by other
+ * dispatchers well before they're due; each is only scheduled once. They are held in a {@link TimingWheel} advanced
+ * every tick, so the thousands of deliveries released at the top of an hour, as blackout windows end, cost no more to
+ * find than a handful. A batch which fails to release is scheduled again after the retry delay.
+ * Released deliveries are claimed by {@link MessageDeliveryService#releaseDeferredDeliveries}, which moves those still
+ * pending on, and makes their communications available to the SolComm outbox relay. Every dispatcher schedules every
+ * pending delivery it knows of, so each is released by several; the claim is what sends it only once.
+ */
+@Service
+public class DeferredDeliveryScheduler {
+
+    private static final int WHEEL_SIZE = 64;
+    // 64^5 ticks: decades, at a tick of a second
+    private static final int WHEEL_LEVELS = 5;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final MessageDeliveryRepo deliveryRepo;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Clock clock;
+    private final TransactionTemplate readTransaction;
+    private final int releaseBatchSize;
+    private final long reloadIntervalMillis;
+    private final long releaseRetryDelayMillis;
+
+    // Guarded by itself, as are the ids it holds
+    private final TimingWheel wheel;
+    private final Set<Long> scheduledIds = new HashSet<>();
+
+    @Autowired
+    public DeferredDeliveryScheduler(MessageDeliveryRepo deliveryRepo, ApplicationEventPublisher eventPublisher,
+                                     Clock clock, PlatformTransactionManager transactionManager,
+                                     @Value("${solmod.notification-engine.deferred-delivery.tick-ms:1000}") long tickMillis,
+                                     @Value("${solmod.notification-engine.deferred-delivery.release-batch-size:1000}") int releaseBatchSize,
+                                     @Value("${solmod.notification-engine.deferred-delivery.reload-interval-ms:60000}") long reloadIntervalMillis,
+                                     @Value("${solmod.notification-engine.deferred-delivery.release-retry-delay-ms:10000}") long releaseRetryDelayMillis) {
+        this.deliveryRepo = deliveryRepo;
+        this.eventPublisher = eventPublisher;
+        this.clock = clock;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.releaseBatchSize = releaseBatchSize;
+        this.reloadIntervalMillis = reloadIntervalMillis;
+        this.releaseRetryDelayMillis = releaseRetryDelayMillis;
+        this.wheel = new TimingWheel(tickMillis, WHEEL_SIZE, WHEEL_LEVELS, clock.millis());
+    }
+
+    /**
+     * Schedule every delivery pending its send window for release. Those whose window has already opened are released
+     * on the next tick
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadDeferredDeliveries() {
+        try {
+            readTransaction.executeWithoutResult(status -> {
+                try (Stream<MessageDeliveryRepo.DeferredDelivery> deferred = deliveryRepo.streamDeferredDeliveries()) {
+                    deferred.forEach(delivery -> schedule(delivery.getId(), delivery.getSendAfter().toInstant()));
+                }
+            });
+            log.info("Scheduled {} deliveries pending their send window", getScheduledCount());
+        } catch (RuntimeException e) {
+            log.error("Could not load deliveries pending their send window; they will be released on restart: {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Schedule the deliveries pending their send window which open within the next two reload intervals, not already
+     * scheduled, so those deferred by other dispatchers are released here too
+     */
+    @Scheduled(fixedDelayString = "${solmod.notification-engine.deferred-delivery.reload-interval-ms:60000}",
+            initialDelayString = "${solmod.notification-engine.deferred-delivery.reload-interval-ms:60000}")
+    public void reloadComingDue() {
+        Date before = new Date(clock.millis() + 2 * reloadIntervalMillis);
+        try {
+            readTransaction.executeWithoutResult(status -> {
+                try (Stream<MessageDeliveryRepo.DeferredDelivery> deferred =
+                             deliveryRepo.streamDeferredDeliveriesBefore(before)) {
+                    deferred.forEach(delivery -> schedule(delivery.getId(), delivery.getSendAfter().toInstant()));
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not reload deliveries pending their send window; retrying next interval: {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeliveryDeferred(DeliveryDeferredEvent event) {
+        schedule(event.deliveryId(), event.sendAfter());
+    }
+
+    /**
+     * Schedule the delivery for release, unless already scheduled
+     *
+     * @param deliveryId {@code Long}
+     * @param sendAfter {@link Instant} from which the delivery may be released
+     */
+    public void schedule(Long deliveryId, Instant sendAfter) {
+        synchronized (wheel) {
+            if (scheduledIds.add(deliveryId)) {
+                wheel.add(deliveryId, sendAfter.toEpochMilli());
+            }
+        }
+    }
+
+    /**
+     * Advance to the present, releasing the deliveries come due
+     */
+    @Scheduled(fixedDelayString = "${solmod.notification-engine.deferred-delivery.tick-ms:1000}")
+    public void releaseDue() {
+        List<Long> due = new ArrayList<>();
+        synchronized (wheel) {
+            wheel.advance(clock.millis(), due::add);
+            due.forEach(scheduledIds::remove);
+        }
+
+        for (int from = 0; from < due.size(); from += releaseBatchSize) {
+            List<Long> batch = due.subList(from, Math.min(due.size(), from + releaseBatchSize));
+            try {
+                eventPublisher.publishEvent(new DeferredDeliveriesReleasedEvent(List.copyOf(batch)));
+            } catch (RuntimeException e) {
+                log.error("Could not release {} deferred deliveries; retrying in {} ms: {}", batch.size(),
+                        releaseRetryDelayMillis, e.getMessage(), e);
+                Instant retryAt = Instant.ofEpochMilli(clock.millis() + releaseRetryDelayMillis);
+                batch.forEach(id -> schedule(id, retryAt));
+            }
+        }
+        if (!due.isEmpty()) {
+            log.debug("Released {} deliveries whose send window opened", due.size());
+        }
+    }
+
+    /**
+     * @return Number of deliveries scheduled, not yet released
+     */
+    public long getScheduledCount() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solmod.notifications.dispatcher.service.domain.DeliveryPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSetMetaData;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the monthly partitions of deliveries and their metadata: creates those for the months ahead, and archives
+ * those past retention. An expired partition is streamed, from each table, to a gzipped file of JSON lines under the
+ * archive directory, and only once both files are on disk is it dropped from both; no row is ever deleted.
+ * Retention is never shorter than the longest resendInterval of any template. Expired partitions are archived each on
+ * its own: one still holding deliveries pending context, callback, retry or their send window is kept until they
+ * complete, and one which can't be archived is tried again next run, neither holding up the partitions after it.
+ * Send rules are served from {@link com.solmod.notifications.dispatcher.repository.domain.MessageDeliveryCounter}s,
+ * which are neither partitioned nor touched here; they count every delivery made before, those made before counters
+ * were kept having been backfilled by migration V2_8, so send rules hold once a partition is dropped. Until the
+ * counters are known to be backfilled, summaries are read from the deliveries themselves, so nothing is archived.
+ * Partitioning is MySQL's; the tables are partitioned by migration V2_7.
+ */
+@Service
+public class DeliveryArchiver {
+
+    static final String DELIVERIES = "message_deliveries";
+    static final String METADATA = "message_metadata";
+    private static final List<String> TABLES = List.of(DELIVERIES, METADATA);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final NotificationRoutingIndex routingIndex;
+    private final MessageDeliveryService deliveryService;
+    private final Clock clock;
+    private final boolean enabled;
+    private final Duration retention;
+    private final Path archiveDir;
+    private final int partitionsAhead;
+
+    @Autowired
+    public DeliveryArchiver(DataSource dataSource, ObjectMapper objectMapper, NotificationRoutingIndex routingIndex,
+                            MessageDeliveryService deliveryService, Clock clock,
+                            @Value("${solmod.notification-engine.archival.enabled:false}") boolean enabled,
+                            @Value("${solmod.notification-engine.archival.retention:P400D}") Duration retention,
+                            @Value("${solmod.notification-engine.archival.archive-dir:archive}") Path archiveDir,
+                            @Value("${solmod.notification-engine.archival.partitions-ahead:3}") int partitionsAhead) {
+        this(streamingJdbcTemplate(dataSource), objectMapper, routingIndex, deliveryService, clock, enabled, retention,
+                archiveDir, partitionsAhead);
+    }
+
+    DeliveryArchiver(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, NotificationRoutingIndex routingIndex,
+                     MessageDeliveryService deliveryService, Clock clock, boolean enabled, Duration retention,
+                     Path archiveDir, int partitionsAhead) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.routingIndex = routingIndex;
+        this.deliveryService = deliveryService;
+        this.clock = clock;
+        this.enabled = enabled;
+        this.retention = retention;
+        this.archiveDir = archiveDir;
+        this.partitionsAhead = partitionsAhead;
+    }
+
+    /**
+     * Create the partitions for the months ahead, then archive and drop those expired
+     */
+    @Scheduled(cron = "${solmod.notification-engine.archival.cron:0 30 3 * * *}")
+    public void maintainPartitions() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            createPartitionsAhead();
+            archiveExpired();
+        } catch (RuntimeException e) {
+            log.error("Could not maintain delivery partitions; retrying next run: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Split a partition for each month from the last bounded partition through the months ahead out of the unbounded
+     * partition, in each table
+     */
+    void createPartitionsAhead() {
+        YearMonth through = YearMonth.now(clock).plusMonths(partitionsAhead);
+        for (String table : TABLES) {
+            List<DeliveryPartition> partitions = getPartitions(table);
+            LocalDateTime lastBound = partitions.stream()
+                    .filter(partition -> !partition.isUnbounded())
+                    .map(DeliveryPartition::lessThan)
+                    .max(LocalDateTime::compareTo)
+                    .orElseThrow(() -> new IllegalStateException(table + " is not partitioned by date created"));
+
+            List<DeliveryPartition> added = new ArrayList<>();
+            for (YearMonth month = YearMonth.from(lastBound); !month.isAfter(through); month = month.plusMonths(1)) {
+                added.add(DeliveryPartition.ofMonth(month));
+            }
+            if (added.isEmpty()) {
+                continue;
+            }
+
+            added.add(new DeliveryPartition(DeliveryPartition.UNBOUNDED_NAME, null));
+            jdbcTemplate.execute("ALTER TABLE " + table + " REORGANIZE PARTITION " + DeliveryPartition.UNBOUNDED_NAME +
+                    " INTO (" + added.stream().map(DeliveryPartition::toDefinition).collect(Collectors.joining(", ")) + ")");
+            log.info("Added {} monthly partitions to {}, through {}", added.size() - 1, table, through);
+        }
+    }
+
+    /**
+     * Archive and drop, oldest first, each partition wholly past retention, skipping those still holding pending
+     * deliveries and those which fail to archive
+     *
+     * @return Number of partitions archived
+     */
+    int archiveExpired() {
+        if (!routingIndex.isLoaded()) {
+            log.info("Routing index not loaded; archival waits for the longest resendInterval to be known");
+            return 0;
+        }
+        if (!deliveryService.isCountersBackfilled()) {
+            log.warn("Delivery counters not backfilled; archival waits, as delivery summaries are read from deliveries");
+            return 0;
+        }
+
+        LocalDateTime cutoff = LocalDateTime.now(clock).minus(getRetention());
+        int archived = 0;
+        for (DeliveryPartition partition : getPartitions(DELIVERIES)) {
+            if (!partition.isExpired(cutoff)) {
+                break;
+            }
+
+            try {
+                if (archive(partition)) {
+                    archived++;
+                }
+            } catch (RuntimeException e) {
+                log.error("Could not archive partition {}; retrying next run: {}", partition.name(), e.getMessage(), e);
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Archive and drop the partition from each table, unless it still holds pending deliveries
+     *
+     * @return true once archived and dropped; false if kept for its pending deliveries
+     */
+    private boolean archive(DeliveryPartition partition) {
+        Long pending = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + DELIVERIES + " PARTITION (" +
+                partition.name() + ") WHERE status IN ('PC', 'PD', 'PR', 'PT')", Long.class);
+        if (pending != null && pending > 0) {
+            log.warn("Keeping expired partition {} with {} deliveries still pending", partition.name(), pending);
+            return false;
+        }
+
+        List<String> tables = TABLES.stream()
+                .filter(table -> table.equals(DELIVERIES) || hasPartition(table, partition.name()))
+                .toList();
+        for (String table : tables) {
+            export(table, partition);
+        }
+        for (String table : tables) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " DROP PARTITION " + partition.name());
+        }
+        log.info("Archived and dropped partition {} of deliveries created before {}", partition.name(),
+                partition.lessThan());
+        return true;
+    }
+
+    /**
+     * @return Retention of deliveries, or the longest resendInterval of any template should that be longer
+     */
+    Duration getRetention() {
+        Duration longestResendInterval = Duration.ofMinutes(routingIndex.getLongestResendInterval());
+        return longestResendInterval.compareTo(retention) > 0 ? longestResendInterval : retention;
+    }
+
+    /**
+     * @param table {@code String}
+     * @return List of the table's {@link DeliveryPartition}s, in order; empty if it isn't partitioned
+     */
+    List<DeliveryPartition> getPartitions(String table) {
+        return jdbcTemplate.query("SELECT partition_name, partition_description FROM information_schema.partitions " +
+                        "WHERE table_schema = DATABASE() AND table_name = ? AND partition_name IS NOT NULL " +
+                        "ORDER BY partition_ordinal_position",
+                (rs, rowNum) -> DeliveryPartition.of(rs.getString(1), rs.getString(2)), table);
+    }
+
+    private boolean hasPartition(String table, String name) {
+        return getPartitions(table).stream().anyMatch(partition -> partition.name().equals(name));
+    }
+
+    /**
+     * Write every row of the table's partition as a line of JSON to {@code <archive-dir>/<table>/<partition>.jsonl.gz},
+     * through a temporary file moved into place once synced to disk
+     */
+    private void export(String table, DeliveryPartition partition) {
+        Path file = archiveDir.resolve(table).resolve(partition.name() + ".jsonl.gz");
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long[] rows = {0};
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileOutputStream fileOut = new FileOutputStream(temp.toFile())) {
+                GZIPOutputStream gzip = new GZIPOutputStream(fileOut, BUFFER_SIZE);
+                JsonGenerator json = objectMapper.getFactory().createGenerator(gzip);
+                json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                json.setRootValueSeparator(null);
+                jdbcTemplate.query("SELECT * FROM " + table + " PARTITION (" + partition.name() + ")", rs -> {
+                    try {
+                        ResultSetMetaData columns = rs.getMetaData();
+                        json.writeStartObject();
+                        for (int column = 1; column <= columns.getColumnCount(); column++) {
+                            json.writeFieldName(columns.getColumnLabel(column).toLowerCase());
+                            json.writeObject(rs.getObject(column));
+                        }
+                        json.writeEndObject();
+                        json.writeRaw('\n');
+                        rows[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                json.close();
+                gzip.finish();
+                fileOut.getFD().sync();
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | UncheckedIOException e) {
+            deleteQuietly(temp);
+            throw new IllegalStateException("Could not archive partition " + partition.name() + " of " + table + ": " +
+                    e.getMessage(), e);
+        } catch (RuntimeException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+        log.info("Archived {} rows of {} partition {} to {}", rows[0], table, partition.name(), file);
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    // Archived partitions are read row by row: a fetch size of Integer.MIN_VALUE has MySQL stream the result set
+    private static JdbcTemplate streamingJdbcTemplate(DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+        return jdbcTemplate;
+    }
+}
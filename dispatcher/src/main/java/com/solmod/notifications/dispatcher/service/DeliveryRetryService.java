@@ -0,0 +1,198 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.repository.MessageDeliveryRepo;
+import com.solmod.notifications.dispatcher.repository.SolCommOutboxRepo;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.solmod.notifications.dispatcher.repository.domain.MessageDelivery.Status.F;
+import static com.solmod.notifications.dispatcher.repository.domain.MessageDelivery.Status.PR;
+
+/**
+ * Retries failed attempts at delivery as their templates allow. A delivery whose attempt fails is put pending retry
+ * (status PR) with its next attempt due after the template's {@code minWaitForRetry}, doubling with each retry made,
+ * or failed straight away should it have had the template's {@code maxRetries} already.
+ * Deliveries coming due are claimed in batches, each in a transaction of its own, with rows locked by another
+ * dispatcher skipped rather than waited on; batches are claimed one after another until no more are due, so a backlog
+ * built up during an outage drains at the rate of whole batches. Each claimed delivery is sent again by requeueing its
+ * communication in the SolComm outbox, in the claim's transaction, and only then has its retry counted. Those out of
+ * retries, or with no communication to send again, fail instead.
+ * Templates are looked up in the {@link NotificationRoutingIndex}, so nothing is claimed until it has loaded.
+ */
+@Service
+public class DeliveryRetryService {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final MessageDeliveryRepo deliveryRepo;
+    private final SolCommOutboxRepo outboxRepo;
+    private final MessageDeliveryService deliveryService;
+    private final NotificationRoutingIndex routingIndex;
+    private final Clock clock;
+    private final TransactionTemplate claimTransaction;
+    private final int batchSize;
+    private final Duration maxBackoff;
+    private final int defaultMaxRetries;
+
+    @Autowired
+    public DeliveryRetryService(MessageDeliveryRepo deliveryRepo, SolCommOutboxRepo outboxRepo,
+                                MessageDeliveryService deliveryService, NotificationRoutingIndex routingIndex,
+                                Clock clock, PlatformTransactionManager transactionManager,
+                                @Value("${solmod.notification-engine.retry.batch-size:500}") int batchSize,
+                                @Value("${solmod.notification-engine.retry.max-backoff:PT1H}") Duration maxBackoff,
+                                @Value("${solmod.notification-engine.retry.default-max-retries:3}") int defaultMaxRetries) {
+        this.deliveryRepo = deliveryRepo;
+        this.outboxRepo = outboxRepo;
+        this.deliveryService = deliveryService;
+        this.routingIndex = routingIndex;
+        this.clock = clock;
+        this.claimTransaction = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxBackoff = maxBackoff;
+        this.defaultMaxRetries = defaultMaxRetries;
+    }
+
+    /**
+     * Put a delivery whose attempt failed pending retry, due once its backoff has passed; or fail it, should its
+     * template allow it no more retries
+     *
+     * @param deliveryId {@code Long}
+     * @param statusMessage {@code String} reason the attempt failed
+     * @return The updated {@link MessageDelivery}, or null if there is no such delivery
+     */
+    @Transactional
+    public MessageDelivery scheduleRetry(Long deliveryId, String statusMessage) {
+        MessageDelivery delivery = deliveryRepo.findById(deliveryId).orElse(null);
+        if (delivery == null) {
+            return null;
+        }
+        // Until the routing index has loaded, whether retries remain is left to the claim
+        if (routingIndex.isLoaded()) {
+            String notRetried = getNotRetriedReason(delivery);
+            if (notRetried != null) {
+                return deliveryService.updateStatus(deliveryId, F, notRetried + ": " + statusMessage);
+            }
+        }
+
+        delivery = deliveryService.updateStatus(deliveryId, PR, statusMessage);
+        delivery.setNextAttemptAt(Date.from(clock.instant().plus(getBackoff(delivery))));
+        return deliveryRepo.save(delivery);
+    }
+
+    /**
+     * Claim and process batches of deliveries due to be retried until a batch comes up short
+     */
+    @Scheduled(fixedDelayString = "${solmod.notification-engine.retry.poll-interval-ms:5000}")
+    public void retryDue() {
+        if (!routingIndex.isLoaded()) {
+            log.debug("Routing index not loaded; not claiming retries");
+            return;
+        }
+
+        int claimed;
+        do {
+            claimed = claimTransaction.execute(status -> claimBatch());
+        } while (claimed == batchSize);
+    }
+
+    /**
+     * Claim one batch of deliveries due, requeueing the communication of each with retries left in the outbox and
+     * counting its retry, its next attempt put off by its backoff in case this one never reports back. The rest fail
+     *
+     * @return Number of deliveries claimed
+     */
+    int claimBatch() {
+        Instant now = clock.instant();
+        List<MessageDelivery> due = deliveryRepo.claimDueRetries(Date.from(now), Limit.of(batchSize));
+
+        Map<Long, String> failing = new LinkedHashMap<>();
+        List<MessageDelivery> retryable = new ArrayList<>(due.size());
+        for (MessageDelivery delivery : due) {
+            String notRetried = getNotRetriedReason(delivery);
+            if (notRetried != null) {
+                failing.put(delivery.getId(), notRetried + ": " + delivery.getStatusMessage());
+            } else {
+                retryable.add(delivery);
+            }
+        }
+
+        Set<Long> resendable = retryable.isEmpty() ? Set.of() : new HashSet<>(outboxRepo.findResendableDeliveryIds(
+                retryable.stream().map(MessageDelivery::getId).toList()));
+        List<Long> retrying = new ArrayList<>(retryable.size());
+        for (MessageDelivery delivery : retryable) {
+            if (resendable.contains(delivery.getId())) {
+                delivery.setRetryCount(delivery.getRetryCount() + 1);
+                delivery.setNextAttemptAt(Date.from(now.plus(getBackoff(delivery))));
+                retrying.add(delivery.getId());
+            } else {
+                failing.put(delivery.getId(), "No communication to send again; not retried: " +
+                        delivery.getStatusMessage());
+            }
+        }
+
+        // Retries are counted before the requeue or any failure: each flushes, then clears, the persistence context
+        if (!retrying.isEmpty()) {
+            outboxRepo.requeue(retrying, Date.from(now));
+        }
+        failing.forEach((deliveryId, message) -> deliveryService.updateStatus(deliveryId, F, message));
+
+        if (!due.isEmpty()) {
+            log.debug("Claimed {} deliveries due for retry; retrying {}", due.size(), retrying.size());
+        }
+        return due.size();
+    }
+
+    /**
+     * The wait before the delivery's next retry: its template's {@code minWaitForRetry}, doubled for each retry it has
+     * had, up to the configured maximum
+     *
+     * @param delivery {@link MessageDelivery}
+     * @return {@link Duration}
+     */
+    Duration getBackoff(MessageDelivery delivery) {
+        MessageTemplate template = routingIndex.getTemplate(delivery.getMessageTemplateId());
+        long minWaitSeconds = template == null || template.getMinWaitForRetry() == null
+                ? 0 : Math.max(0, template.getMinWaitForRetry());
+        int doublings = Math.min(delivery.getRetryCount(), 30);
+
+        Duration backoff = Duration.ofSeconds(minWaitSeconds).multipliedBy(1L << doublings);
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+
+    /**
+     * @return Why the delivery isn't to be retried, or null if it is: its template no longer exists, or it has had
+     * the template's {@code maxRetries}, or the default should the template set none
+     */
+    private String getNotRetriedReason(MessageDelivery delivery) {
+        MessageTemplate template = routingIndex.getTemplate(delivery.getMessageTemplateId());
+        if (template == null) {
+            return "Template no longer exists; not retried";
+        }
+        int maxRetries = template.getMaxRetries() == null ? defaultMaxRetries : template.getMaxRetries();
+        if (delivery.getRetryCount() >= maxRetries) {
+            return String.format("Failed after %d retries", delivery.getRetryCount());
+        }
+        return null;
+    }
+}
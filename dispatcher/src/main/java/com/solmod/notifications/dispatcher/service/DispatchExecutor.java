@@ -0,0 +1,175 @@
+package com.solmod.notifications.dispatcher.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the units of work of a dispatch: each message of a batch, and the per-template filtering of a message.
+ * When concurrent, each kind of unit runs on a pool of platform threads, as many as the concurrency limit, so a slow
+ * database call only holds up the unit waiting on it, and a burst of messages or templates queues rather than starting
+ * a thread apiece. Template work, which is where the blocking filter queries happen, is thereby throttled to the limit;
+ * message units only wait on their template units, on a pool of their own, which keeps a message waiting on a queued
+ * template from starving the template units it waits on.
+ * When not, units run one after another on the calling thread.
+ * Independently of the above, the filters of a template group may be run at the same time as units of their own, on a
+ * pool likewise, built on first use.
+ * Virtual threads are not used, the build targeting Java 17; the former virtual-threads flag now only turns on
+ * concurrent dispatch, with a warning.
+ */
+@Component
+public class DispatchExecutor {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final int concurrencyLimit;
+    private final AsyncTaskExecutor messageExecutor;
+    private final AsyncTaskExecutor templateExecutor;
+    // Built on first use, as filters are only run on their own threads in parallel mode
+    private volatile AsyncTaskExecutor filterExecutor;
+
+    @Autowired
+    public DispatchExecutor(@Value("${solmod.notification-engine.dispatch.concurrent:false}") boolean concurrent,
+                            @Value("${solmod.notification-engine.dispatch.virtual-threads:false}") boolean virtualThreads,
+                            @Value("${solmod.notification-engine.dispatch.concurrency-limit:64}") int concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+        if (virtualThreads) {
+            log.warn("Virtual threads are not supported by this build, which targets Java 17; dispatching concurrently " +
+                    "on pools of {} platform threads. Set solmod.notification-engine.dispatch.concurrent instead",
+                    concurrencyLimit);
+        }
+        if (concurrent || virtualThreads) {
+            messageExecutor = buildExecutor("dispatch-msg-");
+            templateExecutor = buildExecutor("dispatch-tpl-");
+        } else {
+            messageExecutor = null;
+            templateExecutor = null;
+        }
+    }
+
+    public DispatchExecutor(boolean concurrent, int concurrencyLimit) {
+        this(concurrent, false, concurrencyLimit);
+    }
+
+    /**
+     * @return true when units of work run concurrently
+     */
+    public boolean isConcurrent() {
+        return templateExecutor != null;
+    }
+
+    /**
+     * Run one unit of work per message, returning once all have completed
+     *
+     * @param tasks List of {@link Callable}
+     * @return List of results, in the order of the tasks
+     * @throws ExecutionException wrapping the first failure, raised only after every task has finished
+     */
+    public <T> List<T> invokeMessages(List<Callable<T>> tasks) throws ExecutionException {
+        return invokeAll(messageExecutor, tasks);
+    }
+
+    /**
+     * Run one unit of work per template, no more than the concurrency limit at a time, returning once all completed
+     *
+     * @param tasks List of {@link Callable}
+     * @return List of results, in the order of the tasks
+     * @throws ExecutionException wrapping the first failure, raised only after every task has finished
+     */
+    public <T> List<T> invokeTemplates(List<Callable<T>> tasks) throws ExecutionException {
+        return invokeAll(templateExecutor, tasks);
+    }
+
+    /**
+     * Run one unit of work per filter, no more than the concurrency limit at a time, returning once all have completed
+     *
+     * @param tasks List of {@link Callable}
+     * @return List of results, in the order of the tasks
+     * @throws ExecutionException wrapping the first failure, raised only after every task has finished
+     */
+    public <T> List<T> invokeFilters(List<Callable<T>> tasks) throws ExecutionException {
+        AsyncTaskExecutor executor = filterExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (filterExecutor == null) {
+                    filterExecutor = buildExecutor("dispatch-flt-");
+                }
+                executor = filterExecutor;
+            }
+        }
+        return invokeAll(executor, tasks);
+    }
+
+    @PreDestroy
+    public void close() {
+        shutdown(messageExecutor);
+        shutdown(templateExecutor);
+        shutdown(filterExecutor);
+    }
+
+    private <T> List<T> invokeAll(AsyncTaskExecutor executor, List<Callable<T>> tasks) throws ExecutionException {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(executor == null ? runInline(task) : executor.submitCompletable(task));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        ExecutionException firstFailure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                firstFailure = firstFailure == null ? e : firstFailure;
+                results.add(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new ExecutionException("Interrupted awaiting dispatch work", e);
+            }
+        }
+
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+        return results;
+    }
+
+    private <T> Future<T> runInline(Callable<T> task) {
+        try {
+            return CompletableFuture.completedFuture(task.call());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * A pool of as many platform threads as the concurrency limit, queueing the units beyond it
+     */
+    private AsyncTaskExecutor buildExecutor(String threadNamePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(concurrencyLimit);
+        executor.setMaxPoolSize(concurrencyLimit);
+        executor.setDaemon(true);
+        executor.initialize();
+        return executor;
+    }
+
+    private void shutdown(AsyncTaskExecutor executor) {
+        if (executor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,22 +1,32 @@
 package com.solmod.notifications.dispatcher.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.solmod.notifications.admin.service.NotificationAccessService;
-import com.solmod.notifications.admin.web.model.MessageTemplateGroupDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.solmod.notifications.dispatcher.domain.MessageTemplate;
 import com.solmod.notifications.dispatcher.domain.SolCommunication;
 import com.solmod.notifications.dispatcher.domain.SolMessage;
 import com.solmod.notifications.dispatcher.filter.FilterException;
+import com.solmod.notifications.dispatcher.filter.FilterResponse;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.service.domain.CriteriaIndex;
+import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
+import com.solmod.notifications.dispatcher.service.domain.DispatchContext;
+import com.solmod.notifications.dispatcher.service.domain.OutboundDelivery;
+import com.solmod.notifications.dispatcher.service.domain.RoutingKey;
 import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTemplateGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static com.solmod.notifications.dispatcher.service.domain.DeliveryPermission.Verdict.SEND_LATER;
 
 /**
  * This service receives and handles messages which qualify for an externally configured pub/sub queue subscription.
@@ -24,21 +34,26 @@ import java.util.stream.Collectors;
  * be a notification.
  * // TODO: add automation to alter the queue subscription when a hitherto unknown subject/verb is added to
  * // TODO: NotificationGroups, subscribing the dispatcher to the new subject/verb combo
+ * The resulting deliveries are recorded together with their {@link SolCommunication}s, which are written to the SolComm
+ * outbox in the same transaction and published from there by the {@link SolCommOutboxRelay}, so no communication is
+ * sent without its delivery recorded, nor lost should SolComm be unavailable. The handlers are consumers, with no
+ * output binding of their own.
  */
 @Service("NotificationDispatcher")
-public class EventBusHandler implements Function<SolMessage, List<SolCommunication>> {
+public class EventBusHandler implements Consumer<SolMessage> {
 
     Logger log = LoggerFactory.getLogger(getClass());
 
-    NotificationAccessService accessService;
+    NotificationRoutingIndex routingIndex;
     MessageFilterService messageFilterService;
-    ObjectMapper objectMapper;
+    MessageDeliveryService deliveryService;
 
     @Autowired
-    public EventBusHandler(NotificationAccessService accessService, MessageFilterService messageFilterService, ObjectMapper objectMapper) {
-        this.accessService = accessService;
+    public EventBusHandler(NotificationRoutingIndex routingIndex, MessageFilterService messageFilterService,
+                           MessageDeliveryService deliveryService) {
+        this.routingIndex = routingIndex;
         this.messageFilterService = messageFilterService;
-        this.objectMapper = objectMapper;
+        this.deliveryService = deliveryService;
     }
 
     /**
@@ -47,63 +62,144 @@ public class EventBusHandler implements Function<SolMessage, List<SolCommunicati
      * already exists for the given trigger.
      *
      * @param solMessage {@link SolMessage} event message from off the bus
-     * @return List of {@link SolCommunication}s suited to send to the sender
      */
     @Override
-    public List<SolCommunication> apply(final SolMessage solMessage) {
+    public void accept(final SolMessage solMessage) {
+
+        CriteriaIndex dispatchTemplates = routingIndex.getCriteriaIndex(RoutingKey.of(solMessage));
+        if (dispatchTemplates.getTemplates().isEmpty()) {
+            // TODO: An error should be logged suggesting adjusting subscription
+            return;
+        }
+
+        publish(dispatch(solMessage, dispatchTemplates, new DispatchContext()));
+    }
 
-        MessageTemplateGroupDTO templates = accessService.getNotificationTemplateGroup(solMessage.getTenantId(), solMessage.getSubject(), solMessage.getVerb());
-        // TODO: If the above returned no results, then an error should be logged suggesting adjusting subscription
+    /**
+     * Record dispatched deliveries, each with its communication written to the SolComm outbox
+     *
+     * @param outboundDeliveries List of {@link OutboundDelivery}, possibly null
+     */
+    void publish(List<OutboundDelivery> outboundDeliveries) {
+        if (outboundDeliveries != null && !outboundDeliveries.isEmpty()) {
+            deliveryService.recordOutboundDeliveries(outboundDeliveries);
+        }
+    }
+
+    /**
+     * Run the given templates through the filters for the message, and build a delivery for each template left
+     * qualified. Deliveries a filter defers are left pending their time window (PT), the rest pending delivery (PD).
+     *
+     * @param solMessage {@link SolMessage} event message from off the bus
+     * @param dispatchTemplates {@link CriteriaIndex} of the {@link MessageTemplate}s of the message's NotificationGroup
+     * @param context {@link DispatchContext} with which filters share lookups, possibly across messages
+     * @return List of {@link OutboundDelivery}s, each delivery with the {@link SolCommunication} suited to send to the
+     * sender; empty if none qualify
+     */
+    List<OutboundDelivery> dispatch(final SolMessage solMessage, CriteriaIndex dispatchTemplates,
+                                    DispatchContext context) {
         TriggeredMessageTemplateGroup messagesToSend = new TriggeredMessageTemplateGroup();
-        Set<MessageTemplate> dispatchTemplates = templates.getMessageTemplates().stream().map(
-                t -> objectMapper.convertValue(t, MessageTemplate.class)).collect(Collectors.toSet());
-        messagesToSend.setQualifiedTemplates(dispatchTemplates); // Before filters, all templates qualify
+        // Before filters, all templates qualify
+        messagesToSend.setQualifiedTemplates(new HashSet<>(dispatchTemplates.getTemplates()));
+        messagesToSend.setContext(context);
+        messagesToSend.setCriteriaIndex(dispatchTemplates);
 
+        FilterResponse verdicts;
         try {
-            messageFilterService.runThroughFilters(messagesToSend, solMessage);
+            verdicts = messageFilterService.runThroughFilters(messagesToSend, solMessage);
         } catch (FilterException e) {
-            // TODO
+            log.error("Exception filtering templates for {}.{}, none dispatched: {}", solMessage.getSubject(),
+                    solMessage.getVerb(), e.getMessage(), e);
+            return List.of();
+        }
+        countGranted(solMessage, messagesToSend);
+
+        return buildDeliveries(solMessage, messagesToSend, verdicts);
+    }
+
+    /**
+     * Build a delivery, with its communication, for every template left qualified whose recipient resolves from the
+     * message. A template to be sent later is deferred to the time its permission gives.
+     */
+    private List<OutboundDelivery> buildDeliveries(SolMessage solMessage, TriggeredMessageTemplateGroup templateGroup,
+                                                   FilterResponse verdicts) {
+        if (templateGroup.getQualifiedTemplates().isEmpty()) {
+            return List.of();
         }
 
-/*
-create deliveries for each template/recipient
-        for (MessageTemplate curTemplate : dispatchTemplates) {
-            Object o = solMessage.getMetadata().get(curTemplate.getRecipientAddressContextKey());
+        Date now = new Date();
+        Map<String, String> metadata = new HashMap<>();
+        if (solMessage.getMetadata() != null) {
+            solMessage.getMetadata().forEach((key, value) -> {
+                if (value != null) {
+                    metadata.put(key, value.toString());
+                }
+            });
+        }
+        List<OutboundDelivery> outbound = new ArrayList<>();
+        for (MessageTemplate curTemplate : templateGroup.getQualifiedTemplates()) {
+            Object address = solMessage.getMetadata(curTemplate.getRecipientAddressContextKey());
+            if (address == null) {
+                log.warn("No recipient at {} for template {}, not dispatched", curTemplate.getRecipientAddressContextKey(),
+                        curTemplate.getMessageTemplateID());
+                continue;
+            }
+
+            MessageDelivery delivery = new MessageDelivery();
+            delivery.setMessageTemplateId(curTemplate.getMessageTemplateID());
+            delivery.setRecipientAddress(address.toString());
+            delivery.setSender(curTemplate.getSender());
+            delivery.setIdMetadataKey(solMessage.getIdMetadataKey());
+            delivery.setIdMetadataValue(solMessage.getIdMetadataValue());
+            delivery.setMetadata(new HashMap<>(metadata));
+            delivery.setDateCreated(now);
+            delivery.setStatus(MessageDelivery.Status.PD);
+            DeliveryPermission permission = verdicts.getPermissions().get(curTemplate.getMessageTemplateID());
+            if (permission != null && permission.getVerdict() == SEND_LATER && permission.getSendAfter() != null) {
+                delivery.setStatus(MessageDelivery.Status.PT);
+                delivery.setSendAfter(Date.from(permission.getSendAfter()));
+            }
+
+            SolCommunication communication = new SolCommunication();
+            communication.setMessageTemplateId(curTemplate.getMessageTemplateID());
+            communication.setRecipient(delivery.getRecipientAddress());
+            communication.setContent(buildContent(curTemplate));
+            outbound.add(new OutboundDelivery(delivery, communication));
         }
-*/
-        /*
-        In:
-            Message metadata -> Context
-            Resolved recipient
-            Sender
-            Rendered message body (Content Manager + metadata)
-
-        2. Create NotificationDelivery for each found
-
-        TODO: Add Notification Group context builder here
-        TODO: Add MessageTheme context builder here
-        2. Apply MessageTheme metadata:criteria filter
-            Update NotificationDelivery for each reject
-        3. Apply MessageTheme delivery rules filter
-            Update NotificationDelivery for each reject
-        TODO: Add MessageTemplate context builder here
-        4. Apply MessageTemplate delivery rules filter
-            Update NotificationDelivery for each reject
-        5. Apply UserPreferences filter
-            Update NotificationDelivery for each reject
-        6. Unfiltered/remaining/qualifying SolMessages...
-         */
-/*
-                trigger = logNotificationTrigger(notificationEvent);
-                Map<String, Object> context = flatten(Map.of("solmod_evt", solMessage));
-                // TODO: Plus we have to get the context that's already been persisted from previous matching triggers
-                Map<String, String> relevantContext = persistRelevantContext(trigger, context, messageConfigs);
-*/
-
-
-        return null;
+
+        return outbound;
     }
 
+    /**
+     * @return The template's content keys as JSON, for SolComm to render against the delivery's metadata; null if none
+     */
+    private String buildContent(MessageTemplate template) {
+        if (template.getContentKeySet() == null || template.getContentKeySet().getContentKeys() == null) {
+            return null;
+        }
+        try {
+            return SolMessage.objectMapper.writeValueAsString(template.getContentKeySet().getContentKeys());
+        } catch (JsonProcessingException e) {
+            log.error("Exception writing content keys of template {}: {}", template.getMessageTemplateID(),
+                    e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Count the delivery of every template left qualified into the group's context, so messages dispatched after this
+     * one with the same context see it in their delivery history
+     */
+    private void countGranted(SolMessage solMessage, TriggeredMessageTemplateGroup templateGroup) {
+        Date now = new Date();
+        for (MessageTemplate curTemplate : templateGroup.getQualifiedTemplates()) {
+            Object address = solMessage.getMetadata(curTemplate.getRecipientAddressContextKey());
+            if (address != null) {
+                templateGroup.getContext().countDelivery(curTemplate.getMessageTemplateID(), address.toString(),
+                        solMessage.getIdMetadataKey(), solMessage.getIdMetadataValue(), now);
+            }
+        }
+    }
 }
 
 
@@ -0,0 +1,445 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solmod.notifications.dispatcher.domain.DeferredDeliveriesReleasedEvent;
+import com.solmod.notifications.dispatcher.domain.DeliveryDeferredEvent;
+import com.solmod.notifications.dispatcher.domain.SolCommunication;
+import com.solmod.notifications.dispatcher.repository.MessageDeliveryCounterRepo;
+import com.solmod.notifications.dispatcher.repository.MessageDeliveryCounterWriter;
+import com.solmod.notifications.dispatcher.repository.MessageDeliveryRepo;
+import com.solmod.notifications.dispatcher.repository.MessageDeliveryWriter;
+import com.solmod.notifications.dispatcher.repository.SolCommOutboxRepo;
+import com.solmod.notifications.dispatcher.repository.domain.DeliveryKey;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDeliveryCounter;
+import com.solmod.notifications.dispatcher.repository.domain.SolCommOutboxEntry;
+import com.solmod.notifications.dispatcher.service.domain.DeliveryKeyFilter;
+import com.solmod.notifications.dispatcher.service.domain.DeliverySummary;
+import com.solmod.notifications.dispatcher.service.domain.OutboundDelivery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.solmod.notifications.dispatcher.repository.domain.MessageDelivery.Status.F;
+import static com.solmod.notifications.dispatcher.repository.domain.MessageDelivery.Status.PT;
+
+/**
+ * Records {@link MessageDelivery}s and their changes of status, keeping each {@link MessageDeliveryCounter} in step in
+ * the same transaction. Deliveries should only be written through here, or their counters will drift.
+ * Counters are backfilled from the deliveries made before they were kept by migration V2_8; until they are found to
+ * count every delivery, at startup, delivery summaries are read from the deliveries themselves.
+ * Most lookups are for keys never delivered, so the key of every counted delivery is also kept in a
+ * {@link DeliveryKeyFilter}, loaded from the counters at startup. Keys it answers absent are summarized as
+ * {@link DeliverySummary#NONE} without going to the database. Keys counted by other dispatchers are merged in every
+ * refresh interval, from the counters adjusted since the last merge, looking back a further overlap for adjustments
+ * committed late. Where dispatchers share the database, a key first counted by another may so be answered absent for
+ * up to the refresh interval; deployments which can't allow that should disable the filter.
+ * Deliveries recorded pending their recipient's send window are announced with a {@link DeliveryDeferredEvent}.
+ * Deliveries may be recorded together with the communication to send for each, which is written to the SolComm outbox
+ * in the same transaction, for the {@link SolCommOutboxRelay} to publish; this is how dispatch records its deliveries.
+ * Metadata of new deliveries is moved into their own column or left in rows by the
+ * {@link MessageDelivery.MetadataStorage} configured.
+ * Bursts of deliveries are best recorded with {@link #recordDeliveries}, which writes them through the
+ * {@link MessageDeliveryWriter} and adjusts each counter once for all of its deliveries.
+ */
+@Service
+public class MessageDeliveryService {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final MessageDeliveryRepo deliveryRepo;
+    private final MessageDeliveryWriter deliveryWriter;
+    private final MessageDeliveryCounterRepo counterRepo;
+    private final MessageDeliveryCounterWriter counterWriter;
+    private final SolCommOutboxRepo outboxRepo;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readTransaction;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MessageDelivery.MetadataStorage metadataStorage;
+
+    // Null when disabled; only consulted once loaded, though kept up to date from the start
+    private final DeliveryKeyFilter keyFilter;
+    private volatile boolean keyFilterLoaded;
+    private final Duration keyFilterOverlap;
+    // Latest adjustment of a counter merged into the filter, by the database's clock
+    private volatile Date keyFilterMergedThrough;
+    private volatile boolean countersBackfilled;
+
+    @Autowired
+    public MessageDeliveryService(MessageDeliveryRepo deliveryRepo, MessageDeliveryWriter deliveryWriter,
+                                  MessageDeliveryCounterRepo counterRepo, MessageDeliveryCounterWriter counterWriter,
+                                  SolCommOutboxRepo outboxRepo, ObjectMapper objectMapper,
+                                  PlatformTransactionManager transactionManager,
+                                  ApplicationEventPublisher eventPublisher,
+                                  @Value("${solmod.notification-engine.delivery-metadata.storage:COLUMN}") MessageDelivery.MetadataStorage metadataStorage,
+                                  @Value("${solmod.notification-engine.delivery-key-filter.enabled:true}") boolean keyFilterEnabled,
+                                  @Value("${solmod.notification-engine.delivery-key-filter.expected-keys:1000000}") long expectedKeys,
+                                  @Value("${solmod.notification-engine.delivery-key-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                                  @Value("${solmod.notification-engine.delivery-key-filter.refresh-overlap:PT1M}") Duration keyFilterOverlap) {
+        this.deliveryRepo = deliveryRepo;
+        this.deliveryWriter = deliveryWriter;
+        this.counterRepo = counterRepo;
+        this.counterWriter = counterWriter;
+        this.outboxRepo = outboxRepo;
+        this.objectMapper = objectMapper;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.eventPublisher = eventPublisher;
+        this.metadataStorage = metadataStorage;
+        this.keyFilter = keyFilterEnabled ? new DeliveryKeyFilter(expectedKeys, falsePositiveRate) : null;
+        this.keyFilterOverlap = keyFilterOverlap;
+    }
+
+    /**
+     * Add the key of every counter with deliveries to the {@link DeliveryKeyFilter}, after which it is consulted
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadDeliveryKeyFilter() {
+        if (keyFilter == null) {
+            return;
+        }
+
+        try {
+            keyFilterMergedThrough = readTransaction.execute(status -> {
+                try (Stream<MessageDeliveryCounterRepo.CounterKey> keys = counterRepo.streamByDeliveryCountGreaterThan(0)) {
+                    return mergeKeys(keys, new Date(0));
+                }
+            });
+            keyFilterLoaded = true;
+            log.info("Loaded {} delivery keys into a filter of {} bits and {} hashes; false positive rate {}",
+                    keyFilter.getKeysAdded(), keyFilter.getBitSize(), keyFilter.getHashCount(),
+                    keyFilter.getFalsePositiveRate());
+        } catch (RuntimeException e) {
+            log.error("Could not load delivery key filter; looking up every delivery summary: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Merge the keys of the counters adjusted since the last merge, less the overlap, into the loaded
+     * {@link DeliveryKeyFilter}, so it learns of deliveries counted by other dispatchers
+     */
+    @Scheduled(fixedDelayString = "${solmod.notification-engine.delivery-key-filter.refresh-interval-ms:1000}")
+    public void refreshDeliveryKeyFilter() {
+        if (!keyFilterLoaded) {
+            return;
+        }
+
+        Date since = new Date(keyFilterMergedThrough.getTime() - keyFilterOverlap.toMillis());
+        try {
+            keyFilterMergedThrough = readTransaction.execute(status -> {
+                try (Stream<MessageDeliveryCounterRepo.CounterKey> keys =
+                             counterRepo.streamByDateModifiedGreaterThanEqual(since)) {
+                    return mergeKeys(keys, keyFilterMergedThrough);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not refresh delivery key filter; retrying next interval: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Check that the counters count every delivery they could, having been backfilled, after which summaries are read
+     * from them rather than the deliveries
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkCountersBackfilled() {
+        try {
+            readTransaction.executeWithoutResult(status -> {
+                long counted = counterRepo.sumKeyedDeliveryCounts();
+                long delivered = deliveryRepo.countKeyedDeliveries();
+                countersBackfilled = counted >= delivered;
+                if (!countersBackfilled) {
+                    log.warn("Delivery counters count {} of {} deliveries, pending migration V2_8; reading delivery " +
+                            "summaries from the deliveries", counted, delivered);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not check delivery counters; reading delivery summaries from the deliveries: {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return true once the counters are known to count every delivery, and summaries are read from them
+     */
+    public boolean isCountersBackfilled() {
+        return countersBackfilled;
+    }
+
+    /**
+     * @return {@link DeliveryKeyFilter}, for its size and false positive rate; null when disabled
+     */
+    public DeliveryKeyFilter getDeliveryKeyFilter() {
+        return keyFilter;
+    }
+
+    /**
+     * @return true once the {@link DeliveryKeyFilter} is loaded and answering lookups
+     */
+    public boolean isDeliveryKeyFilterLoaded() {
+        return keyFilterLoaded;
+    }
+
+    /**
+     * Save a new delivery, counting it unless it has already failed. One pending its recipient's send window is
+     * announced, to be released when the window opens
+     *
+     * @param delivery {@link MessageDelivery} with its template, recipient and id metadata set, and when PT, sendAfter
+     * @return The saved {@link MessageDelivery}
+     */
+    @Transactional
+    public MessageDelivery recordDelivery(MessageDelivery delivery) {
+        if (delivery.getDateCreated() == null) {
+            delivery.setDateCreated(new Date());
+        }
+        storeMetadata(delivery);
+        MessageDelivery saved = deliveryRepo.save(delivery);
+
+        countRecorded(saved);
+        return saved;
+    }
+
+    /**
+     * Save a burst of new deliveries with their metadata, written in JDBC batches rather than through the persistence
+     * context. Each counter is adjusted once, by the number of its deliveries counted, up to the latest of their dates.
+     * Deliveries pending their recipient's send window are announced as by {@link #recordDelivery}
+     *
+     * @param deliveries List of {@link MessageDelivery}, each with its template, recipient and id metadata set
+     * @return The same deliveries, each with its id set; they are not managed, so are to be loaded to be changed
+     */
+    @Transactional
+    public List<MessageDelivery> recordDeliveries(List<MessageDelivery> deliveries) {
+        Date now = new Date();
+        for (MessageDelivery delivery : deliveries) {
+            if (delivery.getDateCreated() == null) {
+                delivery.setDateCreated(now);
+            }
+            storeMetadata(delivery);
+        }
+        deliveryWriter.insertAll(deliveries);
+
+        // Of the deliveries counted for each key, the one with the latest delivery date, and how many there are
+        Map<String, MessageDelivery> latestByKey = new LinkedHashMap<>();
+        Map<String, Long> countByKey = new HashMap<>();
+        for (MessageDelivery delivery : deliveries) {
+            if (delivery.getStatus() == F) {
+                continue;
+            }
+            latestByKey.merge(delivery.getDeliveryKey(), delivery,
+                    (latest, next) -> getDeliveryDate(next).after(getDeliveryDate(latest)) ? next : latest);
+            countByKey.merge(delivery.getDeliveryKey(), 1L, Long::sum);
+        }
+        latestByKey.forEach((key, latest) -> adjustCounter(latest, countByKey.get(key)));
+
+        for (MessageDelivery delivery : deliveries) {
+            if (delivery.getStatus() == PT && delivery.getSendAfter() != null) {
+                eventPublisher.publishEvent(
+                        new DeliveryDeferredEvent(delivery.getId(), delivery.getSendAfter().toInstant()));
+            }
+        }
+        return deliveries;
+    }
+
+    /**
+     * Save new deliveries together with the communication to send for each, which is written to the SolComm outbox.
+     * Communications of deliveries pending their send window are held there until the delivery is released.
+     * Deliveries are recorded as by {@link #recordDeliveries}, then their communications written in JDBC batches
+     *
+     * @param outboundDeliveries List of {@link OutboundDelivery}, each delivery with its template, recipient and id
+     *                           metadata set
+     * @return List of the saved {@link MessageDelivery}s, in the order given; they are not managed
+     */
+    @Transactional
+    public List<MessageDelivery> recordOutboundDeliveries(List<OutboundDelivery> outboundDeliveries) {
+        Date now = new Date();
+        List<MessageDelivery> saved = recordDeliveries(outboundDeliveries.stream().map(OutboundDelivery::delivery).toList());
+
+        List<SolCommOutboxEntry> entries = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            MessageDelivery delivery = saved.get(i);
+            SolCommunication communication = outboundDeliveries.get(i).communication();
+            if (communication.getCommunicationId() == null) {
+                communication.setCommunicationId(delivery.getId());
+            }
+            SolCommOutboxEntry entry = new SolCommOutboxEntry(delivery.getId(), toPayload(communication), now);
+            // Held while the delivery is pending its send window
+            entry.setAvailableAt(delivery.getStatus() == PT ? null : now);
+            entries.add(entry);
+        }
+        outboxRepo.saveAll(entries);
+        return saved;
+    }
+
+    /**
+     * Claim released deliveries still pending their send window, moving them on to pending delivery and making their
+     * held communications available to the SolComm outbox relay. Deliveries released by several dispatchers at once
+     * are claimed by one: the others find them moved on, and their communications already available
+     *
+     * @param event {@link DeferredDeliveriesReleasedEvent}
+     */
+    @EventListener
+    @Transactional
+    public void releaseDeferredDeliveries(DeferredDeliveriesReleasedEvent event) {
+        List<Long> deliveryIds = event.deliveryIds();
+        int available = outboxRepo.makeDeferredAvailable(deliveryIds, new Date());
+        int released = deliveryRepo.releaseDeferred(deliveryIds);
+        log.debug("Released {} of {} deferred deliveries, {} with communications to send", released,
+                deliveryIds.size(), available);
+    }
+
+    /**
+     * Change the status of a delivery. A delivery moving to or from failed is taken off or put back on its count; one
+     * moving to delivered is completed now, unless already completed.
+     *
+     * @param deliveryId {@code Long}
+     * @param status {@link MessageDelivery.Status}
+     * @param statusMessage {@code String}, e.g. the reason for failure
+     * @return The updated {@link MessageDelivery}, or null if there is no such delivery
+     */
+    @Transactional
+    public MessageDelivery updateStatus(Long deliveryId, MessageDelivery.Status status, String statusMessage) {
+        MessageDelivery delivery = deliveryRepo.findById(deliveryId).orElse(null);
+        if (delivery == null) {
+            log.warn("No delivery {} to update to status {}", deliveryId, status);
+            return null;
+        }
+
+        boolean wasCounted = delivery.getStatus() != F;
+        delivery.setStatus(status);
+        delivery.setStatusMessage(statusMessage);
+        if (status == MessageDelivery.Status.D && delivery.getDateCompleted() == null) {
+            delivery.setDateCompleted(new Date());
+        }
+        MessageDelivery saved = deliveryRepo.save(delivery);
+
+        boolean isCounted = status != F;
+        adjustCounter(saved, (isCounted ? 1 : 0) - (wasCounted ? 1 : 0));
+        return saved;
+    }
+
+    /**
+     * Get the summaries of the deliveries of each of the given templates to a recipient for the given id metadata
+     *
+     * @param templateIds Collection of template ids
+     * @param recipientAddress {@code String}
+     * @param idMetadataKey {@code String}
+     * @param idMetadataValue {@code String}
+     * @return Map of template id to {@link DeliverySummary}, {@link DeliverySummary#NONE} for those never delivered
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, DeliverySummary> getDeliverySummaries(Collection<Long> templateIds, String recipientAddress,
+                                                           String idMetadataKey, String idMetadataValue) {
+        Map<Long, DeliverySummary> result = new HashMap<>();
+        if (!countersBackfilled) {
+            templateIds.forEach(templateId -> result.put(templateId, DeliverySummary.NONE));
+            deliveryRepo.findAllDeliveriesForTemplates(templateIds, recipientAddress, idMetadataKey, idMetadataValue)
+                    .stream()
+                    .collect(Collectors.groupingBy(MessageDelivery::getMessageTemplateId))
+                    .forEach((templateId, deliveries) -> result.put(templateId, DeliverySummary.of(deliveries)));
+            return result;
+        }
+
+        List<Long> delivered = new ArrayList<>(templateIds.size());
+        for (Long templateId : templateIds) {
+            result.put(templateId, DeliverySummary.NONE);
+            if (!keyFilterLoaded ||
+                    keyFilter.mightContain(DeliveryKey.of(templateId, recipientAddress, idMetadataKey, idMetadataValue))) {
+                delivered.add(templateId);
+            }
+        }
+        if (delivered.isEmpty()) {
+            return result;
+        }
+
+        for (MessageDeliveryCounter counter :
+                counterRepo.findCounters(delivered, recipientAddress, MessageDeliveryCounter.toKeyPart(idMetadataKey),
+                        MessageDeliveryCounter.toKeyPart(idMetadataValue))) {
+            result.put(counter.getMessageTemplateId(), DeliverySummary.of(counter));
+        }
+        return result;
+    }
+
+    /**
+     * Add each key to the filter
+     *
+     * @return The latest adjustment of those keys, or the given date if later
+     */
+    private Date mergeKeys(Stream<MessageDeliveryCounterRepo.CounterKey> keys, Date mergedThrough) {
+        Date[] latest = {mergedThrough};
+        keys.forEach(key -> {
+            keyFilter.add(DeliveryKey.of(key.getMessageTemplateId(), key.getRecipientAddress(),
+                    MessageDeliveryCounter.fromKeyPart(key.getIdMetadataKey()),
+                    MessageDeliveryCounter.fromKeyPart(key.getIdMetadataValue())));
+            if (key.getDateModified() != null && key.getDateModified().after(latest[0])) {
+                latest[0] = key.getDateModified();
+            }
+        });
+        return latest[0];
+    }
+
+    /**
+     * Count a newly saved delivery unless it has already failed, and announce it should it be pending its send window
+     */
+    private void countRecorded(MessageDelivery saved) {
+        if (saved.getStatus() != F) {
+            adjustCounter(saved, 1);
+        }
+        if (saved.getStatus() == PT && saved.getSendAfter() != null) {
+            eventPublisher.publishEvent(new DeliveryDeferredEvent(saved.getId(), saved.getSendAfter().toInstant()));
+        }
+    }
+
+    private void storeMetadata(MessageDelivery delivery) {
+        if (metadataStorage == MessageDelivery.MetadataStorage.COLUMN) {
+            delivery.compactMetadata();
+        }
+    }
+
+    private String toPayload(SolCommunication communication) {
+        try {
+            return objectMapper.writeValueAsString(communication);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(
+                    "Could not write communication " + communication.getCommunicationId() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adjust the delivery's counter in place, creating it with this adjustment if this is the first delivery counted.
+     * A counted delivery moves the last delivery date forward to its own, should it be later.
+     */
+    private void adjustCounter(MessageDelivery delivery, long delta) {
+        boolean counted = delivery.getStatus() != F;
+        if (counted && keyFilter != null) {
+            keyFilter.add(DeliveryKey.of(delivery));
+        }
+        counterWriter.adjust(delivery.getMessageTemplateId(), delivery.getRecipientAddress(),
+                delivery.getIdMetadataKey(), delivery.getIdMetadataValue(), delta,
+                counted ? getDeliveryDate(delivery) : null);
+    }
+
+    private static Date getDeliveryDate(MessageDelivery delivery) {
+        return delivery.getDateCompleted() != null ? delivery.getDateCompleted() : delivery.getDateCreated();
+    }
+}
@@ -1,34 +1,201 @@
 package com.solmod.notifications.dispatcher.service;
 
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
 import com.solmod.notifications.dispatcher.domain.SolMessage;
 import com.solmod.notifications.dispatcher.filter.FilterException;
+import com.solmod.notifications.dispatcher.filter.FilterResponse;
 import com.solmod.notifications.dispatcher.filter.MessageDeliveryFilter;
+import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
+import com.solmod.notifications.dispatcher.service.domain.FilterStatistics;
 import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTemplateGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import static com.solmod.notifications.dispatcher.service.domain.DeliveryPermission.Verdict.SEND_NEVER;
 
 @Service
 public class MessageFilterService {
 
-    private final Set<MessageDeliveryFilter> deliveryFilters;
+    public static final String MERGED_RESPONSE_NAME = "merged";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final DispatchExecutor dispatchExecutor;
+    private final boolean parallelFilters;
+    private final boolean adaptiveOrdering;
+    private final long adaptiveMinSamples;
+
+    private final Map<MessageDeliveryFilter, FilterStatistics> statistics = new IdentityHashMap<>();
+    private volatile List<MessageDeliveryFilter> filterChain;
 
     @Autowired
-    public MessageFilterService(Set<MessageDeliveryFilter> deliveryFilters) {
-        this.deliveryFilters = deliveryFilters;
+    public MessageFilterService(@Qualifier("deliveryFilters") List<MessageDeliveryFilter> deliveryFilters,
+                                DispatchExecutor dispatchExecutor,
+                                @Value("${solmod.notification-engine.filters.parallel:false}") boolean parallelFilters,
+                                @Value("${solmod.notification-engine.filters.adaptive-ordering.enabled:false}") boolean adaptiveOrdering,
+                                @Value("${solmod.notification-engine.filters.adaptive-ordering.min-samples:1000}") long adaptiveMinSamples) {
+        this.dispatchExecutor = dispatchExecutor;
+        this.parallelFilters = parallelFilters;
+        this.adaptiveOrdering = adaptiveOrdering;
+        this.adaptiveMinSamples = adaptiveMinSamples;
+
+        // Cheapest first; the configured order breaks ties
+        List<MessageDeliveryFilter> chain = new ArrayList<>(deliveryFilters);
+        chain.sort(Comparator.comparingInt(MessageDeliveryFilter::getCostHint));
+        chain.forEach(f -> statistics.put(f, new FilterStatistics()));
+        this.filterChain = Collections.unmodifiableList(chain);
     }
 
     /**
-     * This method WILL modify the contents of the provided {@link TriggeredMessageTemplateGroup} param.
-     * If original {@link TriggeredMessageTemplateGroup} is required alongside filtered, clone before calling
+     * This method WILL modify the contents of the provided {@link TriggeredMessageTemplateGroup} param: templates any
+     * filter deems SEND_NEVER are removed from it.
+     * If original {@link TriggeredMessageTemplateGroup} is required alongside filtered, clone before calling.
+     * When the {@link DispatchExecutor} is concurrent, each template is filtered on its own as a separate unit of work,
+     * after each filter has prefetched for the whole group per {@link MessageDeliveryFilter#prefetch}.
+     * Filters run one after another, cheapest first, and a template rejected by one filter is not evaluated by those
+     * after it. In parallel mode, the filters are instead run at the same time over every template; filters only read
+     * the group, so they may.
      *
      * @param templateGroup {@link TriggeredMessageTemplateGroup}
      * @param solMessage {@link SolMessage}
+     * @return {@link FilterResponse} holding one permission per template, being the one which prevails across filters
+     * per {@link DeliveryPermission#mostRestrictive}
+     */
+    public FilterResponse runThroughFilters(TriggeredMessageTemplateGroup templateGroup, final SolMessage solMessage) throws FilterException {
+        if (!dispatchExecutor.isConcurrent()) {
+            return applyFilters(templateGroup, solMessage);
+        }
+
+        // Batch the filters' lookups across the group, which the single template groups share through its context
+        for (MessageDeliveryFilter deliveryFilter : filterChain) {
+            deliveryFilter.prefetch(templateGroup, solMessage);
+        }
+
+        List<TriggeredMessageTemplateGroup> templateOnlyGroups = new ArrayList<>();
+        List<Callable<FilterResponse>> perTemplate = new ArrayList<>();
+        for (MessageTemplate curTemplate : templateGroup.getQualifiedTemplates()) {
+            TriggeredMessageTemplateGroup templateOnly = templateGroup.forTemplate(curTemplate);
+            templateOnlyGroups.add(templateOnly);
+            perTemplate.add(() -> applyFilters(templateOnly, solMessage));
+        }
+
+        FilterResponse verdicts = new FilterResponse(MERGED_RESPONSE_NAME);
+        for (FilterResponse templateVerdict : invoke(perTemplate, true)) {
+            verdicts.merge(templateVerdict);
+        }
+
+        Set<MessageTemplate> remaining = new HashSet<>();
+        templateOnlyGroups.forEach(g -> remaining.addAll(g.getQualifiedTemplates()));
+        templateGroup.setQualifiedTemplates(remaining);
+        return verdicts;
+    }
+
+    /**
+     * @return The filters in the order they currently run
+     */
+    public List<MessageDeliveryFilter> getFilterChain() {
+        return filterChain;
+    }
+
+    /**
+     * @param filter {@link MessageDeliveryFilter} of the chain
+     * @return {@link FilterStatistics} of the filter since startup
+     */
+    public FilterStatistics getStatistics(MessageDeliveryFilter filter) {
+        return statistics.get(filter);
+    }
+
+    private FilterResponse applyFilters(TriggeredMessageTemplateGroup templateGroup, final SolMessage solMessage) throws FilterException {
+        FilterResponse verdicts = new FilterResponse(MERGED_RESPONSE_NAME);
+        if (parallelFilters) {
+            List<Callable<FilterResponse>> perFilter = new ArrayList<>();
+            for (MessageDeliveryFilter deliveryFilter : filterChain) {
+                perFilter.add(() -> applyFilter(deliveryFilter, templateGroup, solMessage));
+            }
+            invoke(perFilter, false).forEach(verdicts::merge);
+            removeRejected(templateGroup, verdicts);
+        } else {
+            for (MessageDeliveryFilter deliveryFilter : filterChain) {
+                if (templateGroup.getQualifiedTemplates().isEmpty()) {
+                    break;
+                }
+                verdicts.merge(applyFilter(deliveryFilter, templateGroup, solMessage));
+                removeRejected(templateGroup, verdicts);
+            }
+        }
+
+        if (adaptiveOrdering) {
+            reorderFilterChain();
+        }
+        return verdicts;
+    }
+
+    private FilterResponse applyFilter(MessageDeliveryFilter deliveryFilter, TriggeredMessageTemplateGroup templateGroup,
+                                       SolMessage solMessage) throws FilterException {
+        long start = System.nanoTime();
+        FilterResponse response = deliveryFilter.apply(templateGroup, solMessage);
+        long rejected = response.getPermissions().values().stream()
+                .filter(p -> p.getVerdict() == SEND_NEVER)
+                .count();
+        statistics.get(deliveryFilter).record(templateGroup.getQualifiedTemplates().size(), (int) rejected,
+                System.nanoTime() - start);
+        return response;
+    }
+
+    private void removeRejected(TriggeredMessageTemplateGroup templateGroup, FilterResponse verdicts) {
+        Set<MessageTemplate> remaining = new HashSet<>(templateGroup.getQualifiedTemplates());
+        remaining.removeIf(t -> {
+            DeliveryPermission permission = verdicts.getPermissions().get(t.getMessageTemplateID());
+            return permission != null && permission.getVerdict() == SEND_NEVER;
+        });
+        templateGroup.setQualifiedTemplates(remaining);
+    }
+
+    /**
+     * Order filters with enough samples by {@link FilterStatistics#getRank()}, ahead of those without, which keep
+     * their cost order. The chain is short, so this is cheap enough to do after every evaluation.
      */
-    public void runThroughFilters(TriggeredMessageTemplateGroup templateGroup, final SolMessage solMessage) throws FilterException {
-        for (MessageDeliveryFilter deliveryFilter : deliveryFilters) {
-            deliveryFilter.apply(templateGroup, solMessage);
+    private void reorderFilterChain() {
+        Comparator<MessageDeliveryFilter> bySamples = Comparator.comparing(f -> !isSampled(f));
+        Comparator<MessageDeliveryFilter> byRank = Comparator.comparingDouble(
+                f -> isSampled(f) ? statistics.get(f).getRank() : f.getCostHint());
+
+        List<MessageDeliveryFilter> current = filterChain;
+        List<MessageDeliveryFilter> reordered = new ArrayList<>(current);
+        reordered.sort(bySamples.thenComparing(byRank));
+        if (!reordered.equals(current)) {
+            log.debug("Reordering filter chain to {}", reordered);
+            filterChain = Collections.unmodifiableList(reordered);
+        }
+    }
+
+    private boolean isSampled(MessageDeliveryFilter filter) {
+        return statistics.get(filter).getTemplatesEvaluated() >= adaptiveMinSamples;
+    }
+
+    private List<FilterResponse> invoke(List<Callable<FilterResponse>> tasks, boolean perTemplate) throws FilterException {
+        try {
+            return perTemplate ? dispatchExecutor.invokeTemplates(tasks) : dispatchExecutor.invokeFilters(tasks);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FilterException filterException) {
+                throw filterException;
+            }
+            throw new FilterException("Exception filtering templates: " + e.getCause().getMessage(), e.getCause());
         }
     }
 }
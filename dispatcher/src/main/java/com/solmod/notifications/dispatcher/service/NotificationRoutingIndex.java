@@ -0,0 +1,188 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.admin.domain.NotificationGroupsChangedEvent;
+import com.solmod.notifications.admin.service.NotificationAccessService;
+import com.solmod.notifications.admin.web.model.MessageTemplateGroupDTO;
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.service.domain.CriteriaIndex;
+import com.solmod.notifications.dispatcher.service.domain.RoutingKey;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of every NotificationGroup, keyed by tenant/subject/verb, holding the dispatch
+ * {@link MessageTemplate}s ready to filter. Templates are converted, and their criteria compiled into a
+ * {@link CriteriaIndex}, once per load; the same instances are handed to every message routed to their group.
+ * The index is loaded in full at startup and replaced as a whole when configuration changes, routes and templates
+ * published together as one snapshot, so a lookup never observes a partially loaded index, nor one load's routes with
+ * another's templates. Because a loaded index holds every group, a key absent from it has no NotificationGroup and is
+ * answered without going to the database.
+ * Changes made through this instance reload the index at once. Changes made through any other instance, admin or
+ * dispatcher, are only seen at the next scheduled reload: up to {@code routing.refresh-interval-ms} later, five minutes
+ * by default, until when this instance routes by the groups as they were.
+ * Should a full load fail, lookups fall back to the database one key at a time, remembering both found and missing
+ * groups until the next full load succeeds.
+ */
+@Service
+public class NotificationRoutingIndex {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final NotificationAccessService accessService;
+
+    // Null until loaded in full
+    private volatile Snapshot snapshot;
+    private final Map<RoutingKey, CriteriaIndex> fallbackRoutes = new ConcurrentHashMap<>();
+    private final AtomicLong unroutedLookups = new AtomicLong();
+
+    @Autowired
+    public NotificationRoutingIndex(NotificationAccessService accessService) {
+        this.accessService = accessService;
+    }
+
+    /**
+     * Get the dispatch templates of the NotificationGroup the key routes to
+     *
+     * @param key {@link RoutingKey}
+     * @return Unmodifiable Set of {@link MessageTemplate}, empty if there is no NotificationGroup for the key
+     */
+    public Set<MessageTemplate> getTemplates(RoutingKey key) {
+        return getCriteriaIndex(key).getTemplates();
+    }
+
+    /**
+     * Get the dispatch templates of the NotificationGroup the key routes to, with their criteria compiled
+     *
+     * @param key {@link RoutingKey}
+     * @return {@link CriteriaIndex}, {@link CriteriaIndex#EMPTY} if there is no NotificationGroup for the key
+     */
+    public CriteriaIndex getCriteriaIndex(RoutingKey key) {
+        Snapshot loaded = snapshot;
+        CriteriaIndex result = loaded != null
+                ? loaded.routes().getOrDefault(key, CriteriaIndex.EMPTY)
+                : getFallbackRoute(key);
+
+        if (result.getTemplates().isEmpty()) {
+            unroutedLookups.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Get a dispatch template by its id, as of the last full load
+     *
+     * @param templateId {@code Long}
+     * @return {@link MessageTemplate}, or null if there is no such template or the index has yet to load in full
+     */
+    public MessageTemplate getTemplate(Long templateId) {
+        Snapshot loaded = snapshot;
+        return loaded != null ? loaded.templatesById().get(templateId) : null;
+    }
+
+    /**
+     * @return The longest resendInterval of any template, in minutes, as of the last full load; 0 if there is none
+     */
+    public int getLongestResendInterval() {
+        Snapshot loaded = snapshot;
+        if (loaded == null) {
+            return 0;
+        }
+        return loaded.templatesById().values().stream()
+                .map(MessageTemplate::getResendInterval)
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .max()
+                .orElse(0);
+    }
+
+    /**
+     * @return true once the index has loaded in full, after which a template absent from it does not exist
+     */
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Load every NotificationGroup and swap the result in as the index
+     */
+    @PostConstruct
+    @Scheduled(initialDelayString = "${solmod.notification-engine.routing.refresh-interval-ms:300000}",
+            fixedDelayString = "${solmod.notification-engine.routing.refresh-interval-ms:300000}")
+    public void refresh() {
+        try {
+            Map<RoutingKey, CriteriaIndex> loaded = new HashMap<>();
+            Map<Long, MessageTemplate> loadedTemplates = new HashMap<>();
+            for (MessageTemplateGroupDTO group : accessService.getAllNotificationTemplateGroups()) {
+                CriteriaIndex groupTemplates = toDispatchTemplates(group);
+                loaded.put(new RoutingKey(group.getTenantId(), group.getSubject(), group.getVerb()), groupTemplates);
+                groupTemplates.getTemplates().forEach(t -> loadedTemplates.put(t.getMessageTemplateID(), t));
+            }
+
+            snapshot = new Snapshot(Collections.unmodifiableMap(loaded), Collections.unmodifiableMap(loadedTemplates));
+            fallbackRoutes.clear();
+            log.info("Loaded routing index of {} notification groups", loaded.size());
+        } catch (RuntimeException e) {
+            log.error("Could not load routing index; looking up notification groups individually until the next refresh: {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNotificationGroupsChanged(NotificationGroupsChangedEvent event) {
+        log.debug("Notification group {}/{}/{} changed; reloading routing index",
+                event.tenantId(), event.subject(), event.verb());
+        refresh();
+    }
+
+    /**
+     * @return Count of lookups, since startup, for which there was no NotificationGroup
+     */
+    public long getUnroutedLookups() {
+        return unroutedLookups.get();
+    }
+
+    /**
+     * Look the key up in the database unless already known. Loaded outside the map, so a slow lookup holds up no other
+     * key; two threads racing on the same key may both load, and the first result wins
+     */
+    private CriteriaIndex getFallbackRoute(RoutingKey key) {
+        CriteriaIndex known = fallbackRoutes.get(key);
+        if (known == null) {
+            known = loadRoute(key);
+            CriteriaIndex raced = fallbackRoutes.putIfAbsent(key, known);
+            known = raced == null ? known : raced;
+        }
+        return known;
+    }
+
+    private CriteriaIndex loadRoute(RoutingKey key) {
+        return toDispatchTemplates(accessService.getNotificationTemplateGroup(key.tenantId(), key.subject(), key.verb()));
+    }
+
+    private CriteriaIndex toDispatchTemplates(MessageTemplateGroupDTO templates) {
+        if (templates == null || templates.getMessageTemplates() == null) {
+            return CriteriaIndex.EMPTY;
+        }
+
+        return new CriteriaIndex(templates.getMessageTemplates().stream()
+                .map(MessageTemplate::fromDTO)
+                .collect(Collectors.toUnmodifiableSet()));
+    }
+
+    private record Snapshot(Map<RoutingKey, CriteriaIndex> routes, Map<Long, MessageTemplate> templatesById) {
+    }
+}
@@ -0,0 +1,78 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.domain.SolMessage;
+import com.solmod.notifications.dispatcher.domain.SolMessageReader;
+import com.solmod.notifications.dispatcher.service.domain.CriteriaIndex;
+import com.solmod.notifications.dispatcher.service.domain.DispatchContext;
+import com.solmod.notifications.dispatcher.service.domain.RoutingKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Raw-payload variant of {@link EventBusHandler}, bound to the same {@code NotificationDispatcher-in-0} binding when
+ * selected as the function definition.
+ * Rather than binding the whole payload to a {@link SolMessage}, the header is read first and the message dropped if
+ * it routes to no NotificationGroup. Otherwise only the metadata keys the group's templates refer to are read from the
+ * data.
+ */
+@Service("NotificationDispatcherRaw")
+public class RawEventBusHandler implements Consumer<byte[]> {
+
+    Logger log = LoggerFactory.getLogger(getClass());
+
+    NotificationRoutingIndex routingIndex;
+    EventBusHandler eventBusHandler;
+    SolMessageReader messageReader = new SolMessageReader();
+
+    @Autowired
+    public RawEventBusHandler(NotificationRoutingIndex routingIndex, EventBusHandler eventBusHandler) {
+        this.routingIndex = routingIndex;
+        this.eventBusHandler = eventBusHandler;
+    }
+
+    /**
+     * Message Bus Subscriber
+     * Accepts raw payloads from the message bus which may trigger a notification.
+     *
+     * @param payload UTF-8 JSON of a {@link SolMessage} event message from off the bus
+     */
+    @Override
+    public void accept(final byte[] payload) {
+        try {
+            SolMessageReader.Header header = messageReader.readHeader(payload);
+            CriteriaIndex dispatchTemplates = routingIndex.getCriteriaIndex(RoutingKey.of(header.message()));
+            if (dispatchTemplates.getTemplates().isEmpty()) {
+                return;
+            }
+
+            SolMessage solMessage = messageReader.readData(header,
+                    getReferencedMetadataKeys(dispatchTemplates.getTemplates()));
+            eventBusHandler.publish(eventBusHandler.dispatch(solMessage, dispatchTemplates, new DispatchContext()));
+        } catch (IOException e) {
+            log.error("Exception reading SolBus payload {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param templates Set of {@link MessageTemplate}
+     * @return Set of the metadata keys the templates' criteria and recipient addresses refer to
+     */
+    Set<String> getReferencedMetadataKeys(Set<MessageTemplate> templates) {
+        Set<String> result = new HashSet<>();
+        for (MessageTemplate template : templates) {
+            result.add(template.getRecipientAddressContextKey());
+            if (template.getDeliveryCriteria() != null && template.getDeliveryCriteria().getCriteria() != null) {
+                result.addAll(template.getDeliveryCriteria().getCriteria().keySet());
+            }
+        }
+        return result;
+    }
+}
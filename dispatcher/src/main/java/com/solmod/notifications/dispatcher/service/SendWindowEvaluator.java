@@ -0,0 +1,94 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.solmod.notifications.admin.web.model.UserDeliveryPreferencesDTO;
+import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
+import com.solmod.notifications.dispatcher.service.domain.SendWindow;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static com.solmod.notifications.dispatcher.service.domain.DeliveryPermission.Verdict.SEND_LATER;
+
+/**
+ * Evaluates recipients' send windows against an injected {@link Clock}, answering when a delivery may be made rather
+ * than only whether it may be made now.
+ * The {@link SendWindow} of a preference record, including its parsed time zone, is built the first time the record is
+ * evaluated and kept for as long as the record itself is; records are shared through the
+ * {@link UserDeliveryPreferencesCache}, so a window is built once per record loaded rather than once per delivery.
+ * Recipients without a time zone, or with one which can't be parsed, are evaluated in the clock's zone.
+ */
+@Component
+public class SendWindowEvaluator {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final Clock clock;
+    // Weak keys compare by identity, so a record modified after evaluation must be replaced rather than changed
+    private final Cache<UserDeliveryPreferencesDTO, SendWindow> windows = Caffeine.newBuilder().weakKeys().build();
+
+    @Autowired
+    public SendWindowEvaluator(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return The current {@link Instant} according to the clock time-based rules are evaluated against
+     */
+    public Instant now() {
+        return clock.instant();
+    }
+
+    /**
+     * @param usersPrefs {@link UserDeliveryPreferencesDTO}
+     * @return {@link SendWindow} of the preferences
+     */
+    public SendWindow getSendWindow(UserDeliveryPreferencesDTO usersPrefs) {
+        return windows.get(usersPrefs, this::toSendWindow);
+    }
+
+    /**
+     * Determine whether a delivery at the given instant falls within the recipient's send window, and if not, when it
+     * next may
+     *
+     * @param usersPrefs {@link UserDeliveryPreferencesDTO}
+     * @param now {@link Instant} of the delivery
+     * @return {@link DeliveryPermission#SEND_NOW_PERMISSION} within the window, otherwise SEND_LATER with the instant the
+     * window next opens
+     */
+    public DeliveryPermission evaluate(UserDeliveryPreferencesDTO usersPrefs, Instant now) {
+        Instant opening = getSendWindow(usersPrefs).nextOpening(now);
+        if (!opening.isAfter(now)) {
+            return DeliveryPermission.SEND_NOW_PERMISSION;
+        }
+
+        return new DeliveryPermission(SEND_LATER,
+                "Cannot deliver within recipient blackout period. Sending later, at " + opening, opening);
+    }
+
+    private SendWindow toSendWindow(UserDeliveryPreferencesDTO usersPrefs) {
+        return new SendWindow(toZone(usersPrefs.getTimezone()), usersPrefs.getSendWindowStart(),
+                usersPrefs.getSendWindowEnd());
+    }
+
+    private ZoneId toZone(String timezone) {
+        if (StringUtils.isBlank(timezone)) {
+            return clock.getZone();
+        }
+
+        try {
+            return ZoneId.of(timezone.trim(), ZoneId.SHORT_IDS);
+        } catch (DateTimeException e) {
+            log.warn("Unrecognized recipient time zone {}; evaluating send window in {}", timezone, clock.getZone());
+            return clock.getZone();
+        }
+    }
+}
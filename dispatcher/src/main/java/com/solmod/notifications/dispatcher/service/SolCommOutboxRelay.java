@@ -0,0 +1,206 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solmod.notifications.dispatcher.domain.SolCommunication;
+import com.solmod.notifications.dispatcher.repository.SolCommOutboxRepo;
+import com.solmod.notifications.dispatcher.repository.domain.SolCommOutboxEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes the SolComm outbox written by {@link MessageDeliveryService#recordOutboundDeliveries}, at its own pace.
+ * Available entries are claimed in batches, earliest available first, with entries claimed by another dispatcher
+ * skipped. A claim leases its entries for the ack timeout, in a transaction of its own, so no row stays locked and no
+ * connection is held while SolComm acknowledges them; each batch is then handed to the {@link SolCommPublisher}
+ * without waiting on its acknowledgement, and marked published once acknowledged, in another short transaction.
+ * Batches are claimed one after another until one comes up short, or the publisher's buffer fills.
+ * A batch which is rejected, or isn't acknowledged within the ack timeout, is left unpublished and its lease extended
+ * by the retry backoff, doubled for each attempt of an entry up to the maximum, after which it is claimed again; so a
+ * communication may be sent more than once, but is never lost, and an unavailable SolComm isn't sent each batch anew
+ * every poll. An entry whose payload can't be read is quarantined on claim, so it neither holds up the entries claimed
+ * with it nor is claimed again.
+ */
+@Service
+public class SolCommOutboxRelay {
+
+    private static final int MAX_REASON_LENGTH = 255;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SolCommOutboxRepo outboxRepo;
+    private final SolCommPublisher publisher;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transaction;
+    private final int batchSize;
+    private final Duration ackTimeout;
+    private final Duration retryBackoff;
+    private final Duration maxRetryBackoff;
+
+    @Autowired
+    public SolCommOutboxRelay(SolCommOutboxRepo outboxRepo, SolCommPublisher publisher, ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${solmod.notification-engine.outbox.batch-size:1000}") int batchSize,
+                              @Value("${solmod.notification-engine.outbox.ack-timeout:PT30S}") Duration ackTimeout,
+                              @Value("${solmod.notification-engine.outbox.retry-backoff:PT1S}") Duration retryBackoff,
+                              @Value("${solmod.notification-engine.outbox.max-retry-backoff:PT5M}") Duration maxRetryBackoff) {
+        this.outboxRepo = outboxRepo;
+        this.publisher = publisher;
+        this.objectMapper = objectMapper;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.ackTimeout = ackTimeout;
+        this.retryBackoff = retryBackoff;
+        this.maxRetryBackoff = maxRetryBackoff;
+    }
+
+    /**
+     * Publish batches of available entries until a batch comes up short or can't be claimed
+     */
+    @Scheduled(fixedDelayString = "${solmod.notification-engine.outbox.poll-interval-ms:1000}")
+    public void relay() {
+        int claimed;
+        do {
+            try {
+                claimed = relayBatch();
+            } catch (RuntimeException e) {
+                log.error("Could not relay SolComm outbox; retrying next run: {}", e.getMessage(), e);
+                return;
+            }
+        } while (claimed == batchSize);
+    }
+
+    /**
+     * Claim one batch of available entries and hand it to the publisher, to be marked published once acknowledged, or
+     * released to be claimed again after the retry backoff should it not be
+     *
+     * @return Number of entries claimed, quarantined ones included
+     */
+    int relayBatch() {
+        ClaimedBatch batch = transaction.execute(status -> claimBatch());
+        if (batch.communications().isEmpty()) {
+            return batch.claimed();
+        }
+
+        publisher.publish(batch.communications())
+                .orTimeout(ackTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((ack, e) -> {
+                    if (e == null) {
+                        markPublished(batch.ids());
+                    } else {
+                        releaseForRetry(batch.ids(), e);
+                    }
+                });
+        return batch.claimed();
+    }
+
+    /**
+     * @return Number of entries waiting to be published, held ones included
+     */
+    public long getUnpublishedCount() {
+        return outboxRepo.countByDatePublishedIsNullAndDateQuarantinedIsNull();
+    }
+
+    /**
+     * @return Number of entries quarantined for an unreadable payload
+     */
+    public long getQuarantinedCount() {
+        return outboxRepo.countByDateQuarantinedIsNotNull();
+    }
+
+    /**
+     * The wait before an entry not acknowledged is claimed again: the retry backoff, doubled for each attempt after
+     * its first, up to the maximum
+     *
+     * @param attempts Number of times the entry has been claimed
+     * @return {@link Duration}
+     */
+    Duration getRetryBackoff(int attempts) {
+        int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+        Duration backoff = retryBackoff.multipliedBy(1L << doublings);
+        return backoff.compareTo(maxRetryBackoff) > 0 ? maxRetryBackoff : backoff;
+    }
+
+    private void markPublished(List<Long> ids) {
+        try {
+            transaction.executeWithoutResult(status -> outboxRepo.markPublished(ids, new Date()));
+            log.debug("Relayed {} outbox entries to SolComm", ids.size());
+        } catch (RuntimeException e) {
+            log.error("Could not mark {} acknowledged outbox entries published; they will be sent again: {}",
+                    ids.size(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Extend the lease of entries not acknowledged by the retry backoff, so they're claimed again once it has passed
+     */
+    private void releaseForRetry(List<Long> ids, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        log.warn("SolComm did not acknowledge {} outbox entries; retrying after backoff: {}", ids.size(),
+                cause instanceof TimeoutException ? "timed out" : cause.getMessage());
+        try {
+            transaction.executeWithoutResult(status -> {
+                Date now = new Date();
+                for (SolCommOutboxEntry entry : outboxRepo.findAllById(ids)) {
+                    if (entry.getDatePublished() == null) {
+                        entry.setClaimedUntil(new Date(now.getTime() + getRetryBackoff(entry.getAttempts()).toMillis()));
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not extend the lease of {} outbox entries; claimed again once it runs out: {}",
+                    ids.size(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Claim a batch of available entries, leasing each for the ack timeout and counting an attempt, and read their
+     * communications. Entries which can't be read are quarantined instead
+     */
+    private ClaimedBatch claimBatch() {
+        Date now = new Date();
+        List<SolCommOutboxEntry> entries = outboxRepo.claimAvailable(now, Limit.of(batchSize));
+
+        List<SolCommunication> communications = new ArrayList<>(entries.size());
+        List<Long> ids = new ArrayList<>(entries.size());
+        for (SolCommOutboxEntry entry : entries) {
+            entry.setAttempts(entry.getAttempts() + 1);
+            try {
+                communications.add(objectMapper.readValue(entry.getPayload(), SolCommunication.class));
+                ids.add(entry.getId());
+                entry.setClaimedUntil(new Date(now.getTime() + ackTimeout.toMillis()));
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                log.error("Quarantining unreadable outbox entry {} of delivery {}: {}", entry.getId(),
+                        entry.getMessageDeliveryId(), e.getMessage());
+                entry.setDateQuarantined(now);
+                entry.setQuarantineReason(StringUtils.abbreviate(e.getMessage(), MAX_REASON_LENGTH));
+            }
+        }
+        return new ClaimedBatch(entries.size(), ids, communications);
+    }
+
+    /**
+     * @param claimed Number of entries claimed
+     * @param ids Ids of the entries leased, in the order of their communications
+     * @param communications {@link SolCommunication}s read from the entries leased
+     */
+    private record ClaimedBatch(int claimed, List<Long> ids, List<SolCommunication> communications) {
+    }
+}
@@ -0,0 +1,211 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.SolCommunication;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outbound stage of dispatch: {@link SolCommunication}s are buffered and sent to SolComm in batches through the
+ * {@link SolCommTransport}, a batch going once it is full or once its first communication has waited the linger time.
+ * Batches are sent without waiting on the acknowledgement of those before, up to a limit in flight. At that limit the
+ * flusher waits for an acknowledgement, the buffer fills, and callers of {@link #publish} wait for room in it, so a
+ * slow broker slows its callers rather than running the dispatcher out of memory.
+ * Each call to {@link #publish} is answered with a future, completed once every communication it gave has been
+ * acknowledged, or exceptionally should any be rejected. Rejected communications aren't sent again here: it is for the
+ * caller to do so, as the {@link SolCommOutboxRelay} does by leaving them in the outbox to be claimed again.
+ */
+@Service
+public class SolCommPublisher {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final SolCommTransport transport;
+    private final BlockingQueue<Outbound> buffer;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @Autowired
+    public SolCommPublisher(SolCommTransport transport,
+                            @Value("${solmod.notification-engine.solcomm.buffer-capacity:10000}") int bufferCapacity,
+                            @Value("${solmod.notification-engine.solcomm.batch-size:500}") int batchSize,
+                            @Value("${solmod.notification-engine.solcomm.linger:PT0.05S}") Duration linger,
+                            @Value("${solmod.notification-engine.solcomm.max-in-flight:4}") int maxInFlight) {
+        this.transport = transport;
+        this.buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        this.batchSize = batchSize;
+        this.lingerNanos = linger.toNanos();
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.flusher = new Thread(this::flushContinuously, "solcomm-publisher");
+        this.flusher.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.start();
+    }
+
+    /**
+     * Buffer communications to be sent, waiting for room in the buffer when it is full
+     *
+     * @param communications Collection of {@link SolCommunication}; null or empty publishes nothing
+     * @return {@link CompletableFuture} completed once every communication is acknowledged, or exceptionally should
+     * any be rejected
+     */
+    public CompletableFuture<Void> publish(Collection<SolCommunication> communications) {
+        if (communications == null || communications.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("SolComm publisher closed"));
+        }
+
+        List<CompletableFuture<Void>> acknowledged = new ArrayList<>(communications.size());
+        try {
+            for (SolCommunication communication : communications) {
+                Outbound outbound = new Outbound(communication, new CompletableFuture<>());
+                buffer.put(outbound);
+                acknowledged.add(outbound.acknowledged());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            IllegalStateException interrupted =
+                    new IllegalStateException("Interrupted waiting for room to publish communications", e);
+            acknowledged.forEach(ack -> ack.completeExceptionally(interrupted));
+            return CompletableFuture.failedFuture(interrupted);
+        }
+        return CompletableFuture.allOf(acknowledged.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Send what remains buffered, then wait for the batches in flight to be acknowledged
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        if (inFlight.tryAcquire(maxInFlight, 30, TimeUnit.SECONDS)) {
+            inFlight.release(maxInFlight);
+        } else {
+            log.warn("Stopped with SolComm batches unacknowledged");
+        }
+    }
+
+    /**
+     * @return Count of communications acknowledged, since startup
+     */
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    /**
+     * @return Count of communications in rejected batches, since startup
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return Number of communications buffered, not yet sent
+     */
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    private void flushContinuously() {
+        List<Outbound> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                // Closing: what's left is sent without waiting to fill the batch
+                buffer.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                send(List.copyOf(batch));
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Wait for a first communication, then for the batch to fill until the first has waited the linger time
+     */
+    private void fillBatch(List<Outbound> batch) throws InterruptedException {
+        Outbound first = buffer.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+
+        batch.add(first);
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+            buffer.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                break;
+            }
+            Outbound next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void send(List<Outbound> batch) {
+        inFlight.acquireUninterruptibly();
+        try {
+            transport.send(batch.stream().map(Outbound::communication).toList()).whenComplete((ack, e) -> {
+                inFlight.release();
+                if (e == null) {
+                    published.add(batch.size());
+                    batch.forEach(outbound -> outbound.acknowledged().complete(null));
+                } else {
+                    log.warn("SolComm rejected a batch of {} communications: {}", batch.size(), e.getMessage());
+                    reject(batch, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            log.warn("Could not send a batch of {} communications to SolComm: {}", batch.size(), e.getMessage());
+            reject(batch, e);
+        }
+    }
+
+    private void reject(List<Outbound> batch, Throwable cause) {
+        failed.add(batch.size());
+        batch.forEach(outbound -> outbound.acknowledged().completeExceptionally(cause));
+    }
+
+    /**
+     * @param communication {@link SolCommunication} to send
+     * @param acknowledged {@link CompletableFuture} completed once it is acknowledged
+     */
+    private record Outbound(SolCommunication communication, CompletableFuture<Void> acknowledged) {
+    }
+}
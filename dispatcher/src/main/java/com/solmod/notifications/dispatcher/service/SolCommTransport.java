@@ -0,0 +1,21 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.SolCommunication;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends batches of {@link SolCommunication}s to the SolComm destination, that of the {@code SolComm-out-0} binding, on
+ * behalf of the {@link SolCommPublisher}.
+ * Implementations send without waiting for the broker, completing the returned future once the batch is acknowledged,
+ * or exceptionally should it be rejected, so several batches can be in flight at once.
+ */
+public interface SolCommTransport {
+
+    /**
+     * @param communications List of {@link SolCommunication}, not to be modified
+     * @return {@link CompletableFuture} completed when the whole batch has been acknowledged
+     */
+    CompletableFuture<Void> send(List<SolCommunication> communications);
+}
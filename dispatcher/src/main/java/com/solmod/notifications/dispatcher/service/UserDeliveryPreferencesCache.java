@@ -0,0 +1,104 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.solmod.notifications.admin.domain.RecipientSender;
+import com.solmod.notifications.admin.domain.UserDeliveryPreferencesChangedEvent;
+import com.solmod.notifications.admin.service.UserDeliveryPreferencesService;
+import com.solmod.notifications.admin.web.model.UserDeliveryPreferencesDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Near cache of recipients' delivery preferences by sender, in front of {@link UserDeliveryPreferencesService}.
+ * Preferences are read for every template of every message but rarely change, so they are kept, as is the absence of
+ * preferences, until evicted by size, expired by age, or dropped when the admin service announces they have changed.
+ * The age limit bounds how stale a copy can be should a change be made other than through the admin service.
+ * Cached preferences are shared by every caller, and so are not to be modified.
+ */
+@Service
+public class UserDeliveryPreferencesCache {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final UserDeliveryPreferencesService preferencesService;
+    private final Cache<RecipientSender, Optional<UserDeliveryPreferencesDTO>> cache;
+
+    @Autowired
+    public UserDeliveryPreferencesCache(UserDeliveryPreferencesService preferencesService,
+                                        @Value("${solmod.notification-engine.preferences-cache.max-size:100000}") long maxSize,
+                                        @Value("${solmod.notification-engine.preferences-cache.ttl:PT10M}") Duration ttl) {
+        this.preferencesService = preferencesService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the recipient's preferences for the sender, from the cache if there
+     *
+     * @param recipient {@code String}
+     * @param sender {@code String}
+     * @return {@link UserDeliveryPreferencesDTO} or null if the recipient has none for the sender
+     */
+    public UserDeliveryPreferencesDTO getDeliveryPreferences(String recipient, String sender) {
+        return cache.get(new RecipientSender(recipient, sender),
+                key -> Optional.ofNullable(preferencesService.getDeliveryPreferences(recipient, sender))).orElse(null);
+    }
+
+    /**
+     * Get the preferences for each of the given recipient/sender pairs, looking up those not cached in one query
+     *
+     * @param recipientSenders Collection of {@link RecipientSender}
+     * @return Map of {@link RecipientSender} to {@link UserDeliveryPreferencesDTO}, without those having no preferences
+     */
+    public Map<RecipientSender, UserDeliveryPreferencesDTO> getDeliveryPreferences(
+            Collection<RecipientSender> recipientSenders) {
+        Map<RecipientSender, Optional<UserDeliveryPreferencesDTO>> known = cache.getAll(recipientSenders, missing -> {
+            Map<RecipientSender, UserDeliveryPreferencesDTO> loaded =
+                    preferencesService.getDeliveryPreferences(Set.copyOf(missing));
+            Map<RecipientSender, Optional<UserDeliveryPreferencesDTO>> result = new HashMap<>();
+            for (RecipientSender key : missing) {
+                result.put(key, Optional.ofNullable(loaded.get(key)));
+            }
+            return result;
+        });
+
+        Map<RecipientSender, UserDeliveryPreferencesDTO> result = new HashMap<>();
+        known.forEach((key, preferences) -> preferences.ifPresent(found -> result.put(key, found)));
+        return result;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeliveryPreferencesChanged(UserDeliveryPreferencesChangedEvent event) {
+        log.debug("Delivery preferences of {} for {} changed; dropping cached copy", event.recipientAddress(), event.sender());
+        cache.invalidate(new RecipientSender(event.recipientAddress(), event.sender()));
+    }
+
+    /**
+     * @return Approximate number of preferences, and absences of preferences, cached
+     */
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @return Proportion of lookups, since startup, answered from the cache
+     */
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+}
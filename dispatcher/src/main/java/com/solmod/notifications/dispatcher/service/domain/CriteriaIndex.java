@@ -0,0 +1,108 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.domain.SolMessage;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.solmod.notifications.dispatcher.service.domain.DeliveryPermission.Verdict.SEND_NEVER;
+
+/**
+ * The delivery criteria of a group of templates, compiled into one index keyed by metadata key, then by value, each
+ * leading to the set of templates requiring that value. Evaluating a message looks up and compares each distinct
+ * metadata key once, however many templates have a criterion on it.
+ * An index is immutable once built, so one built per NotificationGroup is shared by every message routed to it.
+ */
+public class CriteriaIndex {
+
+    public static final CriteriaIndex EMPTY = new CriteriaIndex(Set.of());
+
+    private final Set<MessageTemplate> templates;
+    private final MessageTemplate[] positions;
+    private final Map<String, KeyIndex> byKey = new LinkedHashMap<>();
+
+    /**
+     * Templates having a criterion on a key, and those among them requiring each value
+     */
+    private record KeyIndex(BitSet constrained, Map<String, BitSet> byValue) {
+    }
+
+    public CriteriaIndex(Set<MessageTemplate> templates) {
+        this.templates = Collections.unmodifiableSet(templates);
+        this.positions = templates.toArray(new MessageTemplate[0]);
+
+        for (int i = 0; i < positions.length; i++) {
+            MessageTemplate template = positions[i];
+            if (template.getDeliveryCriteria() == null || template.getDeliveryCriteria().getCriteria() == null) {
+                continue;
+            }
+            for (Map.Entry<String, String> criterion : template.getDeliveryCriteria().getCriteria().entrySet()) {
+                KeyIndex keyIndex = byKey.computeIfAbsent(criterion.getKey(),
+                        k -> new KeyIndex(new BitSet(positions.length), new HashMap<>()));
+                keyIndex.constrained().set(i);
+                keyIndex.byValue().computeIfAbsent(criterion.getValue(), v -> new BitSet(positions.length)).set(i);
+            }
+        }
+    }
+
+    /**
+     * @return Unmodifiable Set of the {@link MessageTemplate}s indexed
+     */
+    public Set<MessageTemplate> getTemplates() {
+        return templates;
+    }
+
+    /**
+     * Determine which templates the message meets the criteria of. A template without criteria always qualifies; one
+     * which doesn't qualify is given the reason of the first of its criteria found unmet.
+     *
+     * @param solMessage {@link SolMessage}
+     * @return Map of template id to {@link DeliveryPermission}, for every template indexed
+     */
+    public Map<Long, DeliveryPermission> evaluate(SolMessage solMessage) {
+        BitSet qualifying = new BitSet(positions.length);
+        qualifying.set(0, positions.length);
+        DeliveryPermission[] verdicts = new DeliveryPermission[positions.length];
+
+        for (Map.Entry<String, KeyIndex> entry : byKey.entrySet()) {
+            if (qualifying.isEmpty()) {
+                break;
+            }
+
+            String key = entry.getKey();
+            KeyIndex keyIndex = entry.getValue();
+            Object metadataValue = solMessage.getMetadata(key);
+            BitSet rejected = (BitSet) keyIndex.constrained().clone();
+            if (metadataValue != null) {
+                BitSet matching = keyIndex.byValue().get(metadataValue.toString());
+                if (matching != null) {
+                    rejected.andNot(matching);
+                }
+            }
+            rejected.and(qualifying);
+            if (rejected.isEmpty()) {
+                continue;
+            }
+
+            DeliveryPermission reason = metadataValue == null
+                    ? new DeliveryPermission(SEND_NEVER, "Message metadata missing template criterion " + key)
+                    : new DeliveryPermission(SEND_NEVER, "Message metadata has incorrect value for template criterion " + key);
+            for (int i = rejected.nextSetBit(0); i >= 0; i = rejected.nextSetBit(i + 1)) {
+                verdicts[i] = reason;
+            }
+            qualifying.andNot(rejected);
+        }
+
+        Map<Long, DeliveryPermission> result = new HashMap<>();
+        for (int i = 0; i < positions.length; i++) {
+            result.put(positions[i].getMessageTemplateID(),
+                    verdicts[i] == null ? DeliveryPermission.SEND_NOW_PERMISSION : verdicts[i]);
+        }
+        return result;
+    }
+}
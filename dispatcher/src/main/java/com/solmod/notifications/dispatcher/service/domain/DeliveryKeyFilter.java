@@ -0,0 +1,114 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import com.solmod.notifications.dispatcher.repository.domain.DeliveryKey;
+
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter of {@link DeliveryKey}s which have been delivered. When it answers that a key is absent, nothing has been
+ * delivered for the key; when it answers present, something probably has, and the database must be asked.
+ * Keys are already MD5 hashes, so the two 64-bit halves of a key serve as the base hashes from which each of the
+ * filter's bit positions are derived, without hashing again.
+ * Keys cannot be removed, so a key whose deliveries have all since failed remains present; that only costs a query.
+ * Safe for concurrent use.
+ */
+public class DeliveryKeyFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashCount;
+    private final LongAdder keysAdded = new LongAdder();
+
+    /**
+     * Size a filter to hold the given number of keys at the given false positive rate
+     *
+     * @param expectedKeys {@code long} number of keys expected to be added
+     * @param falsePositiveRate {@code double} rate at which absent keys are answered present, once full
+     */
+    public DeliveryKeyFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Expected keys must be positive and the false positive rate within (0, 1)");
+        }
+
+        long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedKeys * Math.log(2)));
+    }
+
+    /**
+     * @param deliveryKey {@code String} as created by {@link DeliveryKey}
+     */
+    public void add(String deliveryKey) {
+        long[] hashes = baseHashes(deliveryKey);
+        for (int i = 0; i < hashCount; i++) {
+            long position = position(hashes, i);
+            int word = (int) (position >>> 6);
+            long mask = 1L << position;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+        keysAdded.increment();
+    }
+
+    /**
+     * @param deliveryKey {@code String} as created by {@link DeliveryKey}
+     * @return false only if the key has certainly never been added
+     */
+    public boolean mightContain(String deliveryKey) {
+        long[] hashes = baseHashes(deliveryKey);
+        for (int i = 0; i < hashCount; i++) {
+            long position = position(hashes, i);
+            if ((bits.get((int) (position >>> 6)) & (1L << position)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Size of the filter in bits
+     */
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * @return Number of keys added, counting a key added more than once each time
+     */
+    public long getKeysAdded() {
+        return keysAdded.sum();
+    }
+
+    /**
+     * Rate at which absent keys are currently answered present, estimated from the proportion of bits set
+     *
+     * @return {@code double} between 0 and 1
+     */
+    public double getFalsePositiveRate() {
+        long set = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            set += Long.bitCount(bits.get(i));
+        }
+        return Math.pow((double) set / bitSize, hashCount);
+    }
+
+    private long position(long[] hashes, int i) {
+        return Math.floorMod(hashes[0] + i * hashes[1], bitSize);
+    }
+
+    private static long[] baseHashes(String deliveryKey) {
+        // The second hash is made odd so that successive positions never coincide
+        return new long[]{HexFormat.fromHexDigitsToLong(deliveryKey, 0, 16),
+                HexFormat.fromHexDigitsToLong(deliveryKey, 16, DeliveryKey.LENGTH) | 1};
+    }
+}
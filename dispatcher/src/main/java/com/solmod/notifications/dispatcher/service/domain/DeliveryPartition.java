@@ -0,0 +1,78 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Pattern;
+
+/**
+ * A range partition of the deliveries, or of their metadata, by date created: every row created before its bound, and
+ * not before the bound of the partition ahead of it. The last partition is unbounded, holding whatever is created
+ * after the others.
+ *
+ * @param name Name of the partition
+ * @param lessThan Bound of the partition, in the database's local time; null for the unbounded partition
+ */
+public record DeliveryPartition(String name, LocalDateTime lessThan) {
+
+    public static final String UNBOUNDED_NAME = "p_future";
+
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_]+");
+    private static final DateTimeFormatter MONTH_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final DateTimeFormatter BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public DeliveryPartition {
+        if (name == null || !VALID_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid partition name: " + name);
+        }
+    }
+
+    /**
+     * Read a partition as described by the information schema
+     *
+     * @param name {@code String} partition name
+     * @param description {@code String} e.g. {@code '2026-11-01 00:00:00'}, or {@code MAXVALUE} when unbounded
+     * @return {@link DeliveryPartition}
+     */
+    public static DeliveryPartition of(String name, String description) {
+        String bound = description.replace("'", "").trim();
+        if (bound.equalsIgnoreCase("MAXVALUE")) {
+            return new DeliveryPartition(name, null);
+        }
+        return new DeliveryPartition(name, bound.length() == 10
+                ? LocalDate.parse(bound).atStartOfDay()
+                : LocalDateTime.parse(bound, BOUND));
+    }
+
+    /**
+     * @param month {@link YearMonth}
+     * @return The partition of the rows created within the month, named for it, e.g. p202611
+     */
+    public static DeliveryPartition ofMonth(YearMonth month) {
+        return new DeliveryPartition(month.format(MONTH_NAME), month.plusMonths(1).atDay(1).atStartOfDay());
+    }
+
+    /**
+     * @return true for the last partition, which has no bound
+     */
+    public boolean isUnbounded() {
+        return lessThan == null;
+    }
+
+    /**
+     * @param cutoff {@link LocalDateTime} before which rows have expired
+     * @return true when every row the partition may hold was created before the cutoff
+     */
+    public boolean isExpired(LocalDateTime cutoff) {
+        return !isUnbounded() && !lessThan.isAfter(cutoff);
+    }
+
+    /**
+     * @return The partition's definition, as written in a PARTITION BY or REORGANIZE PARTITION clause
+     */
+    public String toDefinition() {
+        return "PARTITION " + name + " VALUES LESS THAN (" +
+                (isUnbounded() ? "MAXVALUE" : "'" + lessThan.format(BOUND) + "'") + ")";
+    }
+}
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.Instant;
+
 @Getter
 @Setter
 @AllArgsConstructor
@@ -13,7 +15,10 @@ public class DeliveryPermission {
 
     private Verdict verdict;
     private String message;
+    // With SEND_LATER, the earliest the message may be sent; null when the permission doesn't say
+    private Instant sendAfter;
 
+    // Declared in increasing order of precedence: when verdicts differ, the later verdict prevails
     public enum Verdict {
         SEND_NOW, SEND_LATER, SEND_NEVER
     }
@@ -21,4 +26,26 @@ public class DeliveryPermission {
     public DeliveryPermission(Verdict verdict) {
         this.verdict = verdict;
     }
+
+    public DeliveryPermission(Verdict verdict, String message) {
+        this.verdict = verdict;
+        this.message = message;
+    }
+
+    /**
+     * Of two permissions for the same template, choose the one which prevails: SEND_NEVER over SEND_LATER over
+     * SEND_NOW. Of two SEND_LATER permissions, the one sending later prevails. Otherwise, when both have the same
+     * verdict, the first is returned.
+     *
+     * @param first {@link DeliveryPermission}
+     * @param second {@link DeliveryPermission}
+     * @return {@link DeliveryPermission} with the prevailing verdict
+     */
+    public static DeliveryPermission mostRestrictive(DeliveryPermission first, DeliveryPermission second) {
+        int byVerdict = second.getVerdict().compareTo(first.getVerdict());
+        if (byVerdict == 0 && first.getVerdict() == Verdict.SEND_LATER && second.getSendAfter() != null) {
+            return first.getSendAfter() == null || second.getSendAfter().isAfter(first.getSendAfter()) ? second : first;
+        }
+        return byVerdict > 0 ? second : first;
+    }
 }
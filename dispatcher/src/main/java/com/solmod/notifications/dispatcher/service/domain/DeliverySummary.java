@@ -0,0 +1,57 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDeliveryCounter;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * What send rules need to know of the prior deliveries of a template to a recipient for a message's id metadata
+ *
+ * @param deliveryCount Number of deliveries which have not failed
+ * @param lastDeliveryDate When the latest of them was completed, or created if not yet completed; null if none
+ */
+public record DeliverySummary(long deliveryCount, Date lastDeliveryDate) {
+
+    public static final DeliverySummary NONE = new DeliverySummary(0, null);
+
+    public static DeliverySummary of(MessageDeliveryCounter counter) {
+        return new DeliverySummary(counter.getDeliveryCount(), counter.getLastDeliveryDate());
+    }
+
+    /**
+     * Summarize a list of deliveries, all of which are taken not to have failed
+     *
+     * @param deliveries List of {@link MessageDelivery}, may be null
+     * @return {@link DeliverySummary}
+     */
+    public static DeliverySummary of(List<MessageDelivery> deliveries) {
+        if (deliveries == null || deliveries.isEmpty()) {
+            return NONE;
+        }
+
+        Date lastDeliveryDate = null;
+        for (MessageDelivery delivery : deliveries) {
+            Date deliveryDate = delivery.getDateCompleted() != null ? delivery.getDateCompleted() : delivery.getDateCreated();
+            if (lastDeliveryDate == null || deliveryDate != null && deliveryDate.after(lastDeliveryDate)) {
+                lastDeliveryDate = deliveryDate;
+            }
+        }
+        return new DeliverySummary(deliveries.size(), lastDeliveryDate);
+    }
+
+    /**
+     * @param deliveryDate {@link Date} of one more delivery, not yet recorded
+     * @return This summary with the delivery counted, its date the last should it be later
+     */
+    public DeliverySummary plus(Date deliveryDate) {
+        Date last = lastDeliveryDate == null || deliveryDate != null && deliveryDate.after(lastDeliveryDate)
+                ? deliveryDate : lastDeliveryDate;
+        return new DeliverySummary(deliveryCount + 1, last);
+    }
+
+    public boolean hasDeliveries() {
+        return deliveryCount > 0;
+    }
+}
@@ -0,0 +1,153 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import com.solmod.notifications.admin.web.model.UserDeliveryPreferencesDTO;
+import com.solmod.notifications.dispatcher.domain.SolMessage;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Memoizes the lookups made by filters while dispatching. A context is shared by every message of a consumed batch
+ * which resolved to the same NotificationGroup, so messages for the same recipient only query delivery history and
+ * preferences once.
+ * Deliveries granted while dispatching are not recorded until the batch is done, so each is counted into the delivery
+ * history known to the context as it is granted, for the messages after it to see.
+ * Criteria are evaluated once per message, however many single-template groups the message's group is split into to
+ * filter concurrently, each of which would otherwise evaluate every template of the group.
+ * Loaders are called outside any lock; two threads racing on the same key may both load, and the first result wins.
+ */
+public class DispatchContext {
+
+    private final Map<DeliveryHistoryKey, DeliverySummary> deliveries = new ConcurrentHashMap<>();
+    private final Map<PreferencesKey, Optional<UserDeliveryPreferencesDTO>> preferences = new ConcurrentHashMap<>();
+    private final Map<CriteriaKey, Map<Long, DeliveryPermission>> criteriaVerdicts = new ConcurrentHashMap<>();
+
+    /**
+     * Get the summary of deliveries matching the given template, recipient and id metadata, loading it at most once
+     *
+     * @param templateId {@code Long}
+     * @param recipientAddress {@code String}
+     * @param idMetadataKey {@code String}
+     * @param idMetadataValue {@code String}
+     * @param loader Supplies the summary when not yet known to this context
+     * @return {@link DeliverySummary}, as supplied by the loader
+     */
+    public DeliverySummary getDeliveries(Long templateId, String recipientAddress, String idMetadataKey,
+                                         String idMetadataValue, Supplier<DeliverySummary> loader) {
+        DeliveryHistoryKey key = new DeliveryHistoryKey(templateId, recipientAddress, idMetadataKey, idMetadataValue);
+        DeliverySummary known = deliveries.get(key);
+        if (known == null) {
+            known = loader.get();
+            if (known != null) {
+                DeliverySummary raced = deliveries.putIfAbsent(key, known);
+                known = raced == null ? known : raced;
+            }
+        }
+
+        return known;
+    }
+
+    /**
+     * Remember a summary loaded on behalf of other lookups, unless already known
+     *
+     * @param templateId {@code Long}
+     * @param recipientAddress {@code String}
+     * @param idMetadataKey {@code String}
+     * @param idMetadataValue {@code String}
+     * @param known {@link DeliverySummary} of the deliveries matching the above
+     */
+    public void putDeliveries(Long templateId, String recipientAddress, String idMetadataKey, String idMetadataValue,
+                              DeliverySummary known) {
+        deliveries.putIfAbsent(new DeliveryHistoryKey(templateId, recipientAddress, idMetadataKey, idMetadataValue), known);
+    }
+
+    /**
+     * Count a delivery granted, but not yet recorded, into the summary known to this context. Summaries not yet loaded
+     * are left to be, since no filter has needed them
+     *
+     * @param templateId {@code Long}
+     * @param recipientAddress {@code String}
+     * @param idMetadataKey {@code String}
+     * @param idMetadataValue {@code String}
+     * @param deliveryDate {@link Date} the delivery is granted
+     */
+    public void countDelivery(Long templateId, String recipientAddress, String idMetadataKey, String idMetadataValue,
+                              Date deliveryDate) {
+        deliveries.computeIfPresent(new DeliveryHistoryKey(templateId, recipientAddress, idMetadataKey, idMetadataValue),
+                (key, known) -> known.plus(deliveryDate));
+    }
+
+    /**
+     * Get the recipient's preferences for the sender, loading them at most once. Absent preferences are remembered
+     *
+     * @param recipientAddress {@code String}
+     * @param sender {@code String}
+     * @param loader Supplies the preferences when not yet known to this context
+     * @return {@link UserDeliveryPreferencesDTO} or null if the recipient has none for the sender
+     */
+    public UserDeliveryPreferencesDTO getPreferences(String recipientAddress, String sender,
+                                                     Supplier<UserDeliveryPreferencesDTO> loader) {
+        PreferencesKey key = new PreferencesKey(recipientAddress, sender);
+        Optional<UserDeliveryPreferencesDTO> known = preferences.get(key);
+        if (known == null) {
+            known = Optional.ofNullable(loader.get());
+            Optional<UserDeliveryPreferencesDTO> raced = preferences.putIfAbsent(key, known);
+            known = raced == null ? known : raced;
+        }
+
+        return known.orElse(null);
+    }
+
+    /**
+     * @param recipientAddress {@code String}
+     * @param sender {@code String}
+     * @return true if the recipient's preferences for the sender, or their absence, are known to this context
+     */
+    public boolean hasPreferences(String recipientAddress, String sender) {
+        return preferences.containsKey(new PreferencesKey(recipientAddress, sender));
+    }
+
+    /**
+     * Remember preferences loaded on behalf of other lookups, unless already known
+     *
+     * @param recipientAddress {@code String}
+     * @param sender {@code String}
+     * @param known {@link UserDeliveryPreferencesDTO} or null if the recipient has none for the sender
+     */
+    public void putPreferences(String recipientAddress, String sender, UserDeliveryPreferencesDTO known) {
+        preferences.putIfAbsent(new PreferencesKey(recipientAddress, sender), Optional.ofNullable(known));
+    }
+
+    /**
+     * Get the verdicts of the criteria for the message, evaluating them at most once
+     *
+     * @param criteriaIndex {@link CriteriaIndex} of the message's NotificationGroup
+     * @param solMessage {@link SolMessage}
+     * @return Map of template id to {@link DeliveryPermission}, per {@link CriteriaIndex#evaluate}
+     */
+    public Map<Long, DeliveryPermission> getCriteriaVerdicts(CriteriaIndex criteriaIndex, SolMessage solMessage) {
+        CriteriaKey key = new CriteriaKey(criteriaIndex, solMessage);
+        Map<Long, DeliveryPermission> known = criteriaVerdicts.get(key);
+        if (known == null) {
+            known = criteriaIndex.evaluate(solMessage);
+            Map<Long, DeliveryPermission> raced = criteriaVerdicts.putIfAbsent(key, known);
+            known = raced == null ? known : raced;
+        }
+
+        return known;
+    }
+
+    private record DeliveryHistoryKey(Long templateId, String recipientAddress, String idMetadataKey,
+                                      String idMetadataValue) {
+    }
+
+    private record PreferencesKey(String recipientAddress, String sender) {
+    }
+
+    // Neither declares equality of its own, so the same index and message instances are matched
+    private record CriteriaKey(CriteriaIndex criteriaIndex, SolMessage solMessage) {
+    }
+}
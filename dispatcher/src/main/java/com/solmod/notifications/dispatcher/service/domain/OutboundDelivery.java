@@ -0,0 +1,13 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import com.solmod.notifications.dispatcher.domain.SolCommunication;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+
+/**
+ * A delivery to record together with the communication to send for it
+ *
+ * @param delivery {@link MessageDelivery} not yet saved
+ * @param communication {@link SolCommunication} to send to SolComm; its id is the delivery's unless already set
+ */
+public record OutboundDelivery(MessageDelivery delivery, SolCommunication communication) {
+}
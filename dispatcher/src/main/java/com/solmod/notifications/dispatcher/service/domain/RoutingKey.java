@@ -0,0 +1,17 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import com.solmod.notifications.dispatcher.domain.SolMessage;
+
+/**
+ * Identifies the NotificationGroup a {@link SolMessage} is routed to: tenant, subject and verb
+ *
+ * @param tenantId {@code Long}
+ * @param subject {@code String}
+ * @param verb {@code String}
+ */
+public record RoutingKey(Long tenantId, String subject, String verb) {
+
+    public static RoutingKey of(SolMessage solMessage) {
+        return new RoutingKey(solMessage.getTenantId(), solMessage.getSubject(), solMessage.getVerb());
+    }
+}
@@ -0,0 +1,80 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * The hours of the day, in the recipient's time zone, within which a recipient accepts deliveries. Both hours are
+ * inclusive: a window of 8 to 18 is open from 08:00 until 18:59:59 local time. A window whose start hour is after its
+ * end hour spans midnight, so 22 to 6 is open overnight.
+ * Immutable, and so safe to share.
+ */
+public final class SendWindow {
+
+    private final ZoneId zone;
+    private final Integer startHour;
+    private final Integer endHour;
+
+    /**
+     * @param zone {@link ZoneId} of the recipient
+     * @param startHour {@code Integer} hour of day the window opens, or null for a window which is always open
+     * @param endHour {@code Integer} hour of day through which the window remains open, or null for a window which is
+     *                always open
+     */
+    public SendWindow(ZoneId zone, Integer startHour, Integer endHour) {
+        this.zone = zone;
+        this.startHour = startHour;
+        this.endHour = endHour;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * @return true when the window places no limit on the hour of delivery
+     */
+    public boolean isAlwaysOpen() {
+        return startHour == null || endHour == null;
+    }
+
+    /**
+     * @param instant {@link Instant}
+     * @return true when a delivery at the instant falls within the window
+     */
+    public boolean isOpen(Instant instant) {
+        return isAlwaysOpen() || isOpenAtHour(instant.atZone(zone).getHour());
+    }
+
+    /**
+     * Find the earliest instant, no earlier than the given one, at which the window is open. Where the window opens
+     * within a daylight saving gap, it opens at the end of the gap.
+     *
+     * @param instant {@link Instant}
+     * @return The given {@link Instant} if the window is open at it, otherwise the next time it opens
+     */
+    public Instant nextOpening(Instant instant) {
+        if (isOpen(instant)) {
+            return instant;
+        }
+
+        ZonedDateTime local = instant.atZone(zone);
+        ZonedDateTime opening = local.toLocalDate().atTime(startHour, 0).atZone(zone);
+        if (!opening.isAfter(local)) {
+            opening = local.toLocalDate().plusDays(1).atTime(startHour, 0).atZone(zone);
+        }
+        return opening.toInstant();
+    }
+
+    private boolean isOpenAtHour(int hour) {
+        return startHour <= endHour
+                ? hour >= startHour && hour <= endHour
+                : hour >= startHour || hour <= endHour;
+    }
+
+    @Override
+    public String toString() {
+        return isAlwaysOpen() ? "always (" + zone + ")" : startHour + "-" + endHour + " (" + zone + ")";
+    }
+}
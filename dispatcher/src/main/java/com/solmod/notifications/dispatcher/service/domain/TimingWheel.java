@@ -0,0 +1,180 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Hierarchical timing wheel of {@code long} ids, each to be released once its deadline has passed.
+ * Time moves in ticks. The lowest level has a bucket per tick; each level above has buckets as wide as the whole of the
+ * level below, so a few levels span years. A timer is placed in the lowest level spanning its deadline, and moves down
+ * a level each time the bucket holding it comes due, until it is released from the lowest. Adding a timer, and
+ * releasing it, take constant time however many timers are held; advancing a tick costs only the buckets coming due.
+ * Timers are stored as pairs of primitives within their bucket, with no object per timer, so millions of them take
+ * tens of megabytes. Deadlines beyond the span of the top level are held in its last bucket until they are within it.
+ * Deadlines are rounded up to a whole tick: a timer is released no earlier than its deadline and no more than a tick
+ * after it.
+ * Not safe for concurrent use.
+ */
+public class TimingWheel {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long[] levelWidths;
+    private final Bucket[][] levels;
+    // Timers whose deadline had already passed when added, released on the next advance
+    private final Bucket due = new Bucket();
+
+    private long currentTick;
+    private long size;
+
+    /**
+     * @param tickMillis {@code long} duration of a tick in milliseconds
+     * @param wheelSize {@code int} number of buckets in each level
+     * @param levelCount {@code int} number of levels
+     * @param startMillis {@code long} epoch milliseconds from which the wheel begins
+     */
+    public TimingWheel(long tickMillis, int wheelSize, int levelCount, long startMillis) {
+        if (tickMillis <= 0 || wheelSize < 2 || levelCount < 1) {
+            throw new IllegalArgumentException("Tick must be positive, with at least two buckets and one level");
+        }
+
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.levelWidths = new long[levelCount];
+        this.levels = new Bucket[levelCount][wheelSize];
+        long width = 1;
+        for (int level = 0; level < levelCount; level++) {
+            levelWidths[level] = width;
+            for (int bucket = 0; bucket < wheelSize; bucket++) {
+                levels[level][bucket] = new Bucket();
+            }
+            width = Math.multiplyExact(width, wheelSize);
+        }
+        this.currentTick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    /**
+     * @param id {@code long} to release
+     * @param deadlineMillis {@code long} epoch milliseconds from which the id may be released
+     */
+    public void add(long id, long deadlineMillis) {
+        place(id, -Math.floorDiv(-deadlineMillis, tickMillis));
+        size++;
+    }
+
+    /**
+     * Advance the wheel to the given time, releasing every id whose deadline has been reached, tick by tick
+     *
+     * @param nowMillis {@code long} epoch milliseconds; earlier than the wheel's time, only overdue ids are released
+     * @param released {@link LongConsumer} given each id released
+     */
+    public void advance(long nowMillis, LongConsumer released) {
+        release(due, released);
+
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = levels.length - 1; level > 0; level--) {
+                if (currentTick % levelWidths[level] == 0) {
+                    cascade(levels[level][bucketIndex(level, currentTick)]);
+                }
+            }
+            release(levels[0][bucketIndex(0, currentTick)], released);
+            release(due, released);
+        }
+    }
+
+    /**
+     * @return Number of ids held, not yet released
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return Epoch milliseconds to which the wheel has advanced
+     */
+    public long getCurrentMillis() {
+        return currentTick * tickMillis;
+    }
+
+    private void place(long id, long deadlineTick) {
+        if (deadlineTick <= currentTick) {
+            due.add(id, deadlineTick);
+            return;
+        }
+
+        int top = levels.length - 1;
+        for (int level = 0; level <= top; level++) {
+            long width = levelWidths[level];
+            long levelStart = currentTick - Math.floorMod(currentTick, width);
+            if (deadlineTick < levelStart + width * wheelSize) {
+                levels[level][bucketIndex(level, deadlineTick)].add(id, deadlineTick);
+                return;
+            }
+        }
+
+        // Beyond the top level's span: held in its furthest bucket, and placed again when that comes due
+        long topWidth = levelWidths[top];
+        long lastBucketTick = currentTick - Math.floorMod(currentTick, topWidth) + topWidth * (wheelSize - 1);
+        levels[top][bucketIndex(top, lastBucketTick)].add(id, deadlineTick);
+    }
+
+    private int bucketIndex(int level, long tick) {
+        return (int) Math.floorMod(tick / levelWidths[level], (long) wheelSize);
+    }
+
+    private void cascade(Bucket bucket) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+
+        long[] entries = bucket.drain();
+        for (int i = 0; i < entries.length; i += 2) {
+            place(entries[i], entries[i + 1]);
+        }
+    }
+
+    private void release(Bucket bucket, LongConsumer released) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+
+        long[] entries = bucket.drain();
+        for (int i = 0; i < entries.length; i += 2) {
+            released.accept(entries[i]);
+        }
+        size -= entries.length / 2;
+    }
+
+    /**
+     * Growable array of id and deadline tick pairs
+     */
+    private static final class Bucket {
+
+        private static final long[] EMPTY = new long[0];
+
+        private long[] entries = EMPTY;
+        private int length;
+
+        void add(long id, long deadlineTick) {
+            if (length + 2 > entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(8, entries.length * 2));
+            }
+            entries[length++] = id;
+            entries[length++] = deadlineTick;
+        }
+
+        boolean isEmpty() {
+            return length == 0;
+        }
+
+        // Return the entries, trimmed, and empty the bucket, releasing its array
+        long[] drain() {
+            long[] result = length == entries.length ? entries : Arrays.copyOf(entries, length);
+            entries = EMPTY;
+            length = 0;
+            return result;
+        }
+    }
+}
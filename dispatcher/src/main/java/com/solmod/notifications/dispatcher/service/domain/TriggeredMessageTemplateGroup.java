@@ -3,10 +3,30 @@ package com.solmod.notifications.dispatcher.service.domain;
 import com.solmod.notifications.dispatcher.domain.MessageTemplate;
 import lombok.Data;
 
+import java.util.HashSet;
 import java.util.Set;
 
 @Data
 public class TriggeredMessageTemplateGroup {
 
     private Set<MessageTemplate> qualifiedTemplates;
+    // Lookups made by filters; replaced with a shared context when dispatching a batch
+    private DispatchContext context = new DispatchContext();
+    // Criteria of the NotificationGroup's templates, compiled when the group was loaded
+    private CriteriaIndex criteriaIndex;
+
+    /**
+     * Create a group of just the given template, sharing this group's context and criteria, for filtering the template
+     * on its own
+     *
+     * @param template {@link MessageTemplate}
+     * @return {@link TriggeredMessageTemplateGroup}
+     */
+    public TriggeredMessageTemplateGroup forTemplate(MessageTemplate template) {
+        TriggeredMessageTemplateGroup result = new TriggeredMessageTemplateGroup();
+        result.setQualifiedTemplates(new HashSet<>(Set.of(template)));
+        result.setContext(context);
+        result.setCriteriaIndex(criteriaIndex);
+        return result;
+    }
 }
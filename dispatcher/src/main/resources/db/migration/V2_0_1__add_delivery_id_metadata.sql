@@ -0,0 +1,4 @@
+-- Deliveries keep the key and value of the message's id metadata, by which duplicates are found, on the delivery
+-- itself rather than only among their metadata rows. Deliveries made before are left without
+ALTER TABLE message_deliveries ADD COLUMN id_metadata_key VARCHAR(255);
+ALTER TABLE message_deliveries ADD COLUMN id_metadata_value VARCHAR(255);
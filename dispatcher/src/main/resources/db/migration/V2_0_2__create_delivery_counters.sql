@@ -0,0 +1,17 @@
+-- Send rules are checked against a counter per template, recipient and id metadata (see MessageDeliveryCounter)
+-- rather than the delivery history. Created empty; deliveries made before are counted by V2_8
+CREATE TABLE IF NOT EXISTS message_delivery_counters_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO message_delivery_counters_seq SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM message_delivery_counters_seq);
+
+CREATE TABLE IF NOT EXISTS message_delivery_counters
+(
+    id                  BIGINT NOT NULL,
+    message_template_id BIGINT,
+    recipient_address   VARCHAR(255),
+    id_metadata_key     VARCHAR(255),
+    id_metadata_value   VARCHAR(255),
+    delivery_count      BIGINT NOT NULL,
+    last_delivery_date  DATETIME(6),
+    PRIMARY KEY (id),
+    CONSTRAINT uk_message_delivery_counters UNIQUE (message_template_id, recipient_address, id_metadata_key, id_metadata_value)
+) ENGINE = InnoDB;
@@ -0,0 +1,35 @@
+-- Dispatcher schema as previously generated by Hibernate (ddl-auto) from the entities as they stood before migrations
+-- were introduced. Tables are only created when absent, so databases created before are brought under management as
+-- they stand; what the dispatcher has needed since is added by the migrations after this one.
+-- Hibernate named the unique key on the recipient address and the metadata's foreign key by hash, so they're left
+-- unnamed here too, and are found by their columns when dropped (V2_6_1, V2_7). Finding them is MySQL's own syntax,
+-- so they're declared in MySQL executable comments, as is everything which depends on them
+CREATE TABLE IF NOT EXISTS message_deliveries_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO message_deliveries_seq SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM message_deliveries_seq);
+
+CREATE TABLE IF NOT EXISTS message_deliveries
+(
+    id                  BIGINT NOT NULL,
+    date_completed      DATETIME(6),
+    date_created        DATETIME(6),
+    message_template_id BIGINT,
+    recipient_address   VARCHAR(255),
+    sender              VARCHAR(255),
+    status              VARCHAR(3),
+    status_message      VARCHAR(255),
+    PRIMARY KEY (id)
+    /*!50500 , UNIQUE (recipient_address) */
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS message_metadata_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO message_metadata_seq SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM message_metadata_seq);
+
+CREATE TABLE IF NOT EXISTS message_metadata
+(
+    id                  BIGINT NOT NULL,
+    message_delivery_id BIGINT,
+    metadata_key        VARCHAR(255),
+    metadata_value      VARCHAR(255),
+    PRIMARY KEY (id)
+    /*!50500 , FOREIGN KEY (message_delivery_id) REFERENCES message_deliveries (id) */
+) ENGINE = InnoDB;
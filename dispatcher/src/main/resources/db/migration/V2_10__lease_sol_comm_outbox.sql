@@ -0,0 +1,14 @@
+-- The relay claims entries by leasing them for the time SolComm has to acknowledge, in a transaction of its own, rather
+-- than holding their rows locked while it waits; an entry whose lease runs out unpublished is claimed again. Entries
+-- are available from available_at, or held while it is null, and claimed in that order. An entry whose payload can't be
+-- read is quarantined, with the reason, rather than claimed again
+ALTER TABLE sol_comm_outbox ADD COLUMN available_at DATETIME(6);
+ALTER TABLE sol_comm_outbox ADD COLUMN claimed_until DATETIME(6);
+ALTER TABLE sol_comm_outbox ADD COLUMN attempts INT NOT NULL DEFAULT 0;
+ALTER TABLE sol_comm_outbox ADD COLUMN date_quarantined DATETIME(6);
+ALTER TABLE sol_comm_outbox ADD COLUMN quarantine_reason VARCHAR(255);
+
+UPDATE sol_comm_outbox SET available_at = COALESCE(date_created, CURRENT_TIMESTAMP(6)) WHERE date_published IS NULL;
+
+CREATE INDEX idx_sol_comm_outbox_available ON sol_comm_outbox (date_published, date_quarantined, available_at);
+DROP INDEX idx_sol_comm_outbox_unpublished ON sol_comm_outbox;
@@ -0,0 +1,2 @@
+-- Held communications are made available, and those of deliveries retried requeued, by their delivery's id
+CREATE INDEX idx_sol_comm_outbox_delivery ON sol_comm_outbox (message_delivery_id);
@@ -0,0 +1,31 @@
+-- Counters of deliveries without id metadata are keyed by '-' in its place (see MessageDeliveryCounter): NULL is neither
+-- equal to itself in a lookup nor unique in uk_message_delivery_counters, so the counters kept with NULL were never
+-- found, nor adjusted, but created again for every delivery, each counting none. They're replaced by one counter per
+-- key, counting the deliveries made before as V2_8 counted those with id metadata
+DELETE FROM message_delivery_counters
+WHERE id_metadata_key IS NULL
+   OR id_metadata_value IS NULL;
+
+INSERT INTO message_delivery_counters (id, message_template_id, recipient_address, id_metadata_key, id_metadata_value,
+                                       delivery_count, last_delivery_date, date_modified)
+SELECT (SELECT next_val FROM message_delivery_counters_seq) +
+       ROW_NUMBER() OVER (ORDER BY b.message_template_id, b.recipient_address, b.id_metadata_key, b.id_metadata_value),
+       b.message_template_id, b.recipient_address, b.id_metadata_key, b.id_metadata_value,
+       b.delivery_count, b.last_delivery_date, CURRENT_TIMESTAMP(6)
+FROM (SELECT message_template_id,
+             recipient_address,
+             COALESCE(id_metadata_key, '-') AS id_metadata_key,
+             COALESCE(id_metadata_value, '-') AS id_metadata_value,
+             COUNT(*) AS delivery_count,
+             MAX(COALESCE(date_completed, date_created)) AS last_delivery_date
+      FROM message_deliveries
+      WHERE status <> 'F'
+        AND message_template_id IS NOT NULL
+        AND recipient_address IS NOT NULL
+        AND (id_metadata_key IS NULL OR id_metadata_value IS NULL)
+      GROUP BY message_template_id, recipient_address, COALESCE(id_metadata_key, '-'),
+               COALESCE(id_metadata_value, '-')) b;
+
+UPDATE message_delivery_counters_seq
+SET next_val = (SELECT COALESCE(MAX(id), 0) + 50 FROM message_delivery_counters)
+WHERE next_val < (SELECT COALESCE(MAX(id), 0) + 50 FROM message_delivery_counters);
@@ -0,0 +1,10 @@
+-- MessageDeliveryRepo.findAllDeliveries/findAllDeliveriesForTemplates, driven from the delivery side: the template's
+-- deliveries to the recipient, with status and dates to filter and order by without reading the rows
+CREATE INDEX idx_message_deliveries_template_recipient
+    ON message_deliveries (message_template_id, recipient_address, status, date_completed, date_created);
+
+-- ...and joined to the id metadata of each. Leads with the delivery so it also serves the foreign key
+CREATE INDEX idx_message_metadata_delivery_key ON message_metadata (message_delivery_id, metadata_key, metadata_value);
+
+-- ...or driven from the metadata side, when a key/value is rarer than the recipient's deliveries of the template
+CREATE INDEX idx_message_metadata_key_value ON message_metadata (metadata_key, metadata_value, message_delivery_id);
@@ -0,0 +1,20 @@
+-- Duplicate deliveries are found by the hash of their template, recipient and id metadata (see DeliveryKey) rather than
+-- by joining to their metadata, so deliveries made before are keyed here as DeliveryKey would key them: the MD5, in
+-- lowercase hex, of each part separated by the unit separator, an absent part as empty. Deliveries made before the id
+-- metadata was kept on the delivery (V2_0_1) have none, the metadata alone not saying which entry was the id, so they
+-- are keyed, found and counted (V2_12) along with the deliveries made since without id metadata.
+-- MD5 is MySQL's own, so the keys are computed in a MySQL executable comment
+ALTER TABLE message_deliveries ADD COLUMN delivery_key CHAR(32);
+
+/*!50500 UPDATE message_deliveries
+SET delivery_key = MD5(CONCAT_WS(CHAR(31 USING utf8mb4), COALESCE(CAST(message_template_id AS CHAR), ''),
+                                 COALESCE(recipient_address, ''), COALESCE(id_metadata_key, ''),
+                                 COALESCE(id_metadata_value, '')))
+WHERE delivery_key IS NULL */;
+
+CREATE INDEX idx_message_deliveries_delivery_key ON message_deliveries (delivery_key);
+
+-- No longer used to find duplicates. The metadata's delivery index stays, serving the foreign key and loading a
+-- delivery's metadata
+DROP INDEX idx_message_deliveries_template_recipient ON message_deliveries;
+DROP INDEX idx_message_metadata_key_value ON message_metadata;
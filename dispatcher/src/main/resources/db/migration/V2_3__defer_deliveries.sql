@@ -0,0 +1,5 @@
+-- Deliveries pending their recipient's send window (status PT) keep when the window opens. The deferred delivery
+-- scheduler reads them all at startup by status, and checks batches of them by id on release
+ALTER TABLE message_deliveries ADD COLUMN send_after DATETIME(6);
+
+CREATE INDEX idx_message_deliveries_status_send_after ON message_deliveries (status, send_after);
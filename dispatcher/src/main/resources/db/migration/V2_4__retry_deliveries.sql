@@ -0,0 +1,6 @@
+-- Deliveries pending retry (status PR) keep how many retries they have had and when the next is due. Dispatchers claim
+-- batches of those due by status and due time, skipping rows another dispatcher has locked
+ALTER TABLE message_deliveries ADD COLUMN retry_count INT NOT NULL DEFAULT 0;
+ALTER TABLE message_deliveries ADD COLUMN next_attempt_at DATETIME(6);
+
+CREATE INDEX idx_message_deliveries_status_next_attempt ON message_deliveries (status, next_attempt_at);
@@ -0,0 +1,16 @@
+-- Communications for deliveries, written in the deliveries' transaction and relayed to SolComm from here. The relay
+-- claims the oldest unpublished entries by index, and marks them published once acknowledged
+CREATE TABLE IF NOT EXISTS sol_comm_outbox_seq (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO sol_comm_outbox_seq SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM sol_comm_outbox_seq);
+
+CREATE TABLE IF NOT EXISTS sol_comm_outbox
+(
+    id                  BIGINT NOT NULL,
+    message_delivery_id BIGINT,
+    payload             LONGTEXT,
+    date_created        DATETIME(6),
+    date_published      DATETIME(6),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE INDEX idx_sol_comm_outbox_unpublished ON sol_comm_outbox (date_published, id);
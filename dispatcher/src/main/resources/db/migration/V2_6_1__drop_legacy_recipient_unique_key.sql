@@ -0,0 +1,17 @@
+-- The baseline schema (V2_0), as built by Hibernate (ddl-auto) before migrations were introduced, carries a unique key
+-- on the recipient address alone, from when the entity declared one. It allows a recipient a single delivery ever, and
+-- blocks V2_7, as MySQL partitions no table with a unique key lacking the partitioning column. Hibernate named the key
+-- by hash, so it is found by its column and dropped where present. Versioned ahead of V2_7 to run before it, and
+-- applied out of order where V2_7 already has been.
+-- Looking the key up and dropping it by name is MySQL's own syntax, so is written as MySQL executable comments
+/*!50500 SET @legacy_unique_key = (SELECT index_name FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'message_deliveries'
+      AND non_unique = 0 AND index_name <> 'PRIMARY'
+    GROUP BY index_name
+    HAVING COUNT(*) = 1 AND MAX(column_name) = 'recipient_address'
+    LIMIT 1) */;
+/*!50500 SET @drop_legacy_unique_key = IF(@legacy_unique_key IS NULL, 'DO 0',
+    CONCAT('ALTER TABLE message_deliveries DROP INDEX `', @legacy_unique_key, '`')) */;
+/*!50500 PREPARE drop_legacy_unique_key FROM @drop_legacy_unique_key */;
+/*!50500 EXECUTE drop_legacy_unique_key */;
+/*!50500 DEALLOCATE PREPARE drop_legacy_unique_key */;
@@ -0,0 +1,4 @@
+-- A delivery's metadata may be kept on the delivery itself, as one JSON object, rather than as a message_metadata row
+-- per key (see MessageDelivery.MetadataStorage). Lookups go by the id metadata and delivery key columns, never into the
+-- document. Existing rows are left where they are and read alongside
+ALTER TABLE message_deliveries ADD COLUMN metadata JSON;
@@ -0,0 +1,49 @@
+-- Deliveries and their metadata are partitioned by month of date_created, so that history past its retention is
+-- archived and dropped a partition at a time (see DeliveryArchiver) rather than deleted row by row. MySQL requires the
+-- partitioning column in every unique key, primary keys included, and allows no foreign keys on partitioned tables.
+-- Send rules are served from message_delivery_counters, which are not partitioned and outlive the deliveries they count
+-- The metadata's foreign key was named by Hibernate, by hash, so is found by its column and dropped where present, as
+-- V2_6_1 drops the legacy unique key. It's only declared on MySQL (see V2_0), whose own syntax this is
+/*!50500 SET @metadata_delivery_key = (SELECT constraint_name FROM information_schema.key_column_usage
+    WHERE table_schema = DATABASE() AND table_name = 'message_metadata'
+      AND column_name = 'message_delivery_id' AND referenced_table_name = 'message_deliveries'
+    LIMIT 1) */;
+/*!50500 SET @drop_metadata_delivery_key = IF(@metadata_delivery_key IS NULL, 'DO 0',
+    CONCAT('ALTER TABLE message_metadata DROP FOREIGN KEY `', @metadata_delivery_key, '`')) */;
+/*!50500 PREPARE drop_metadata_delivery_key FROM @drop_metadata_delivery_key */;
+/*!50500 EXECUTE drop_metadata_delivery_key */;
+/*!50500 DEALLOCATE PREPARE drop_metadata_delivery_key */;
+
+UPDATE message_deliveries SET date_created = COALESCE(date_completed, CURRENT_TIMESTAMP(6)) WHERE date_created IS NULL;
+ALTER TABLE message_deliveries MODIFY date_created DATETIME(6) NOT NULL;
+ALTER TABLE message_deliveries DROP PRIMARY KEY;
+ALTER TABLE message_deliveries ADD PRIMARY KEY (id, date_created);
+
+-- Metadata takes the date of its delivery, so a month of both is dropped together
+ALTER TABLE message_metadata ADD COLUMN date_created DATETIME(6);
+UPDATE message_metadata m SET date_created =
+    (SELECT d.date_created FROM message_deliveries d WHERE d.id = m.message_delivery_id);
+UPDATE message_metadata SET date_created = CURRENT_TIMESTAMP(6) WHERE date_created IS NULL;
+ALTER TABLE message_metadata MODIFY date_created DATETIME(6) NOT NULL;
+ALTER TABLE message_metadata DROP PRIMARY KEY;
+ALTER TABLE message_metadata ADD PRIMARY KEY (id, date_created);
+
+-- History to date, through the current month, goes in one partition, bounded by the first of next month as of when
+-- this runs; DeliveryArchiver splits the monthly partitions ahead out of p_future from that bound on.
+-- Partitioning is MySQL's own syntax, so is written as MySQL executable comments, the statements being prepared so
+-- the bound is computed rather than fixed
+/*!50500 SET @initial_partition_bound = DATE_FORMAT(CURRENT_DATE + INTERVAL 1 MONTH, '%Y-%m-01') */;
+/*!50500 SET @partition_deliveries = CONCAT(
+    'ALTER TABLE message_deliveries PARTITION BY RANGE COLUMNS (date_created) (',
+    'PARTITION p_initial VALUES LESS THAN (''', @initial_partition_bound, '''), ',
+    'PARTITION p_future VALUES LESS THAN (MAXVALUE))') */;
+/*!50500 PREPARE partition_deliveries FROM @partition_deliveries */;
+/*!50500 EXECUTE partition_deliveries */;
+/*!50500 DEALLOCATE PREPARE partition_deliveries */;
+/*!50500 SET @partition_metadata = CONCAT(
+    'ALTER TABLE message_metadata PARTITION BY RANGE COLUMNS (date_created) (',
+    'PARTITION p_initial VALUES LESS THAN (''', @initial_partition_bound, '''), ',
+    'PARTITION p_future VALUES LESS THAN (MAXVALUE))') */;
+/*!50500 PREPARE partition_metadata FROM @partition_metadata */;
+/*!50500 EXECUTE partition_metadata */;
+/*!50500 DEALLOCATE PREPARE partition_metadata */;
@@ -0,0 +1,60 @@
+-- Send rules are served from message_delivery_counters alone, which V2_0_2 created empty and the dispatcher has only
+-- kept since, so deliveries made before are counted here. Deliveries without a template or recipient could never be
+-- looked up, and are not counted. Nor, here, are those without id metadata (those made before V2_0_1): counters keyed
+-- by NULL could not be found either, until V2_12 keyed them as the dispatcher now does, and counted them.
+-- Counters already kept are only ever raised: never below what they count, nor to an earlier last delivery date
+CREATE TABLE message_delivery_backfill AS
+SELECT message_template_id,
+       recipient_address,
+       id_metadata_key,
+       id_metadata_value,
+       COUNT(*) AS delivery_count,
+       MAX(COALESCE(date_completed, date_created)) AS last_delivery_date
+FROM message_deliveries
+WHERE status <> 'F'
+  AND message_template_id IS NOT NULL
+  AND recipient_address IS NOT NULL
+  AND id_metadata_key IS NOT NULL
+  AND id_metadata_value IS NOT NULL
+GROUP BY message_template_id, recipient_address, id_metadata_key, id_metadata_value;
+
+CREATE INDEX idx_message_delivery_backfill
+    ON message_delivery_backfill (message_template_id, recipient_address, id_metadata_key, id_metadata_value);
+
+UPDATE message_delivery_counters c
+SET delivery_count     = GREATEST(c.delivery_count, (SELECT b.delivery_count FROM message_delivery_backfill b
+                                                     WHERE b.message_template_id = c.message_template_id
+                                                       AND b.recipient_address = c.recipient_address
+                                                       AND b.id_metadata_key = c.id_metadata_key
+                                                       AND b.id_metadata_value = c.id_metadata_value)),
+    last_delivery_date = GREATEST(COALESCE(c.last_delivery_date, '1970-01-01'),
+                                  (SELECT b.last_delivery_date FROM message_delivery_backfill b
+                                   WHERE b.message_template_id = c.message_template_id
+                                     AND b.recipient_address = c.recipient_address
+                                     AND b.id_metadata_key = c.id_metadata_key
+                                     AND b.id_metadata_value = c.id_metadata_value))
+WHERE EXISTS (SELECT * FROM message_delivery_backfill b
+              WHERE b.message_template_id = c.message_template_id
+                AND b.recipient_address = c.recipient_address
+                AND b.id_metadata_key = c.id_metadata_key
+                AND b.id_metadata_value = c.id_metadata_value);
+
+-- New counters take ids above any the sequence has handed out, which is then moved past them
+INSERT INTO message_delivery_counters (id, message_template_id, recipient_address, id_metadata_key, id_metadata_value,
+                                       delivery_count, last_delivery_date)
+SELECT (SELECT next_val FROM message_delivery_counters_seq) +
+       ROW_NUMBER() OVER (ORDER BY b.message_template_id, b.recipient_address, b.id_metadata_key, b.id_metadata_value),
+       b.message_template_id, b.recipient_address, b.id_metadata_key, b.id_metadata_value,
+       b.delivery_count, b.last_delivery_date
+FROM message_delivery_backfill b
+WHERE NOT EXISTS (SELECT * FROM message_delivery_counters c
+                  WHERE c.message_template_id = b.message_template_id
+                    AND c.recipient_address = b.recipient_address
+                    AND c.id_metadata_key = b.id_metadata_key
+                    AND c.id_metadata_value = b.id_metadata_value);
+
+UPDATE message_delivery_counters_seq
+SET next_val = (SELECT COALESCE(MAX(id), 0) + 50 FROM message_delivery_counters)
+WHERE next_val < (SELECT COALESCE(MAX(id), 0) + 50 FROM message_delivery_counters);
+
+DROP TABLE message_delivery_backfill;
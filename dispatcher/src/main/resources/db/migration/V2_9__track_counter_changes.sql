@@ -0,0 +1,5 @@
+-- Counters keep when they were last adjusted, by the database's clock, so each dispatcher can merge the keys counted by
+-- the others into its delivery key filter (see MessageDeliveryService) by reading those adjusted since it last looked
+ALTER TABLE message_delivery_counters ADD COLUMN date_modified DATETIME(6);
+
+CREATE INDEX idx_message_delivery_counters_modified ON message_delivery_counters (date_modified);
@@ -1,5 +1,8 @@
 package com.solmod.notifications.dispatcher.domain;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solmod.notifications.admin.domain.MessageClass;
+import com.solmod.notifications.admin.web.model.MessageTemplateDTO;
 import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
 import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
 import org.apache.commons.lang3.time.DateUtils;
@@ -97,4 +100,40 @@ class MessageTemplateTest {
         assertTrue(result.getMessage().contains("received this message within the resendInterval"));
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("fromDTO - All fields of the DTO copied")
+    void assertFromDTOCopiesFields() {
+        // Arrange
+        MessageTemplateDTO dto = new MessageTemplateDTO();
+        dto.setMessageTemplateID(15L);
+        dto.setSender("email");
+        dto.setRecipientAddressContextKey("user.email");
+        dto.setMaxRetries(3);
+        dto.setMinWaitForRetry(30);
+        dto.setMaxSend(2);
+        dto.setResendInterval(10);
+        dto.setMessageClass(MessageClass.TEAM);
+
+        // Act
+        MessageTemplate result = MessageTemplate.fromDTO(dto);
+
+        // Assert
+        assertEquals(dto, new ObjectMapper().convertValue(result, MessageTemplateDTO.class));
+    }
+
+    @Test
+    @DisplayName("equals/hashCode - Templates of the same id are equal and hash alike")
+    void assertEqualsAndHashCodeById() {
+        // Arrange
+        MessageTemplate template = new MessageTemplate();
+        template.setMessageTemplateID(15L);
+        template.setSender("email");
+        MessageTemplate sameId = new MessageTemplate();
+        sameId.setMessageTemplateID(15L);
+        sameId.setSender("sms");
+
+        // Assert
+        assertEquals(template, sameId);
+        assertEquals(template.hashCode(), sameId.hashCode());
+    }
+}
@@ -0,0 +1,78 @@
+package com.solmod.notifications.dispatcher.domain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolMessageReaderTest {
+
+    private static final String DATA = "{\"order\":{\"id\":5,\"customer\":{\"email\":\"someone@somewhere.com\"}," +
+            "\"lines\":[{\"sku\":\"A-1\"},{\"sku\":\"B-2\"}],\"notes\":\"a long note\"},\"audit\":[1,2,3]}";
+
+    SolMessageReader reader = new SolMessageReader();
+
+    @Test
+    @DisplayName("readHeader - Header fields read wherever they lie relative to the data")
+    void assertHeaderRead() throws IOException {
+        // Arrange
+        String payload = "{\"subject\":\"order\",\"data\":" + DATA + ",\"verb\":\"created\",\"tenantId\":15," +
+                "\"idMetadataKey\":\"order.id\",\"idMetadataValue\":\"5\",\"unknown\":{\"x\":1}}";
+
+        // Act
+        SolMessageReader.Header header = reader.readHeader(payload.getBytes(StandardCharsets.UTF_8));
+
+        // Assert
+        SolMessage message = header.message();
+        assertEquals("order", message.getSubject());
+        assertEquals("created", message.getVerb());
+        assertEquals(15L, message.getTenantId());
+        assertEquals("order.id", message.getIdMetadataKey());
+        assertEquals("5", message.getIdMetadataValue());
+        assertNull(message.getData());
+        assertEquals(DATA, new String(header.payload(), header.dataOffset(), header.dataLength(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("readData - Only the given keys read, resolving as they would from the full data")
+    void assertOnlyGivenKeysRead() throws IOException {
+        // Arrange
+        String payload = "{\"subject\":\"order\",\"verb\":\"created\",\"data\":" + DATA + "}";
+        SolMessage bound = SolMessage.objectMapper.readValue(payload, SolMessage.class);
+        SolMessageReader.Header header = reader.readHeader(payload.getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        SolMessage message = reader.readData(header, Set.of("order.customer.email", "order.lines[1].sku", "order.missing"));
+
+        // Assert
+        for (String key : List.of("order.customer.email", "order.lines[1].sku", "order.missing")) {
+            assertEquals(bound.getMetadata(key), message.getMetadata(key));
+        }
+        JsonNode read = (JsonNode) message.getData();
+        assertFalse(read.has("audit"));
+        assertFalse(read.get("order").has("notes"));
+        assertTrue(read.get("order").get("lines").get(0).isNull());
+    }
+
+    @Test
+    @DisplayName("readData - Message without data left without data")
+    void assertNoDataRead() throws IOException {
+        // Arrange
+        String payload = "{\"subject\":\"order\",\"verb\":\"created\",\"data\":null}";
+        SolMessageReader.Header header = reader.readHeader(payload.getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        SolMessage message = reader.readData(header, Set.of("order.id"));
+
+        // Assert
+        assertEquals(-1, header.dataOffset());
+        assertNull(message.getData());
+        assertNull(message.getMetadata("order.id"));
+    }
+}
@@ -0,0 +1,70 @@
+package com.solmod.notifications.dispatcher.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SolMessageTest {
+
+    private static final Map<String, Object> DATA = Map.of(
+            "order", Map.of(
+                    "id", 5,
+                    "total", 12.5,
+                    "gift", true,
+                    "customer", Map.of("email", "someone@somewhere.com"),
+                    "lines", List.of(Map.of("sku", "A-1"), Map.of("sku", "B-2")),
+                    "tags", List.of(),
+                    "dotted.name", "dotted"));
+
+    @ParameterizedTest
+    @ValueSource(strings = {"order.id", "order.total", "order.gift", "order.customer.email", "order.lines[1].sku",
+            "order.tags", "order[\"dotted.name\"]"})
+    @DisplayName("getMetadata(key) - Same value as the flattened metadata holds for the key")
+    void assertKeyResolvedAsFlattened(String key) {
+        // Arrange
+        SolMessage resolving = new SolMessage();
+        resolving.setData(DATA);
+        SolMessage flattening = new SolMessage();
+        flattening.setData(DATA);
+
+        // Act
+        Object resolved = resolving.getMetadata(key);
+
+        // Assert
+        assertEquals(flattening.getMetadata().get(key), resolved);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"order.missing", "order.customer", "order.lines[2].sku", "order.id.nested", "order.lines.sku"})
+    @DisplayName("getMetadata(key) - Null for keys which are absent or not leaves")
+    void assertAbsentKeyNull(String key) {
+        // Arrange
+        SolMessage solMessage = new SolMessage();
+        solMessage.setData(DATA);
+
+        // Act & Assert
+        assertNull(solMessage.getMetadata(key));
+    }
+
+    @Test
+    @DisplayName("getMetadata(key) - Resolved against new data once data is replaced")
+    void assertResolvedAgainstNewData() {
+        // Arrange
+        SolMessage solMessage = new SolMessage();
+        solMessage.setData(Map.of("email", "first@somewhere.com"));
+        solMessage.getMetadata("email");
+
+        // Act
+        solMessage.setData(Map.of("email", "second@somewhere.com"));
+
+        // Assert
+        assertEquals("second@somewhere.com", solMessage.getMetadata("email"));
+    }
+}
@@ -2,9 +2,10 @@ package com.solmod.notifications.dispatcher.filter;
 
 import com.solmod.notifications.dispatcher.domain.MessageTemplate;
 import com.solmod.notifications.dispatcher.domain.SolMessage;
-import com.solmod.notifications.dispatcher.repository.MessageDeliveryRepo;
 import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.service.MessageDeliveryService;
 import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
+import com.solmod.notifications.dispatcher.service.domain.DeliverySummary;
 import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTemplateGroup;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
@@ -19,11 +20,17 @@ import org.mockito.Mock;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.solmod.notifications.dispatcher.service.domain.DeliveryPermission.Verdict.SEND_NEVER;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.openMocks;
 
@@ -32,7 +39,7 @@ class MessageDeliveryRulesFilterTest {
     @InjectMocks
     MessageDeliveryRulesFilter filter;
     @Mock
-    MessageDeliveryRepo repo;
+    MessageDeliveryService deliveryService;
 
     @BeforeEach
     void setup() {
@@ -47,12 +54,14 @@ class MessageDeliveryRulesFilterTest {
         template.setRecipientAddressContextKey("emailAddy");
 
         MessageDelivery delivery = new MessageDelivery();
+        delivery.setMessageTemplateId(template.getMessageTemplateID());
         delivery.setRecipientAddress("someone@somewhere.com");
         delivery.setDateCreated(DateUtils.addMinutes(new Date(), -1));
         MessageDelivery delivery2 = new MessageDelivery();
+        delivery2.setMessageTemplateId(template.getMessageTemplateID());
         delivery2.setDateCreated(DateUtils.addMinutes(new Date(), -2));
-        when(repo.findAllDeliveries(template.getMessageTemplateID(), "someone@somewhere.com", "some.key", "somevalue"))
-                .thenReturn(List.of(delivery, delivery2));
+        when(deliveryService.getDeliverySummaries(List.of(template.getMessageTemplateID()), "someone@somewhere.com", "some.key", "somevalue"))
+                .thenReturn(Map.of(template.getMessageTemplateID(), DeliverySummary.of(List.of(delivery, delivery2))));
 
         TriggeredMessageTemplateGroup triggeredGroup = new TriggeredMessageTemplateGroup();
         Set<MessageTemplate> templates = new HashSet<>();
@@ -82,12 +91,14 @@ class MessageDeliveryRulesFilterTest {
         template.setMaxSend(5);
 
         MessageDelivery delivery = new MessageDelivery();
+        delivery.setMessageTemplateId(template.getMessageTemplateID());
         delivery.setRecipientAddress("someone@somewhere.com");
         delivery.setDateCreated(DateUtils.addMinutes(new Date(), -10));
         MessageDelivery delivery2 = new MessageDelivery();
+        delivery2.setMessageTemplateId(template.getMessageTemplateID());
         delivery2.setDateCreated(DateUtils.addMinutes(new Date(), -20));
-        when(repo.findAllDeliveries(template.getMessageTemplateID(), "someone@somewhere.com", "some.key", "somevalue"))
-                .thenReturn(List.of(delivery, delivery2));
+        when(deliveryService.getDeliverySummaries(List.of(template.getMessageTemplateID()), "someone@somewhere.com", "some.key", "somevalue"))
+                .thenReturn(Map.of(template.getMessageTemplateID(), DeliverySummary.of(List.of(delivery, delivery2))));
 
         TriggeredMessageTemplateGroup triggeredGroup = new TriggeredMessageTemplateGroup();
         Set<MessageTemplate> templates = new HashSet<>();
@@ -116,12 +127,14 @@ class MessageDeliveryRulesFilterTest {
         template.setRecipientAddressContextKey("emailAddy");
 
         MessageDelivery delivery = new MessageDelivery();
+        delivery.setMessageTemplateId(template.getMessageTemplateID());
         delivery.setDateCreated(DateUtils.addMinutes(new Date(), -30));
         delivery.setRecipientAddress("someone@somewhere.com");
         MessageDelivery delivery2 = new MessageDelivery();
+        delivery2.setMessageTemplateId(template.getMessageTemplateID());
         delivery2.setDateCreated(DateUtils.addMinutes(new Date(), -60));
-        when(repo.findAllDeliveries(template.getMessageTemplateID(), "someone@somewhere.com", "some.key", "somevalue"))
-                .thenReturn(List.of(delivery, delivery2));
+        when(deliveryService.getDeliverySummaries(List.of(template.getMessageTemplateID()), "someone@somewhere.com", "some.key", "somevalue"))
+                .thenReturn(Map.of(template.getMessageTemplateID(), DeliverySummary.of(List.of(delivery, delivery2))));
 
         TriggeredMessageTemplateGroup triggeredGroup = new TriggeredMessageTemplateGroup();
         Set<MessageTemplate> templates = new HashSet<>();
@@ -153,12 +166,14 @@ class MessageDeliveryRulesFilterTest {
         template.setRecipientAddressContextKey("emailAddy");
 
         MessageDelivery delivery = new MessageDelivery();
+        delivery.setMessageTemplateId(template.getMessageTemplateID());
         delivery.setDateCreated(DateUtils.addMinutes(new Date(), -10));
         delivery.setRecipientAddress("someone@somewhere.com");
         MessageDelivery delivery2 = new MessageDelivery();
+        delivery2.setMessageTemplateId(template.getMessageTemplateID());
         delivery2.setDateCreated(DateUtils.addMinutes(new Date(), -60));
-        when(repo.findAllDeliveries(template.getMessageTemplateID(), "someone@somewhere.com", "some.key", "somevalue"))
-                .thenReturn(List.of(delivery, delivery2));
+        when(deliveryService.getDeliverySummaries(List.of(template.getMessageTemplateID()), "someone@somewhere.com", "some.key", "somevalue"))
+                .thenReturn(Map.of(template.getMessageTemplateID(), DeliverySummary.of(List.of(delivery, delivery2))));
 
         TriggeredMessageTemplateGroup triggeredGroup = new TriggeredMessageTemplateGroup();
         Set<MessageTemplate> templates = new HashSet<>();
@@ -178,6 +193,45 @@ class MessageDeliveryRulesFilterTest {
         assertEquals(SEND_NEVER, response.getPermissions().get(template.getMessageTemplateID()).getVerdict());
     }
 
+    @Test
+    @DisplayName("apply - History of every template to the same recipient loaded in one query")
+    void assertHistoryLoadedOncePerRecipient() {
+        // Arrange
+        MessageTemplate template = buildTemplate();
+        template.setMaxSend(2);
+        template.setRecipientAddressContextKey("emailAddy");
+        MessageTemplate template2 = buildTemplate();
+        template2.setMessageTemplateID(88L);
+        template2.setMaxSend(2);
+        template2.setRecipientAddressContextKey("emailAddy");
+
+        MessageDelivery delivery = new MessageDelivery();
+        delivery.setMessageTemplateId(template2.getMessageTemplateID());
+        delivery.setDateCreated(DateUtils.addMinutes(new Date(), -30));
+        MessageDelivery delivery2 = new MessageDelivery();
+        delivery2.setMessageTemplateId(template2.getMessageTemplateID());
+        delivery2.setDateCreated(DateUtils.addMinutes(new Date(), -60));
+        when(deliveryService.getDeliverySummaries(any(), eq("someone@somewhere.com"), eq("some.key"), eq("somevalue")))
+                .thenReturn(Map.of(template2.getMessageTemplateID(), DeliverySummary.of(List.of(delivery, delivery2))));
+
+        TriggeredMessageTemplateGroup triggeredGroup = new TriggeredMessageTemplateGroup();
+        triggeredGroup.setQualifiedTemplates(new HashSet<>(Set.of(template, template2)));
+
+        SolMessage solMessage = new SolMessage();
+        solMessage.setIdMetadataKey("some.key");
+        solMessage.setIdMetadataValue("somevalue");
+        solMessage.setData(new TestDataObject("someone@somewhere.com", new TestDataChildObject("somevalue")));
+        solMessage.setTenantId(15L);
+
+        // Act
+        FilterResponse response = filter.apply(triggeredGroup, solMessage);
+
+        // Assert
+        verify(deliveryService, times(1)).getDeliverySummaries(any(), anyString(), anyString(), anyString());
+        assertEquals(DeliveryPermission.SEND_NOW_PERMISSION, response.getPermissions().get(template.getMessageTemplateID()));
+        assertEquals(SEND_NEVER, response.getPermissions().get(template2.getMessageTemplateID()).getVerdict());
+    }
+
     @NotNull
     private MessageTemplate buildTemplate() {
         MessageTemplate template = new MessageTemplate();
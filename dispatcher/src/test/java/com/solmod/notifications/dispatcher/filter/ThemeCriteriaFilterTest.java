@@ -3,6 +3,7 @@ package com.solmod.notifications.dispatcher.filter;
 import com.solmod.notifications.admin.web.model.DeliveryCriterionSetDTO;
 import com.solmod.notifications.dispatcher.domain.MessageTemplate;
 import com.solmod.notifications.dispatcher.domain.SolMessage;
+import com.solmod.notifications.dispatcher.service.domain.CriteriaIndex;
 import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
 import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTemplateGroup;
 import org.junit.jupiter.api.DisplayName;
@@ -15,6 +16,9 @@ import java.util.Set;
 import static com.solmod.notifications.dispatcher.service.domain.DeliveryPermission.Verdict.SEND_NEVER;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 class ThemeCriteriaFilterTest {
 
@@ -113,4 +117,38 @@ class ThemeCriteriaFilterTest {
         assertTrue(result.getMessage().contains("incorrect value for template criterion key2"));
     }
 
+    @Test
+    @DisplayName("Group's criteria evaluated once per message across the single template groups split from it")
+    void criteriaEvaluatedOnce_AcrossSplitGroups() {
+        // Arrange
+        ThemeCriteriaFilter filter = new ThemeCriteriaFilter();
+        SolMessage solMessage = new SolMessage();
+        solMessage.setData(Map.of("key1", "val1"));
+
+        MessageTemplate qualifying = new MessageTemplate();
+        qualifying.setMessageTemplateID(88L);
+        DeliveryCriterionSetDTO qualifyingCriteria = new DeliveryCriterionSetDTO();
+        qualifyingCriteria.setCriteria(Map.of("key1", "val1"));
+        qualifying.setDeliveryCriteria(qualifyingCriteria);
+        MessageTemplate mismatched = new MessageTemplate();
+        mismatched.setMessageTemplateID(89L);
+        DeliveryCriterionSetDTO mismatchedCriteria = new DeliveryCriterionSetDTO();
+        mismatchedCriteria.setCriteria(Map.of("key1", "val2"));
+        mismatched.setDeliveryCriteria(mismatchedCriteria);
+
+        TriggeredMessageTemplateGroup templateGroup = new TriggeredMessageTemplateGroup();
+        templateGroup.setQualifiedTemplates(Set.of(qualifying, mismatched));
+        CriteriaIndex criteriaIndex = spy(new CriteriaIndex(Set.of(qualifying, mismatched)));
+        templateGroup.setCriteriaIndex(criteriaIndex);
+
+        // Act
+        FilterResponse qualifyingResponse = filter.apply(templateGroup.forTemplate(qualifying), solMessage);
+        FilterResponse mismatchedResponse = filter.apply(templateGroup.forTemplate(mismatched), solMessage);
+
+        // Assert
+        assertEquals(DeliveryPermission.SEND_NOW_PERMISSION, qualifyingResponse.getPermissions().get(88L));
+        assertEquals(SEND_NEVER, mismatchedResponse.getPermissions().get(89L).getVerdict());
+        assertEquals(1, mismatchedResponse.getPermissions().size());
+        verify(criteriaIndex, times(1)).evaluate(solMessage);
+    }
 }
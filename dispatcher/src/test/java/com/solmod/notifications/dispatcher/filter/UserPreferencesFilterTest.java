@@ -1,13 +1,16 @@
 package com.solmod.notifications.dispatcher.filter;
 
 import com.solmod.notifications.admin.domain.MessageClass;
-import com.solmod.notifications.admin.service.UserDeliveryPreferencesService;
+import com.solmod.notifications.admin.domain.RecipientSender;
 import com.solmod.notifications.admin.web.model.UserDeliveryPreferencesDTO;
 import com.solmod.notifications.dispatcher.domain.MessageTemplate;
 import com.solmod.notifications.dispatcher.domain.SolMessage;
-import com.solmod.notifications.dispatcher.repository.MessageDeliveryRepo;
 import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.service.MessageDeliveryService;
+import com.solmod.notifications.dispatcher.service.SendWindowEvaluator;
+import com.solmod.notifications.dispatcher.service.UserDeliveryPreferencesCache;
 import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
+import com.solmod.notifications.dispatcher.service.domain.DeliverySummary;
 import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTemplateGroup;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -17,10 +20,12 @@ import org.apache.commons.lang3.time.DateUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 
 import java.io.Serializable;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -28,22 +33,27 @@ import java.util.Set;
 
 import static com.solmod.notifications.dispatcher.service.domain.DeliveryPermission.Verdict.SEND_NEVER;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.openMocks;
 
 class UserPreferencesFilterTest {
 
-    @InjectMocks
+    // 17:00 UTC
+    private final Clock clock = Clock.fixed(Instant.parse("2024-03-12T17:00:00Z"), ZoneOffset.UTC);
+
     UserPreferencesFilter filter;
 
     @Mock
-    private MessageDeliveryRepo deliveryRepo;
+    private MessageDeliveryService deliveryService;
     @Mock
-    private UserDeliveryPreferencesService userDeliveryPreferencesService;
+    private UserDeliveryPreferencesCache userDeliveryPreferencesCache;
 
     @BeforeEach
     void setup() {
         openMocks(this);
+        filter = new UserPreferencesFilter(deliveryService, userDeliveryPreferencesCache, new SendWindowEvaluator(clock));
     }
 
     @Test
@@ -59,7 +69,7 @@ class UserPreferencesFilterTest {
 
         template.setMessageTemplateID(5500L);
         template.setSender(sender); // This and class relate to preferences
-        template.setMessageClass(MessageClass.TEAM.name());
+        template.setMessageClass(MessageClass.TEAM);
         template.setRecipientAddressContextKey("root.user.email");
         tGroup.setQualifiedTemplates(Set.of(template));
         SolMessage msg = new SolMessage();
@@ -70,7 +80,8 @@ class UserPreferencesFilterTest {
         Map<String, Object> metadata = msg.getMetadata();
         assertNotNull(metadata.get("root.user.email"));
 
-        when(userDeliveryPreferencesService.getDeliveryPreferences(email, sender)).thenReturn(null);
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(Set.of(new RecipientSender(email, sender))))
+                .thenReturn(Map.of());
 
         // Act
         FilterResponse apply = filter.apply(tGroup, msg);
@@ -79,7 +90,7 @@ class UserPreferencesFilterTest {
         DeliveryPermission result = apply.getPermissions().get(template.getMessageTemplateID());
         assertEquals(SEND_NEVER, result.getVerdict());
         assertTrue(result.getMessage().contains("has no specified preferences for email sender"));
-        verify(userDeliveryPreferencesService, times(1)).getDeliveryPreferences(email, sender);
+        verify(userDeliveryPreferencesCache, times(1)).getDeliveryPreferences(Set.of(new RecipientSender(email, sender)));
     }
 
     @Test
@@ -93,7 +104,7 @@ class UserPreferencesFilterTest {
 
         template.setMessageTemplateID(5500L);
         template.setSender(sender); // This and class relate to preferences
-        template.setMessageClass(MessageClass.TEAM.name());
+        template.setMessageClass(MessageClass.TEAM);
         template.setRecipientAddressContextKey("root.user.wrongemailkey");
         tGroup.setQualifiedTemplates(Set.of(template));
         SolMessage msg = new SolMessage();
@@ -123,7 +134,7 @@ class UserPreferencesFilterTest {
 
         template.setMessageTemplateID(5500L);
         template.setSender(sender); // This and class relate to preferences
-        template.setMessageClass(MessageClass.TEAM.name());
+        template.setMessageClass(MessageClass.TEAM);
         template.setRecipientAddressContextKey("root.user.email");
         tGroup.setQualifiedTemplates(Set.of(template));
 
@@ -139,7 +150,8 @@ class UserPreferencesFilterTest {
         mockPrefs.setSender(sender);
         mockPrefs.setSupportedMessageClasses(MessageClass.TEAM.name() + "," + MessageClass.SELF.name());
 
-        when(userDeliveryPreferencesService.getDeliveryPreferences(email, sender)).thenReturn(mockPrefs);
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(Set.of(new RecipientSender(email, sender))))
+                .thenReturn(Map.of(new RecipientSender(email, sender), mockPrefs));
 
         FilterResponse response = filter.apply(tGroup, msg);
 
@@ -158,7 +170,7 @@ class UserPreferencesFilterTest {
 
         template.setMessageTemplateID(5500L);
         template.setSender(sender); // This and class relate to preferences
-        template.setMessageClass(MessageClass.TEAM.name());
+        template.setMessageClass(MessageClass.TEAM);
         template.setRecipientAddressContextKey("root.user.email");
         tGroup.setQualifiedTemplates(Set.of(template));
 
@@ -174,7 +186,8 @@ class UserPreferencesFilterTest {
         mockPrefs.setSender(sender);
         mockPrefs.setSupportedMessageClasses(MessageClass.SELF.name());
 
-        when(userDeliveryPreferencesService.getDeliveryPreferences(email, sender)).thenReturn(mockPrefs);
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(Set.of(new RecipientSender(email, sender))))
+                .thenReturn(Map.of(new RecipientSender(email, sender), mockPrefs));
 
         FilterResponse response = filter.apply(tGroup, msg);
 
@@ -194,7 +207,7 @@ class UserPreferencesFilterTest {
 
         template.setMessageTemplateID(5500L);
         template.setSender(sender); // This and class relate to preferences
-        template.setMessageClass(MessageClass.TEAM.name());
+        template.setMessageClass(MessageClass.TEAM);
         template.setRecipientAddressContextKey("root.user.email");
         tGroup.setQualifiedTemplates(Set.of(template));
 
@@ -212,7 +225,8 @@ class UserPreferencesFilterTest {
         mockPrefs.setSendWindowEnd(23);
         mockPrefs.setSupportedMessageClasses(MessageClass.TEAM.name() + "," + MessageClass.SELF.name());
 
-        when(userDeliveryPreferencesService.getDeliveryPreferences(email, sender)).thenReturn(mockPrefs);
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(Set.of(new RecipientSender(email, sender))))
+                .thenReturn(Map.of(new RecipientSender(email, sender), mockPrefs));
 
         FilterResponse response = filter.apply(tGroup, msg);
 
@@ -231,7 +245,7 @@ class UserPreferencesFilterTest {
 
         template.setMessageTemplateID(5500L);
         template.setSender(sender); // This and class relate to preferences
-        template.setMessageClass(MessageClass.TEAM.name());
+        template.setMessageClass(MessageClass.TEAM);
         template.setRecipientAddressContextKey("root.user.email");
         tGroup.setQualifiedTemplates(Set.of(template));
 
@@ -249,13 +263,51 @@ class UserPreferencesFilterTest {
         mockPrefs.setSendWindowEnd(4);
         mockPrefs.setSupportedMessageClasses(MessageClass.TEAM.name() + "," + MessageClass.SELF.name());
 
-        when(userDeliveryPreferencesService.getDeliveryPreferences(email, sender)).thenReturn(mockPrefs);
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(Set.of(new RecipientSender(email, sender))))
+                .thenReturn(Map.of(new RecipientSender(email, sender), mockPrefs));
 
         FilterResponse response = filter.apply(tGroup, msg);
 
         DeliveryPermission result = response.getPermissions().get(template.getMessageTemplateID());
         assertEquals(DeliveryPermission.Verdict.SEND_LATER, result.getVerdict());
         assertTrue(result.getMessage().contains("within recipient blackout period"));
+        assertEquals(Instant.parse("2024-03-13T03:00:00Z"), result.getSendAfter());
+    }
+
+    @Test
+    @DisplayName("apply - Assert SEND_LATER until the window opens in the recipient's time zone")
+    void apply_OutsideWindow_RecipientTimezone() throws FilterException {
+        String email = "some.email@somewhere.com";
+        String sender = "email";
+
+        TriggeredMessageTemplateGroup tGroup = new TriggeredMessageTemplateGroup();
+        MessageTemplate template = new MessageTemplate();
+
+        template.setMessageTemplateID(5500L);
+        template.setSender(sender);
+        template.setMessageClass(MessageClass.TEAM);
+        template.setRecipientAddressContextKey("root.user.email");
+        tGroup.setQualifiedTemplates(Set.of(template));
+
+        SolMessage msg = new SolMessage();
+        msg.setData(Map.of("root", new TestObject(new TestUser(email))));
+
+        // 17:00 UTC is 10:00 in Los Angeles, during daylight saving time
+        UserDeliveryPreferencesDTO mockPrefs = new UserDeliveryPreferencesDTO();
+        mockPrefs.setSender(sender);
+        mockPrefs.setTimezone("PST");
+        mockPrefs.setSendWindowStart(12);
+        mockPrefs.setSendWindowEnd(18);
+        mockPrefs.setSupportedMessageClasses(MessageClass.TEAM.name());
+
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(Set.of(new RecipientSender(email, sender))))
+                .thenReturn(Map.of(new RecipientSender(email, sender), mockPrefs));
+
+        FilterResponse response = filter.apply(tGroup, msg);
+
+        DeliveryPermission result = response.getPermissions().get(template.getMessageTemplateID());
+        assertEquals(DeliveryPermission.Verdict.SEND_LATER, result.getVerdict());
+        assertEquals(Instant.parse("2024-03-12T19:00:00Z"), result.getSendAfter());
     }
 
     @Test
@@ -269,7 +321,7 @@ class UserPreferencesFilterTest {
 
         template.setMessageTemplateID(5500L);
         template.setSender(sender); // This and class relate to preferences
-        template.setMessageClass(MessageClass.TEAM.name());
+        template.setMessageClass(MessageClass.TEAM);
         template.setRecipientAddressContextKey("root.user.email");
         tGroup.setQualifiedTemplates(Set.of(template));
 
@@ -286,13 +338,13 @@ class UserPreferencesFilterTest {
         mockPrefs.setResendInterval(5);
         mockPrefs.setSupportedMessageClasses(MessageClass.TEAM.name() + "," + MessageClass.SELF.name());
 
-        when(userDeliveryPreferencesService.getDeliveryPreferences(email, sender)).thenReturn(mockPrefs);
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(Set.of(new RecipientSender(email, sender))))
+                .thenReturn(Map.of(new RecipientSender(email, sender), mockPrefs));
 
         FilterResponse response = filter.apply(tGroup, msg);
 
         DeliveryPermission result = response.getPermissions().get(template.getMessageTemplateID());
-        assertEquals(DeliveryPermission.Verdict.SEND_LATER, result.getVerdict());
-        assertTrue(result.getMessage().contains("within recipient blackout period"));
+        assertEquals(DeliveryPermission.SEND_NOW_PERMISSION, result);
     }
 
     @Test
@@ -307,7 +359,7 @@ class UserPreferencesFilterTest {
 
         template.setMessageTemplateID(5500L);
         template.setSender(sender); // This and class relate to preferences
-        template.setMessageClass(MessageClass.TEAM.name());
+        template.setMessageClass(MessageClass.TEAM);
         template.setRecipientAddressContextKey("root.user.email");
         tGroup.setQualifiedTemplates(Set.of(template));
 
@@ -326,13 +378,15 @@ class UserPreferencesFilterTest {
         mockPrefs.setResendInterval(resendInterval);
         mockPrefs.setSupportedMessageClasses(MessageClass.TEAM.name() + "," + MessageClass.SELF.name());
 
-        when(userDeliveryPreferencesService.getDeliveryPreferences(email, sender)).thenReturn(mockPrefs);
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(Set.of(new RecipientSender(email, sender))))
+                .thenReturn(Map.of(new RecipientSender(email, sender), mockPrefs));
         MessageDelivery delivery = new MessageDelivery();
-        delivery.setDateCreated(DateUtils.addMinutes(new Date(), -3 - resendInterval));
-        when(deliveryRepo.findAllDeliveries(template.getMessageTemplateID(),
+        delivery.setMessageTemplateId(template.getMessageTemplateID());
+        delivery.setDateCreated(DateUtils.addMinutes(Date.from(clock.instant()), -3 - resendInterval));
+        when(deliveryService.getDeliverySummaries(List.of(template.getMessageTemplateID()),
                 email,
                 "root.user.email", // use what we've already set up for email for simplicity
-                email)).thenReturn(List.of(delivery));
+                email)).thenReturn(Map.of(template.getMessageTemplateID(), DeliverySummary.of(List.of(delivery))));
 
         FilterResponse response = filter.apply(tGroup, msg);
 
@@ -352,7 +406,7 @@ class UserPreferencesFilterTest {
 
         template.setMessageTemplateID(5500L);
         template.setSender(sender); // This and class relate to preferences
-        template.setMessageClass(MessageClass.TEAM.name());
+        template.setMessageClass(MessageClass.TEAM);
         template.setRecipientAddressContextKey("root.user.email");
         tGroup.setQualifiedTemplates(Set.of(template));
 
@@ -371,13 +425,15 @@ class UserPreferencesFilterTest {
         mockPrefs.setResendInterval(resendInterval);
         mockPrefs.setSupportedMessageClasses(MessageClass.TEAM.name() + "," + MessageClass.SELF.name());
 
-        when(userDeliveryPreferencesService.getDeliveryPreferences(email, sender)).thenReturn(mockPrefs);
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(Set.of(new RecipientSender(email, sender))))
+                .thenReturn(Map.of(new RecipientSender(email, sender), mockPrefs));
         MessageDelivery delivery = new MessageDelivery();
-        delivery.setDateCreated(DateUtils.addMinutes(new Date(), resendInterval - 2));
-        when(deliveryRepo.findAllDeliveries(template.getMessageTemplateID(),
+        delivery.setMessageTemplateId(template.getMessageTemplateID());
+        delivery.setDateCreated(DateUtils.addMinutes(Date.from(clock.instant()), resendInterval - 2));
+        when(deliveryService.getDeliverySummaries(List.of(template.getMessageTemplateID()),
                 email,
                 "root.user.email", // use what we've already set up for email for simplicity
-                email)).thenReturn(List.of(delivery));
+                email)).thenReturn(Map.of(template.getMessageTemplateID(), DeliverySummary.of(List.of(delivery))));
 
         FilterResponse response = filter.apply(tGroup, msg);
 
@@ -386,6 +442,79 @@ class UserPreferencesFilterTest {
         assertEquals("Recipient's interval settings for duplicate message has not elapsed", result.getMessage());
     }
 
+    @Test
+    @DisplayName("apply - Preferences of every template in the group looked up at once")
+    void apply_PreferencesLookedUpOncePerGroup() throws FilterException {
+        String email = "some.email@somewhere.com";
+
+        TriggeredMessageTemplateGroup tGroup = new TriggeredMessageTemplateGroup();
+        MessageTemplate emailTemplate = new MessageTemplate();
+        emailTemplate.setMessageTemplateID(5500L);
+        emailTemplate.setSender("email");
+        emailTemplate.setMessageClass(MessageClass.TEAM);
+        emailTemplate.setRecipientAddressContextKey("root.user.email");
+        MessageTemplate smsTemplate = new MessageTemplate();
+        smsTemplate.setMessageTemplateID(5501L);
+        smsTemplate.setSender("sms");
+        smsTemplate.setMessageClass(MessageClass.TEAM);
+        smsTemplate.setRecipientAddressContextKey("root.user.email");
+        tGroup.setQualifiedTemplates(Set.of(emailTemplate, smsTemplate));
+
+        SolMessage msg = new SolMessage();
+        msg.setData(Map.of("root", new TestObject(new TestUser(email))));
+
+        UserDeliveryPreferencesDTO mockPrefs = new UserDeliveryPreferencesDTO();
+        mockPrefs.setSender("email");
+        mockPrefs.setSupportedMessageClasses(MessageClass.TEAM.name());
+        Set<RecipientSender> recipientSenders = Set.of(new RecipientSender(email, "email"), new RecipientSender(email, "sms"));
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(recipientSenders))
+                .thenReturn(Map.of(new RecipientSender(email, "email"), mockPrefs));
+
+        FilterResponse response = filter.apply(tGroup, msg);
+
+        assertEquals(DeliveryPermission.SEND_NOW_PERMISSION, response.getPermissions().get(5500L));
+        assertEquals(SEND_NEVER, response.getPermissions().get(5501L).getVerdict());
+        verify(userDeliveryPreferencesCache, times(1)).getDeliveryPreferences(recipientSenders);
+        verify(userDeliveryPreferencesCache, never()).getDeliveryPreferences(anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("prefetch - Preferences prefetched for the group not looked up again by the single template groups split from it")
+    void prefetch_SplitGroupsLookUpNothing() throws FilterException {
+        String email = "some.email@somewhere.com";
+
+        TriggeredMessageTemplateGroup tGroup = new TriggeredMessageTemplateGroup();
+        MessageTemplate emailTemplate = new MessageTemplate();
+        emailTemplate.setMessageTemplateID(5500L);
+        emailTemplate.setSender("email");
+        emailTemplate.setMessageClass(MessageClass.TEAM);
+        emailTemplate.setRecipientAddressContextKey("root.user.email");
+        MessageTemplate smsTemplate = new MessageTemplate();
+        smsTemplate.setMessageTemplateID(5501L);
+        smsTemplate.setSender("sms");
+        smsTemplate.setMessageClass(MessageClass.TEAM);
+        smsTemplate.setRecipientAddressContextKey("root.user.email");
+        tGroup.setQualifiedTemplates(Set.of(emailTemplate, smsTemplate));
+
+        SolMessage msg = new SolMessage();
+        msg.setData(Map.of("root", new TestObject(new TestUser(email))));
+
+        UserDeliveryPreferencesDTO mockPrefs = new UserDeliveryPreferencesDTO();
+        mockPrefs.setSender("email");
+        mockPrefs.setSupportedMessageClasses(MessageClass.TEAM.name());
+        Set<RecipientSender> recipientSenders = Set.of(new RecipientSender(email, "email"), new RecipientSender(email, "sms"));
+        when(userDeliveryPreferencesCache.getDeliveryPreferences(recipientSenders))
+                .thenReturn(Map.of(new RecipientSender(email, "email"), mockPrefs));
+
+        filter.prefetch(tGroup, msg);
+        FilterResponse emailResponse = filter.apply(tGroup.forTemplate(emailTemplate), msg);
+        FilterResponse smsResponse = filter.apply(tGroup.forTemplate(smsTemplate), msg);
+
+        assertEquals(DeliveryPermission.SEND_NOW_PERMISSION, emailResponse.getPermissions().get(5500L));
+        assertEquals(SEND_NEVER, smsResponse.getPermissions().get(5501L).getVerdict());
+        verify(userDeliveryPreferencesCache, times(1)).getDeliveryPreferences(anySet());
+        verify(userDeliveryPreferencesCache, never()).getDeliveryPreferences(anyString(), anyString());
+    }
 
     @AllArgsConstructor
     @NoArgsConstructor
@@ -1,7 +1,9 @@
 package com.solmod.notifications.dispatcher.repository;
 
+import com.solmod.notifications.dispatcher.repository.domain.DeliveryKey;
 import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
 import com.solmod.notifications.dispatcher.repository.domain.MessageMetadata;
+import org.apache.commons.lang3.time.DateUtils;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
@@ -13,6 +15,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -39,6 +42,8 @@ class MessageDeliveryRepoTest {
         mock.setMessageTemplateId(58L);
         mock.setStatus(MessageDelivery.Status.D);
         mock.setRecipientAddress("someone@somewhere.com");
+        mock.setIdMetadataKey(matchKey);
+        mock.setIdMetadataValue(matchVal);
         mock.setMessageMetadata(Set.of(
                 new MessageMetadata(mock, matchKey, matchVal),
                 new MessageMetadata(mock, "another-key", "another-value")));
@@ -67,6 +72,8 @@ class MessageDeliveryRepoTest {
         mock.setMessageTemplateId(58L);
         mock.setStatus(MessageDelivery.Status.D);
         mock.setRecipientAddress("someone@somewhere.com");
+        mock.setIdMetadataKey(matchKey);
+        mock.setIdMetadataValue("different-value");
         mock.setMessageMetadata(Set.of(new MessageMetadata(mock, matchKey, "different-value")));
         MessageDelivery saved = repo.save(mock);
 
@@ -90,6 +97,8 @@ class MessageDeliveryRepoTest {
         mock.setMessageTemplateId(58L);
         mock.setStatus(MessageDelivery.Status.F);
         mock.setRecipientAddress("someone@somewhere.com");
+        mock.setIdMetadataKey(matchKey);
+        mock.setIdMetadataValue(matchVal);
         mock.setMessageMetadata(Set.of(new MessageMetadata(mock, matchKey, matchVal)));
         MessageDelivery saved = repo.save(mock);
 
@@ -101,4 +110,58 @@ class MessageDeliveryRepoTest {
         assertEquals(0, allDeliveries.size());
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("findAllDeliveriesForTemplates - Deliveries of each listed template returned, most recent first")
+    void assertFindAllDeliveriesForTemplates_ListedTemplatesReturned() {
+        String matchKey = "metadata-key";
+        String matchVal = "metadata-value";
+
+        // Arrange
+        MessageDelivery older = repo.save(buildDelivery(58L, DateUtils.addMinutes(new Date(), -10), matchKey, matchVal));
+        MessageDelivery newer = repo.save(buildDelivery(59L, new Date(), matchKey, matchVal));
+        repo.save(buildDelivery(60L, new Date(), matchKey, matchVal));
+
+        // Act
+        List<MessageDelivery> allDeliveries = repo.findAllDeliveriesForTemplates(
+                List.of(58L, 59L), "someone@somewhere.com", matchKey, matchVal);
+
+        // Assert
+        assertEquals(List.of(newer.getId(), older.getId()), allDeliveries.stream().map(MessageDelivery::getId).toList());
+    }
+
+    @Test
+    @DisplayName("findAllDeliveries - Delivery key kept up to date with its template, recipient and id metadata")
+    void assertFindAllDeliveries_KeyUpdated() {
+        // Arrange
+        MessageDelivery mock = new MessageDelivery();
+        mock.setDateCreated(new Date());
+        mock.setMessageTemplateId(58L);
+        mock.setStatus(MessageDelivery.Status.D);
+        mock.setRecipientAddress("someone@somewhere.com");
+        mock.setIdMetadataKey("metadata-key");
+        mock.setIdMetadataValue("metadata-value");
+        MessageDelivery saved = repo.save(mock);
+        saved.setIdMetadataValue("another-value");
+        repo.save(saved);
+
+        // Act
+        List<MessageDelivery> allDeliveries = repo.findAllDeliveries(
+                DeliveryKey.of(58L, "someone@somewhere.com", "metadata-key", "another-value"));
+
+        // Assert
+        assertEquals(List.of(saved.getId()), allDeliveries.stream().map(MessageDelivery::getId).toList());
+        assertEquals(DeliveryKey.LENGTH, allDeliveries.get(0).getDeliveryKey().length());
+    }
+
+    private MessageDelivery buildDelivery(Long templateId, Date dateCreated, String key, String value) {
+        MessageDelivery delivery = new MessageDelivery();
+        delivery.setDateCreated(dateCreated);
+        delivery.setMessageTemplateId(templateId);
+        delivery.setStatus(MessageDelivery.Status.D);
+        delivery.setRecipientAddress("someone@somewhere.com");
+        delivery.setIdMetadataKey(key);
+        delivery.setIdMetadataValue(value);
+        delivery.setMessageMetadata(Set.of(new MessageMetadata(delivery, key, value)));
+        return delivery;
+    }
+}
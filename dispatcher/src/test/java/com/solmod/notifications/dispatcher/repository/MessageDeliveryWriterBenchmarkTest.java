@@ -0,0 +1,99 @@
+package com.solmod.notifications.dispatcher.repository;
+
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.repository.domain.MessageMetadata;
+import com.solmod.notifications.dispatcher.service.MessageDeliveryService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Rows written per second for bursts of 10,000 deliveries of five metadata entries each, through the repo and through
+ * the {@link MessageDeliveryWriter}, each burst in a transaction of its own. Rows are counted as a delivery and five
+ * metadata rows, though the service keeps metadata in the delivery's own column when so configured. Against the
+ * in-memory test database, so only the comparison is telling. Run with {@code mvn test -Dtest=MessageDeliveryWriterBenchmarkTest -Dbenchmark=true}
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+@ActiveProfiles(value = "local")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class MessageDeliveryWriterBenchmarkTest {
+
+    private static final int DELIVERIES = 10_000;
+    private static final int METADATA_PER_DELIVERY = 5;
+    private static final int WARMUP_BURSTS = 2;
+    private static final int MEASURED_BURSTS = 5;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    MessageDeliveryRepo repo;
+    @Autowired
+    MessageDeliveryWriter writer;
+    @Autowired
+    MessageDeliveryService service;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    @DisplayName("Benchmark - Bursts of 10k deliveries with five metadata entries each")
+    void benchmarkBursts() {
+        run("MessageDeliveryRepo.saveAll", repo::saveAll);
+        run("MessageDeliveryWriter.insertAll", writer::insertAll);
+        run("MessageDeliveryService.recordDeliveries", service::recordDeliveries);
+    }
+
+    private void run(String name, Consumer<List<MessageDelivery>> write) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < WARMUP_BURSTS; i++) {
+            List<MessageDelivery> burst = buildBurst(i);
+            transaction.executeWithoutResult(status -> write.accept(burst));
+        }
+
+        long elapsedNanos = 0;
+        for (int i = 0; i < MEASURED_BURSTS; i++) {
+            List<MessageDelivery> burst = buildBurst(WARMUP_BURSTS + i);
+            long start = System.nanoTime();
+            transaction.executeWithoutResult(status -> write.accept(burst));
+            elapsedNanos += System.nanoTime() - start;
+        }
+
+        long rows = (long) MEASURED_BURSTS * DELIVERIES * (1 + METADATA_PER_DELIVERY);
+        log.info("{}: {} rows in {} ms, {} rows/s", name, rows, elapsedNanos / 1_000_000,
+                rows * 1_000_000_000L / elapsedNanos);
+    }
+
+    private List<MessageDelivery> buildBurst(int burst) {
+        Date now = new Date();
+        List<MessageDelivery> deliveries = new ArrayList<>(DELIVERIES);
+        for (int i = 0; i < DELIVERIES; i++) {
+            MessageDelivery delivery = new MessageDelivery();
+            delivery.setDateCreated(now);
+            delivery.setMessageTemplateId(900L + i % 10);
+            delivery.setStatus(MessageDelivery.Status.PD);
+            delivery.setRecipientAddress("recipient" + i + "@somewhere.com");
+            delivery.setIdMetadataKey("order.id");
+            delivery.setIdMetadataValue(burst + "-" + i);
+            Set<MessageMetadata> metadata = new HashSet<>();
+            for (int m = 0; m < METADATA_PER_DELIVERY; m++) {
+                metadata.add(new MessageMetadata(delivery, "key" + m, "value" + m));
+            }
+            delivery.setMessageMetadata(metadata);
+            deliveries.add(delivery);
+        }
+        return deliveries;
+    }
+}
@@ -0,0 +1,100 @@
+package com.solmod.notifications.dispatcher.repository;
+
+import com.solmod.notifications.dispatcher.repository.domain.DeliveryKey;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.repository.domain.MessageMetadata;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest
+@ActiveProfiles(value = "local")
+@Transactional
+class MessageDeliveryWriterTest {
+
+    @Autowired
+    MessageDeliveryWriter writer;
+    @Autowired
+    MessageDeliveryRepo repo;
+
+    @Test
+    @DisplayName("insertAll - Deliveries and their metadata written with ids and delivery keys, and readable by the repo")
+    void assertInsertAll_ReadableByRepo() {
+        // Arrange
+        MessageDelivery first = buildDelivery("written@somewhere.com");
+        MessageDelivery second = buildDelivery("written@somewhere.com");
+        second.setIdMetadataValue("6");
+
+        // Act
+        writer.insertAll(List.of(first, second));
+
+        // Assert
+        assertNotNull(first.getId());
+        assertNotEquals(first.getId(), second.getId());
+        assertEquals(DeliveryKey.of(first), first.getDeliveryKey());
+
+        List<MessageDelivery> found = List.copyOf(
+                repo.findAllDeliveries(170L, "written@somewhere.com", "order.id", "5"));
+        assertEquals(1, found.size());
+        assertEquals(first.getId(), found.get(0).getId());
+        assertEquals(first.getDeliveryKey(), found.get(0).getDeliveryKey());
+        assertEquals(MessageDelivery.Status.PD, found.get(0).getStatus());
+        assertEquals(2, found.get(0).getMessageMetadata().size());
+    }
+
+    @Test
+    @DisplayName("insertAll - Ids drawn from the same sequence as deliveries saved through the repo")
+    void assertInsertAll_IdsShared() {
+        // Arrange
+        MessageDelivery saved = repo.save(buildDelivery("shared@somewhere.com"));
+        MessageDelivery written = buildDelivery("shared@somewhere.com");
+
+        // Act
+        writer.insertAll(List.of(written));
+
+        // Assert
+        assertEquals(saved.getId() + 1, written.getId());
+    }
+
+    @Test
+    @DisplayName("insertAll - Compacted metadata written to the delivery's column and read back with it")
+    void assertInsertAll_CompactMetadata() {
+        // Arrange
+        MessageDelivery delivery = buildDelivery("compact-written@somewhere.com");
+        delivery.compactMetadata();
+
+        // Act
+        writer.insertAll(List.of(delivery));
+
+        // Assert
+        MessageDelivery found = repo.findAllDeliveries(170L, "compact-written@somewhere.com", "order.id", "5").get(0);
+        assertEquals(Map.of("order.id", "5", "customer.id", "12"), found.getMetadata());
+        assertEquals(0, found.getMessageMetadata().size());
+    }
+
+    private MessageDelivery buildDelivery(String recipientAddress) {
+        MessageDelivery delivery = new MessageDelivery();
+        delivery.setDateCreated(new Date());
+        delivery.setMessageTemplateId(170L);
+        delivery.setStatus(MessageDelivery.Status.PD);
+        delivery.setRecipientAddress(recipientAddress);
+        delivery.setIdMetadataKey("order.id");
+        delivery.setIdMetadataValue("5");
+        delivery.setMessageMetadata(Set.of(
+                new MessageMetadata(delivery, "order.id", "5"),
+                new MessageMetadata(delivery, "customer.id", "12")));
+        return delivery;
+    }
+}
@@ -0,0 +1,199 @@
+package com.solmod.notifications.dispatcher.repository;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Applies the admin and dispatcher migrations to H2 in MySQL mode, and checks the hot queries are planned against the
+ * indexes the migrations create rather than by scanning
+ */
+class SchemaMigrationsTest {
+
+    private static final String URL = "jdbc:h2:mem:migrations;DB_CLOSE_DELAY=-1;MODE=MySQL";
+
+    @BeforeAll
+    static void migrate() {
+        Flyway.configure()
+                .dataSource(URL, "sa", "sa")
+                .outOfOrder(true)
+                .load()
+                .migrate();
+    }
+
+    @Test
+    @DisplayName("migrate - Admin and dispatcher migrations all applied")
+    void assertMigrationsApplied() {
+        Flyway flyway = Flyway.configure().dataSource(URL, "sa", "sa").load();
+
+        assertEquals(0, flyway.info().pending().length);
+        assertEquals(18, flyway.info().applied().length);
+    }
+
+    @Test
+    @DisplayName("findAllDeliveries - Deliveries read by delivery key, without joining metadata")
+    void assertFindAllDeliveries_Indexed() throws SQLException {
+        String plan = explain("SELECT d.* FROM message_deliveries d " +
+                "WHERE d.delivery_key = '0123456789abcdef0123456789abcdef' " +
+                "AND d.status <> 'F' " +
+                "ORDER BY d.date_completed DESC, d.date_created DESC");
+
+        assertTrue(plan.contains("IDX_MESSAGE_DELIVERIES_DELIVERY_KEY"), plan);
+    }
+
+    @Test
+    @DisplayName("findByRecipientAddressAndSender - Preferences read by index")
+    void assertFindByRecipientAddressAndSender_Indexed() throws SQLException {
+        String plan = explain("SELECT * FROM user_delivery_preferences " +
+                "WHERE recipient_address = 'someone@somewhere.com' AND sender = 'email'");
+
+        assertTrue(plan.contains("IDX_USER_DELIVERY_PREFERENCES_RECIPIENT_SENDER"), plan);
+    }
+
+    @Test
+    @DisplayName("findByUserId - Preferences read by index")
+    void assertFindByUserId_Indexed() throws SQLException {
+        String plan = explain("SELECT * FROM user_delivery_preferences " +
+                "WHERE user_id = X'0123456789abcdef0123456789abcdef'");
+
+        assertTrue(plan.contains("IDX_USER_DELIVERY_PREFERENCES_USER"), plan);
+    }
+
+    @Test
+    @DisplayName("findByTenantIdAndSubjectAndVerb - NotificationGroup read by index")
+    void assertFindByTenantIdAndSubjectAndVerb_Indexed() throws SQLException {
+        String plan = explain("SELECT * FROM notification_groups " +
+                "WHERE tenant_id = 1 AND subject = 'order' AND verb = 'created'");
+
+        assertTrue(plan.contains("UK_NOTIFICATION_GROUPS_ROUTE"), plan);
+    }
+
+    @Test
+    @DisplayName("findCounters - Delivery counters read by index")
+    void assertFindCounters_Indexed() throws SQLException {
+        String plan = explain("SELECT * FROM message_delivery_counters " +
+                "WHERE message_template_id IN (58, 59) AND recipient_address = 'someone@somewhere.com' " +
+                "AND id_metadata_key = 'order.id' AND id_metadata_value = '5'");
+
+        assertTrue(plan.contains("UK_MESSAGE_DELIVERY_COUNTERS"), plan);
+    }
+
+    @Test
+    @DisplayName("streamDeferredDeliveries - Deliveries pending their send window read by index")
+    void assertStreamDeferredDeliveries_Indexed() throws SQLException {
+        String plan = explain("SELECT d.id, d.send_after FROM message_deliveries d " +
+                "WHERE d.status = 'PT' AND d.send_after IS NOT NULL");
+
+        assertTrue(plan.contains("IDX_MESSAGE_DELIVERIES_STATUS_SEND_AFTER"), plan);
+    }
+
+    @Test
+    @DisplayName("streamDeferredDeliveriesBefore - Deliveries coming due read by index range")
+    void assertStreamDeferredDeliveriesBefore_Indexed() throws SQLException {
+        String plan = explain("SELECT d.id, d.send_after FROM message_deliveries d " +
+                "WHERE d.status = 'PT' AND d.send_after < CURRENT_TIMESTAMP");
+
+        assertTrue(plan.contains("IDX_MESSAGE_DELIVERIES_STATUS_SEND_AFTER"), plan);
+    }
+
+    @Test
+    @DisplayName("claimDueRetries - Deliveries due for retry read by index")
+    void assertClaimDueRetries_Indexed() throws SQLException {
+        String plan = explain("SELECT d.* FROM message_deliveries d " +
+                "WHERE d.status = 'PR' AND d.next_attempt_at <= CURRENT_TIMESTAMP ORDER BY d.next_attempt_at");
+
+        assertTrue(plan.contains("IDX_MESSAGE_DELIVERIES_STATUS_NEXT_ATTEMPT"), plan);
+    }
+
+    @Test
+    @DisplayName("claimAvailable - Outbox entries read earliest available first by index")
+    void assertClaimAvailable_Indexed() throws SQLException {
+        String plan = explain("SELECT e.* FROM sol_comm_outbox e WHERE e.date_published IS NULL " +
+                "AND e.date_quarantined IS NULL AND e.available_at <= CURRENT_TIMESTAMP " +
+                "AND (e.claimed_until IS NULL OR e.claimed_until <= CURRENT_TIMESTAMP) ORDER BY e.available_at, e.id");
+
+        assertTrue(plan.contains("IDX_SOL_COMM_OUTBOX_AVAILABLE"), plan);
+    }
+
+    @Test
+    @DisplayName("makeDeferredAvailable - Outbox entries read by delivery id by index")
+    void assertMakeDeferredAvailable_Indexed() throws SQLException {
+        String plan = explain("SELECT e.* FROM sol_comm_outbox e WHERE e.message_delivery_id IN (1, 2, 3)");
+
+        assertTrue(plan.contains("IDX_SOL_COMM_OUTBOX_DELIVERY"), plan);
+    }
+
+    @Test
+    @DisplayName("V2_8, V2_12 - Counters backfilled from the deliveries made before, existing counters only raised")
+    void assertCountersBackfilled() throws SQLException {
+        String url = "jdbc:h2:mem:backfill;DB_CLOSE_DELAY=-1;MODE=MySQL";
+        Flyway.configure().dataSource(url, "sa", "sa").outOfOrder(true).target("2.7").load().migrate();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "sa");
+             Statement statement = connection.createStatement()) {
+            String insert = "INSERT INTO message_deliveries (id, message_template_id, recipient_address, " +
+                    "id_metadata_key, id_metadata_value, status, date_created) VALUES ";
+            statement.execute(insert + "(1, 58, 'a@somewhere.com', 'order.id', '5', 'D', '2026-01-01 00:00:00')");
+            statement.execute(insert + "(2, 58, 'a@somewhere.com', 'order.id', '5', 'PD', '2026-02-01 00:00:00')");
+            statement.execute(insert + "(3, 58, 'a@somewhere.com', 'order.id', '5', 'F', '2026-03-01 00:00:00')");
+            statement.execute(insert + "(4, 59, 'a@somewhere.com', 'order.id', '5', 'D', '2026-01-01 00:00:00')");
+            statement.execute(insert + "(5, 59, 'b@somewhere.com', null, null, 'D', '2026-01-01 00:00:00')");
+            // Kept since, counting one delivery made after those above
+            statement.execute("INSERT INTO message_delivery_counters VALUES " +
+                    "(1, 59, 'a@somewhere.com', 'order.id', '5', 1, '2026-04-01 00:00:00')");
+            statement.execute("UPDATE message_delivery_counters_seq SET next_val = 51");
+        }
+        Flyway.configure().dataSource(url, "sa", "sa").outOfOrder(true).target("2.11").load().migrate();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "sa");
+             Statement statement = connection.createStatement()) {
+            // Created for a delivery without id metadata, never found again
+            statement.execute("INSERT INTO message_delivery_counters (id, message_template_id, recipient_address, " +
+                    "delivery_count) VALUES (2, 59, 'b@somewhere.com', 0)");
+        }
+
+        Flyway.configure().dataSource(url, "sa", "sa").outOfOrder(true).load().migrate();
+
+        try (Connection connection = DriverManager.getConnection(url, "sa", "sa");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id, message_template_id, delivery_count, " +
+                     "last_delivery_date, id_metadata_key FROM message_delivery_counters " +
+                     "ORDER BY message_template_id, recipient_address")) {
+            assertTrue(resultSet.next());
+            assertTrue(resultSet.getLong(1) > 51);
+            assertEquals(58, resultSet.getLong(2));
+            assertEquals(2, resultSet.getLong(3));
+            assertEquals("2026-02-01 00:00:00.0", resultSet.getTimestamp(4).toString());
+            assertTrue(resultSet.next());
+            assertEquals(59, resultSet.getLong(2));
+            assertEquals(1, resultSet.getLong(3));
+            assertEquals("2026-04-01 00:00:00.0", resultSet.getTimestamp(4).toString());
+            assertTrue(resultSet.next());
+            assertEquals(59, resultSet.getLong(2));
+            assertEquals(1, resultSet.getLong(3));
+            assertEquals("-", resultSet.getString(5));
+            assertFalse(resultSet.next());
+        }
+    }
+
+    private String explain(String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "sa");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("EXPLAIN " + sql)) {
+            StringBuilder plan = new StringBuilder();
+            while (resultSet.next()) {
+                plan.append(resultSet.getString(1)).append('\n');
+            }
+            return plan.toString().toUpperCase();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.admin.service.NotificationAccessService;
+import com.solmod.notifications.admin.web.model.MessageTemplateDTO;
+import com.solmod.notifications.admin.web.model.MessageTemplateGroupDTO;
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.domain.SolMessage;
+import com.solmod.notifications.dispatcher.filter.FilterResponse;
+import com.solmod.notifications.dispatcher.filter.MessageDeliveryFilter;
+import com.solmod.notifications.dispatcher.filter.MessageDeliveryRulesFilter;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
+import com.solmod.notifications.dispatcher.service.domain.OutboundDelivery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.openMocks;
+
+class BatchEventBusHandlerTest {
+
+    @Mock
+    NotificationAccessService accessService;
+    @Mock
+    MessageDeliveryService deliveryService;
+    @Captor
+    ArgumentCaptor<List<OutboundDelivery>> outboundCaptor;
+
+    NotificationRoutingIndex routingIndex;
+    BatchEventBusHandler handler;
+
+    @BeforeEach
+    void setup() {
+        openMocks(this);
+        DispatchExecutor dispatchExecutor = new DispatchExecutor(false, 1);
+        MessageFilterService filterService =
+                new MessageFilterService(List.of(new MessageDeliveryRulesFilter(deliveryService)), dispatchExecutor, false, false, 0);
+        routingIndex = new NotificationRoutingIndex(accessService);
+        EventBusHandler eventBusHandler = new EventBusHandler(routingIndex, filterService, deliveryService);
+        handler = new BatchEventBusHandler(routingIndex, eventBusHandler, dispatchExecutor);
+    }
+
+    @Test
+    @DisplayName("apply - NotificationGroups resolved from the routing index, not per message")
+    void apply_GroupsResolvedFromIndex() {
+        // Arrange
+        when(accessService.getAllNotificationTemplateGroups())
+                .thenReturn(List.of(buildGroup("order", "created"), buildGroup("order", "shipped")));
+        routingIndex.refresh();
+        when(deliveryService.getDeliverySummaries(any(), anyString(), any(), any())).thenReturn(emptyMap());
+
+        List<SolMessage> batch = List.of(
+                buildMessage("order", "created", "a@somewhere.com"),
+                buildMessage("order", "created", "b@somewhere.com"),
+                buildMessage("order", "shipped", "a@somewhere.com"),
+                buildMessage("order", "created", "a@somewhere.com"));
+
+        // Act
+        handler.accept(batch);
+
+        // Assert
+        verify(accessService, times(1)).getAllNotificationTemplateGroups();
+        verify(accessService, never()).getNotificationTemplateGroup(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("apply - Delivery history queried once per recipient within a NotificationGroup")
+    void apply_HistoryQueriedOncePerRecipient() {
+        // Arrange
+        when(accessService.getAllNotificationTemplateGroups()).thenReturn(List.of(buildGroup("order", "created")));
+        routingIndex.refresh();
+        when(deliveryService.getDeliverySummaries(any(), anyString(), any(), any())).thenReturn(emptyMap());
+
+        List<SolMessage> batch = List.of(
+                buildMessage("order", "created", "a@somewhere.com"),
+                buildMessage("order", "created", "a@somewhere.com"),
+                buildMessage("order", "created", "b@somewhere.com"));
+
+        // Act
+        handler.accept(batch);
+
+        // Assert
+        verify(deliveryService, times(1)).getDeliverySummaries(List.of(90L), "a@somewhere.com", "order.id", "5");
+        verify(deliveryService, times(1)).getDeliverySummaries(List.of(90L), "b@somewhere.com", "order.id", "5");
+    }
+
+    @Test
+    @DisplayName("apply - A delivery granted in a batch counts against the messages after it for the same recipient")
+    void apply_GrantedDeliveryCountedWithinBatch() {
+        // Arrange
+        when(accessService.getAllNotificationTemplateGroups()).thenReturn(List.of(buildGroup("order", "created")));
+        routingIndex.refresh();
+        when(deliveryService.getDeliverySummaries(any(), anyString(), any(), any())).thenReturn(emptyMap());
+
+        MessageDeliveryRulesFilter rulesFilter = new MessageDeliveryRulesFilter(deliveryService);
+        List<FilterResponse> responses = Collections.synchronizedList(new ArrayList<>());
+        MessageDeliveryFilter recordingFilter = (templateGroup, solMessage) -> {
+            FilterResponse response = rulesFilter.apply(templateGroup, solMessage);
+            responses.add(response);
+            return response;
+        };
+        DispatchExecutor dispatchExecutor = new DispatchExecutor(true, 4);
+        MessageFilterService filterService =
+                new MessageFilterService(List.of(recordingFilter), dispatchExecutor, false, false, 0);
+        handler = new BatchEventBusHandler(routingIndex,
+                new EventBusHandler(routingIndex, filterService, deliveryService), dispatchExecutor);
+
+        List<SolMessage> batch = List.of(
+                buildMessage("order", "created", "a@somewhere.com"),
+                buildMessage("order", "created", "a@somewhere.com"));
+
+        // Act
+        handler.accept(batch);
+        dispatchExecutor.close();
+
+        // Assert
+        assertEquals(List.of(DeliveryPermission.Verdict.SEND_NOW, DeliveryPermission.Verdict.SEND_NEVER),
+                responses.stream().map(r -> r.getPermissions().get(90L).getVerdict()).toList());
+    }
+
+    @Test
+    @DisplayName("apply - A delivery and communication recorded for each template and recipient left qualified")
+    void apply_QualifiedDeliveriesRecorded() {
+        // Arrange
+        when(accessService.getAllNotificationTemplateGroups()).thenReturn(List.of(buildGroup("order", "created")));
+        routingIndex.refresh();
+        when(deliveryService.getDeliverySummaries(any(), anyString(), any(), any())).thenReturn(emptyMap());
+
+        List<SolMessage> batch = List.of(
+                buildMessage("order", "created", "a@somewhere.com"),
+                buildMessage("order", "created", "a@somewhere.com"),
+                buildMessage("order", "created", "b@somewhere.com"));
+
+        // Act
+        handler.accept(batch);
+
+        // Assert
+        verify(deliveryService).recordOutboundDeliveries(outboundCaptor.capture());
+        List<OutboundDelivery> recorded = outboundCaptor.getValue();
+        assertEquals(Set.of("a@somewhere.com", "b@somewhere.com"),
+                recorded.stream().map(o -> o.delivery().getRecipientAddress()).collect(Collectors.toSet()));
+        recorded.forEach(o -> {
+            assertEquals(MessageDelivery.Status.PD, o.delivery().getStatus());
+            assertEquals(90L, o.delivery().getMessageTemplateId());
+            assertEquals("5", o.delivery().getIdMetadataValue());
+            assertEquals(o.delivery().getRecipientAddress(), o.communication().getRecipient());
+            assertEquals(90L, o.communication().getMessageTemplateId());
+        });
+        assertEquals(2, recorded.size());
+    }
+
+    @Test
+    @DisplayName("chainByDeliveryHistory - Messages sharing a recipient chained, in order; others apart")
+    void chainByDeliveryHistory_ChainsSharedRecipients() {
+        // Arrange
+        MessageTemplate template = MessageTemplate.fromDTO(buildGroup("order", "created").getMessageTemplates()
+                .iterator().next());
+        SolMessage a1 = buildMessage("order", "created", "a@somewhere.com");
+        SolMessage b = buildMessage("order", "created", "b@somewhere.com");
+        SolMessage a2 = buildMessage("order", "created", "a@somewhere.com");
+
+        // Act
+        List<List<SolMessage>> chains = BatchEventBusHandler.chainByDeliveryHistory(List.of(a1, b, a2), Set.of(template));
+
+        // Assert
+        assertEquals(List.of(List.of(a1, a2), List.of(b)), chains);
+    }
+
+    private MessageTemplateGroupDTO buildGroup(String subject, String verb) {
+        MessageTemplateDTO template = new MessageTemplateDTO();
+        template.setMessageTemplateID(90L);
+        template.setRecipientAddressContextKey("emailAddy");
+        template.setMaxSend(1);
+        MessageTemplateGroupDTO group = new MessageTemplateGroupDTO();
+        group.setTenantId(1L);
+        group.setSubject(subject);
+        group.setVerb(verb);
+        group.setMessageTemplates(Set.of(template));
+        return group;
+    }
+
+    private SolMessage buildMessage(String subject, String verb, String email) {
+        SolMessage solMessage = new SolMessage();
+        solMessage.setTenantId(1L);
+        solMessage.setSubject(subject);
+        solMessage.setVerb(verb);
+        solMessage.setIdMetadataKey("order.id");
+        solMessage.setIdMetadataValue("5");
+        solMessage.setData(Map.of("emailAddy", email));
+        return solMessage;
+    }
+}
@@ -0,0 +1,158 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.DeferredDeliveriesReleasedEvent;
+import com.solmod.notifications.dispatcher.repository.MessageDeliveryRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.openMocks;
+
+class DeferredDeliverySchedulerTest {
+
+    private static final Instant START = Instant.parse("2024-03-12T16:59:30Z");
+
+    @Mock
+    MessageDeliveryRepo deliveryRepo;
+    @Mock
+    ApplicationEventPublisher eventPublisher;
+    @Mock
+    PlatformTransactionManager transactionManager;
+    @Mock
+    Clock clock;
+
+    DeferredDeliveryScheduler scheduler;
+
+    @BeforeEach
+    void setup() {
+        openMocks(this);
+        when(clock.millis()).thenReturn(START.toEpochMilli());
+        scheduler = new DeferredDeliveryScheduler(deliveryRepo, eventPublisher, clock, transactionManager, 1000, 100,
+                60000, 10000);
+    }
+
+    @Test
+    @DisplayName("releaseDue - Deliveries loaded at startup released in batches once their window opens")
+    void assertReleaseDue_LoadedReleasedInBatches() {
+        // Arrange: 250 deliveries, all due at the top of the hour
+        Date topOfHour = Date.from(Instant.parse("2024-03-12T17:00:00Z"));
+        when(deliveryRepo.streamDeferredDeliveries()).thenReturn(LongStream.rangeClosed(1, 250)
+                .mapToObj(id -> deferred(id, topOfHour)));
+        scheduler.loadDeferredDeliveries();
+
+        // Act
+        scheduler.releaseDue();
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+
+        when(clock.millis()).thenReturn(topOfHour.getTime());
+        scheduler.releaseDue();
+
+        // Assert
+        ArgumentCaptor<DeferredDeliveriesReleasedEvent> released = ArgumentCaptor.forClass(DeferredDeliveriesReleasedEvent.class);
+        verify(eventPublisher, times(3)).publishEvent(released.capture());
+        assertEquals(List.of(100, 100, 50), released.getAllValues().stream().map(e -> e.deliveryIds().size()).toList());
+        assertEquals(0, scheduler.getScheduledCount());
+    }
+
+    @Test
+    @DisplayName("releaseDue - Deliveries deferred since startup released once their window opens")
+    void assertReleaseDue_ScheduledReleased() {
+        // Arrange
+        scheduler.schedule(5L, START.plusSeconds(10));
+        scheduler.schedule(6L, START.plusSeconds(10));
+
+        // Act
+        when(clock.millis()).thenReturn(START.plusSeconds(10).toEpochMilli());
+        scheduler.releaseDue();
+
+        // Assert
+        verify(eventPublisher).publishEvent(new DeferredDeliveriesReleasedEvent(List.of(5L, 6L)));
+    }
+
+    @Test
+    @DisplayName("releaseDue - Nothing released while nothing is due")
+    void assertReleaseDue_NothingDue() {
+        // Arrange
+        when(deliveryRepo.streamDeferredDeliveries()).thenReturn(Stream.empty());
+        scheduler.loadDeferredDeliveries();
+        scheduler.schedule(5L, START.plusSeconds(3600));
+
+        // Act
+        when(clock.millis()).thenReturn(START.plusSeconds(60).toEpochMilli());
+        scheduler.releaseDue();
+
+        // Assert
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+        assertEquals(1, scheduler.getScheduledCount());
+    }
+
+    @Test
+    @DisplayName("reloadComingDue - Deliveries deferred by other dispatchers scheduled once, and released when due")
+    void assertReloadComingDue_ScheduledOnce() {
+        // Arrange
+        scheduler.schedule(5L, START.plusSeconds(10));
+        when(deliveryRepo.streamDeferredDeliveriesBefore(any())).thenAnswer(invocation -> Stream.of(
+                deferred(5L, Date.from(START.plusSeconds(10))), deferred(6L, Date.from(START.plusSeconds(20)))));
+
+        // Act
+        scheduler.reloadComingDue();
+        scheduler.reloadComingDue();
+
+        // Assert
+        verify(deliveryRepo, times(2)).streamDeferredDeliveriesBefore(Date.from(START.plusSeconds(120)));
+        assertEquals(2, scheduler.getScheduledCount());
+        when(clock.millis()).thenReturn(START.plusSeconds(20).toEpochMilli());
+        scheduler.releaseDue();
+        verify(eventPublisher).publishEvent(new DeferredDeliveriesReleasedEvent(List.of(5L, 6L)));
+    }
+
+    @Test
+    @DisplayName("releaseDue - A batch which fails to release released again after the retry delay")
+    void assertReleaseDue_FailedBatchRetried() {
+        // Arrange
+        scheduler.schedule(5L, START.plusSeconds(10));
+        DeferredDeliveriesReleasedEvent event = new DeferredDeliveriesReleasedEvent(List.of(5L));
+        doThrow(new IllegalStateException("Lock wait timeout")).doNothing().when(eventPublisher).publishEvent(event);
+
+        // Act
+        when(clock.millis()).thenReturn(START.plusSeconds(10).toEpochMilli());
+        scheduler.releaseDue();
+        when(clock.millis()).thenReturn(START.plusSeconds(15).toEpochMilli());
+        scheduler.releaseDue();
+        assertEquals(1, scheduler.getScheduledCount());
+        when(clock.millis()).thenReturn(START.plusSeconds(20).toEpochMilli());
+        scheduler.releaseDue();
+
+        // Assert
+        verify(eventPublisher, times(2)).publishEvent(event);
+        assertEquals(0, scheduler.getScheduledCount());
+    }
+
+    private MessageDeliveryRepo.DeferredDelivery deferred(long id, Date sendAfter) {
+        return new MessageDeliveryRepo.DeferredDelivery() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Date getSendAfter() {
+                return sendAfter;
+            }
+        };
+    }
+}
@@ -0,0 +1,215 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solmod.notifications.dispatcher.service.domain.DeliveryPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.openMocks;
+
+class DeliveryArchiverTest {
+
+    // Retention of 400 days expires everything created before 2026-11-10
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2027-12-15T00:00:00Z"), ZoneOffset.UTC);
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+    @Mock
+    NotificationRoutingIndex routingIndex;
+    @Mock
+    MessageDeliveryService deliveryService;
+
+    @TempDir
+    Path archiveDir;
+
+    DeliveryArchiver archiver;
+
+    @BeforeEach
+    void setup() throws Exception {
+        openMocks(this);
+        when(routingIndex.isLoaded()).thenReturn(true);
+        when(deliveryService.isCountersBackfilled()).thenReturn(true);
+        List<DeliveryPartition> partitions = List.of(
+                DeliveryPartition.of("p_initial", "'2026-11-01 00:00:00'"),
+                DeliveryPartition.of("p202611", "'2026-12-01 00:00:00'"),
+                DeliveryPartition.of("p_future", "MAXVALUE"));
+        when(jdbcTemplate.query(startsWith("SELECT partition_name"), anyPartitionMapper(), anyString()))
+                .thenReturn(partitions);
+        when(jdbcTemplate.queryForObject(contains("status IN"), eq(Long.class))).thenReturn(0L);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(row(1L, "D"));
+            handler.processRow(row(2L, "F"));
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT * FROM"), any(RowCallbackHandler.class));
+
+        archiver = new DeliveryArchiver(jdbcTemplate, new ObjectMapper(), routingIndex, deliveryService, CLOCK, true,
+                Duration.ofDays(400), archiveDir, 3);
+    }
+
+    @Test
+    @DisplayName("archiveExpired - Expired partition written to gzipped JSON lines, then dropped from both tables")
+    void assertArchiveExpired_ArchivedAndDropped() throws IOException {
+        // Act
+        int archived = archiver.archiveExpired();
+
+        // Assert
+        assertEquals(1, archived);
+        assertEquals("{\"id\":1,\"status\":\"D\"}\n{\"id\":2,\"status\":\"F\"}\n",
+                gunzip(archiveDir.resolve("message_deliveries/p_initial.jsonl.gz")));
+        assertEquals("{\"id\":1,\"status\":\"D\"}\n{\"id\":2,\"status\":\"F\"}\n",
+                gunzip(archiveDir.resolve("message_metadata/p_initial.jsonl.gz")));
+        assertFalse(Files.exists(archiveDir.resolve("message_deliveries/p_initial.jsonl.gz.tmp")));
+        verify(jdbcTemplate).execute("ALTER TABLE message_deliveries DROP PARTITION p_initial");
+        verify(jdbcTemplate).execute("ALTER TABLE message_metadata DROP PARTITION p_initial");
+        verify(jdbcTemplate, never()).execute(contains("p202611"));
+    }
+
+    @Test
+    @DisplayName("archiveExpired - Partition holding pending deliveries kept; expired partitions after it archived")
+    void assertArchiveExpired_PendingKept() {
+        // Arrange
+        when(jdbcTemplate.query(startsWith("SELECT partition_name"), anyPartitionMapper(), anyString()))
+                .thenReturn(List.of(
+                        DeliveryPartition.of("p202609", "'2026-10-01 00:00:00'"),
+                        DeliveryPartition.of("p202610", "'2026-11-01 00:00:00'"),
+                        DeliveryPartition.of("p202611", "'2026-12-01 00:00:00'"),
+                        DeliveryPartition.of("p_future", "MAXVALUE")));
+        when(jdbcTemplate.queryForObject(contains("PARTITION (p202609)"), eq(Long.class))).thenReturn(3L);
+
+        // Act
+        int archived = archiver.archiveExpired();
+
+        // Assert
+        assertEquals(1, archived);
+        verify(jdbcTemplate, never()).execute(contains("p202609"));
+        verify(jdbcTemplate).execute("ALTER TABLE message_deliveries DROP PARTITION p202610");
+    }
+
+    @Test
+    @DisplayName("archiveExpired - Partition which fails to archive kept; expired partitions after it archived")
+    void assertArchiveExpired_FailureIsolated() {
+        // Arrange
+        when(jdbcTemplate.query(startsWith("SELECT partition_name"), anyPartitionMapper(), anyString()))
+                .thenReturn(List.of(
+                        DeliveryPartition.of("p202609", "'2026-10-01 00:00:00'"),
+                        DeliveryPartition.of("p202610", "'2026-11-01 00:00:00'"),
+                        DeliveryPartition.of("p_future", "MAXVALUE")));
+        doThrow(new IllegalStateException("Lock wait timeout exceeded"))
+                .when(jdbcTemplate).execute("ALTER TABLE message_deliveries DROP PARTITION p202609");
+
+        // Act
+        int archived = archiver.archiveExpired();
+
+        // Assert
+        assertEquals(1, archived);
+        verify(jdbcTemplate).execute("ALTER TABLE message_deliveries DROP PARTITION p202610");
+    }
+
+    @Test
+    @DisplayName("archiveExpired - Nothing archived until delivery counters are backfilled")
+    void assertArchiveExpired_WaitsForBackfill() {
+        // Arrange
+        when(deliveryService.isCountersBackfilled()).thenReturn(false);
+
+        // Act
+        int archived = archiver.archiveExpired();
+
+        // Assert
+        assertEquals(0, archived);
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    @DisplayName("archiveExpired - Retention extended to the longest resendInterval")
+    void assertArchiveExpired_RetentionCoversResendInterval() {
+        // Arrange: 500 days
+        when(routingIndex.getLongestResendInterval()).thenReturn(500 * 24 * 60);
+
+        // Act
+        int archived = archiver.archiveExpired();
+
+        // Assert
+        assertEquals(0, archived);
+        assertEquals(Duration.ofDays(500), archiver.getRetention());
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    @DisplayName("createPartitionsAhead - A partition per month through those ahead split out of the unbounded one")
+    void assertCreatePartitionsAhead_MonthlyPartitions() {
+        // Arrange
+        when(jdbcTemplate.query(startsWith("SELECT partition_name"), anyPartitionMapper(), anyString()))
+                .thenReturn(List.of(
+                        DeliveryPartition.of("p_initial", "'2026-11-01 00:00:00'"),
+                        DeliveryPartition.of("p_future", "MAXVALUE")));
+        archiver = new DeliveryArchiver(jdbcTemplate, new ObjectMapper(), routingIndex, deliveryService,
+                Clock.fixed(Instant.parse("2026-12-15T00:00:00Z"), ZoneOffset.UTC), true, Duration.ofDays(400),
+                archiveDir, 3);
+
+        // Act
+        archiver.createPartitionsAhead();
+
+        // Assert
+        ArgumentCaptor<String> statements = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(2)).execute(statements.capture());
+        assertEquals("ALTER TABLE message_deliveries REORGANIZE PARTITION p_future INTO (" +
+                "PARTITION p202611 VALUES LESS THAN ('2026-12-01 00:00:00'), " +
+                "PARTITION p202612 VALUES LESS THAN ('2027-01-01 00:00:00'), " +
+                "PARTITION p202701 VALUES LESS THAN ('2027-02-01 00:00:00'), " +
+                "PARTITION p202702 VALUES LESS THAN ('2027-03-01 00:00:00'), " +
+                "PARTITION p202703 VALUES LESS THAN ('2027-04-01 00:00:00'), " +
+                "PARTITION p_future VALUES LESS THAN (MAXVALUE))", statements.getAllValues().get(0));
+    }
+
+    private static RowMapper<DeliveryPartition> anyPartitionMapper() {
+        return any();
+    }
+
+    private ResultSet row(long id, String status) throws Exception {
+        ResultSetMetaData columns = mock(ResultSetMetaData.class);
+        when(columns.getColumnCount()).thenReturn(2);
+        when(columns.getColumnLabel(1)).thenReturn("ID");
+        when(columns.getColumnLabel(2)).thenReturn("STATUS");
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getMetaData()).thenReturn(columns);
+        when(rs.getObject(1)).thenReturn(id);
+        when(rs.getObject(2)).thenReturn(status);
+        return rs;
+    }
+
+    private String gunzip(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.domain.SolCommunication;
+import com.solmod.notifications.dispatcher.repository.MessageDeliveryRepo;
+import com.solmod.notifications.dispatcher.repository.SolCommOutboxRepo;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.repository.domain.SolCommOutboxEntry;
+import com.solmod.notifications.dispatcher.service.domain.OutboundDelivery;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@ActiveProfiles(value = "local")
+@Transactional
+class DeliveryRetryServiceTest {
+
+    @MockBean
+    NotificationRoutingIndex routingIndex;
+
+    @Autowired
+    DeliveryRetryService retryService;
+    @Autowired
+    MessageDeliveryService deliveryService;
+    @Autowired
+    MessageDeliveryRepo deliveryRepo;
+    @Autowired
+    SolCommOutboxRepo outboxRepo;
+
+    @BeforeEach
+    void setup() {
+        MessageTemplate template = new MessageTemplate();
+        template.setMessageTemplateID(170L);
+        template.setMaxRetries(2);
+        template.setMinWaitForRetry(60);
+        when(routingIndex.isLoaded()).thenReturn(true);
+        when(routingIndex.getTemplate(170L)).thenReturn(template);
+    }
+
+    @Test
+    @DisplayName("scheduleRetry - Delivery failed straight away when its template allows no retries")
+    void assertScheduleRetry_NoRetriesFailed() {
+        // Arrange
+        MessageTemplate noRetries = new MessageTemplate();
+        noRetries.setMessageTemplateID(172L);
+        noRetries.setMaxRetries(0);
+        when(routingIndex.getTemplate(172L)).thenReturn(noRetries);
+        MessageDelivery saved = deliveryService.recordDelivery(buildDelivery(172L, MessageDelivery.Status.PD, 0, null));
+
+        // Act
+        MessageDelivery failed = retryService.scheduleRetry(saved.getId(), "Connection refused");
+
+        // Assert
+        assertEquals(MessageDelivery.Status.F, failed.getStatus());
+        assertEquals("Failed after 0 retries: Connection refused", failed.getStatusMessage());
+    }
+
+    @Test
+    @DisplayName("scheduleRetry - Delivery of a template setting no maxRetries retried up to the default")
+    void assertScheduleRetry_DefaultMaxRetries() {
+        // Arrange
+        MessageTemplate unset = new MessageTemplate();
+        unset.setMessageTemplateID(173L);
+        when(routingIndex.getTemplate(173L)).thenReturn(unset);
+        MessageDelivery retried = deliveryService.recordDelivery(buildDelivery(173L, MessageDelivery.Status.PD, 2, null));
+        MessageDelivery exhausted = deliveryService.recordDelivery(buildDelivery(173L, MessageDelivery.Status.PD, 3, null));
+
+        // Act & Assert
+        assertEquals(MessageDelivery.Status.PR, retryService.scheduleRetry(retried.getId(), "Timed out").getStatus());
+        assertEquals(MessageDelivery.Status.F, retryService.scheduleRetry(exhausted.getId(), "Timed out").getStatus());
+    }
+
+    @Test
+    @DisplayName("scheduleRetry - Delivery pending retry, due after the template's minimum wait")
+    void assertScheduleRetry_DueAfterMinWait() {
+        // Arrange
+        MessageDelivery saved = deliveryService.recordDelivery(buildDelivery(170L, MessageDelivery.Status.PD, 0, null));
+        Date before = new Date();
+
+        // Act
+        MessageDelivery retrying = retryService.scheduleRetry(saved.getId(), "Connection refused");
+
+        // Assert
+        assertEquals(MessageDelivery.Status.PR, retrying.getStatus());
+        long wait = retrying.getNextAttemptAt().getTime() - before.getTime();
+        assertTrue(wait >= 59_000 && wait <= 61_000, "Waiting " + wait);
+    }
+
+    @Test
+    @DisplayName("claimBatch - Due deliveries sent again and retried with backoff, or failed once out of retries")
+    void assertClaimBatch_RetriedOrFailed() {
+        // Arrange
+        Date due = DateUtils.addMinutes(new Date(), -1);
+        Long retried = deliveryService.recordOutboundDeliveries(List.of(new OutboundDelivery(
+                buildDelivery(170L, MessageDelivery.Status.PR, 1, due), new SolCommunication()))).get(0).getId();
+        SolCommOutboxEntry sent = StreamSupport.stream(outboxRepo.findAll().spliterator(), false)
+                .filter(entry -> entry.getMessageDeliveryId().equals(retried))
+                .findFirst().orElseThrow();
+        outboxRepo.markPublished(List.of(sent.getId()), new Date());
+        Long unsendable = deliveryService.recordDelivery(buildDelivery(170L, MessageDelivery.Status.PR, 0, due)).getId();
+        Long exhausted = deliveryService.recordDelivery(buildDelivery(170L, MessageDelivery.Status.PR, 2, due)).getId();
+        Long orphaned = deliveryService.recordDelivery(buildDelivery(171L, MessageDelivery.Status.PR, 0, due)).getId();
+        Long notDue = deliveryService.recordDelivery(buildDelivery(170L, MessageDelivery.Status.PR, 0,
+                DateUtils.addMinutes(new Date(), 5))).getId();
+
+        // Act
+        int claimed = retryService.claimBatch();
+
+        // Assert
+        assertEquals(4, claimed);
+        SolCommOutboxEntry requeued = outboxRepo.findById(sent.getId()).orElseThrow();
+        assertNull(requeued.getDatePublished());
+        assertNotNull(requeued.getAvailableAt());
+
+        MessageDelivery retriedDelivery = deliveryRepo.findById(retried).orElseThrow();
+        assertEquals(MessageDelivery.Status.PR, retriedDelivery.getStatus());
+        assertEquals(2, retriedDelivery.getRetryCount());
+        // Two retries made: the minimum wait, doubled twice
+        long wait = retriedDelivery.getNextAttemptAt().getTime() - System.currentTimeMillis();
+        assertTrue(wait > 230_000 && wait <= 240_000, "Waiting " + wait);
+
+        assertEquals(MessageDelivery.Status.F, deliveryRepo.findById(exhausted).orElseThrow().getStatus());
+        assertEquals(MessageDelivery.Status.F, deliveryRepo.findById(orphaned).orElseThrow().getStatus());
+        MessageDelivery unsent = deliveryRepo.findById(unsendable).orElseThrow();
+        assertEquals(MessageDelivery.Status.F, unsent.getStatus());
+        assertTrue(unsent.getStatusMessage().startsWith("No communication to send again"), unsent.getStatusMessage());
+        assertEquals(MessageDelivery.Status.PR, deliveryRepo.findById(notDue).orElseThrow().getStatus());
+    }
+
+    private MessageDelivery buildDelivery(Long templateId, MessageDelivery.Status status, int retryCount,
+                                          Date nextAttemptAt) {
+        MessageDelivery delivery = new MessageDelivery();
+        delivery.setMessageTemplateId(templateId);
+        delivery.setStatus(status);
+        delivery.setRecipientAddress("retried@somewhere.com");
+        delivery.setIdMetadataKey("order.id");
+        delivery.setIdMetadataValue("5");
+        delivery.setRetryCount(retryCount);
+        delivery.setNextAttemptAt(nextAttemptAt);
+        return delivery;
+    }
+}
@@ -0,0 +1,110 @@
+package com.solmod.notifications.dispatcher.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DispatchExecutorTest {
+
+    DispatchExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    @DisplayName("invokeTemplates - Results returned in task order")
+    void invokeTemplates_ResultsInOrder() throws ExecutionException {
+        executor = new DispatchExecutor(true, 2);
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            tasks.add(() -> {
+                Thread.sleep(10 - value);
+                return value;
+            });
+        }
+
+        List<Integer> result = executor.invokeTemplates(tasks);
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), result);
+    }
+
+    @Test
+    @DisplayName("invokeTemplates - No more templates in flight than the concurrency limit")
+    void invokeTemplates_ConcurrencyLimited() throws ExecutionException {
+        executor = new DispatchExecutor(true, 3);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                inFlight.decrementAndGet();
+                return 1;
+            });
+        }
+
+        executor.invokeTemplates(tasks);
+
+        assertTrue(maxInFlight.get() <= 3, "Exceeded concurrency limit: " + maxInFlight.get());
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    @DisplayName("invokeMessages, invokeFilters - Pooled to the concurrency limit")
+    void invokeMessagesAndFilters_Pooled() throws ExecutionException {
+        executor = new DispatchExecutor(true, 3);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                inFlight.decrementAndGet();
+                return 1;
+            });
+        }
+
+        executor.invokeMessages(tasks);
+        executor.invokeFilters(tasks);
+
+        assertTrue(maxInFlight.get() <= 3, "Exceeded pool size: " + maxInFlight.get());
+    }
+
+    @Test
+    @DisplayName("invokeMessages - First failure raised after every task has run")
+    void invokeMessages_FailureRaisedAfterAllRun() {
+        executor = new DispatchExecutor(false, 1);
+        AtomicInteger ran = new AtomicInteger();
+
+        List<Callable<Integer>> tasks = List.of(
+                () -> ran.incrementAndGet(),
+                () -> {
+                    ran.incrementAndGet();
+                    throw new IllegalStateException("failed");
+                },
+                () -> ran.incrementAndGet());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> executor.invokeMessages(tasks));
+
+        assertEquals(3, ran.get());
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+}
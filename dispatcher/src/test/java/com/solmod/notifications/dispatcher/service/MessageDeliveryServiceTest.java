@@ -0,0 +1,308 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.DeferredDeliveriesReleasedEvent;
+import com.solmod.notifications.dispatcher.domain.SolCommunication;
+import com.solmod.notifications.dispatcher.repository.SolCommOutboxRepo;
+import com.solmod.notifications.dispatcher.repository.domain.DeliveryKey;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.repository.domain.MessageMetadata;
+import com.solmod.notifications.dispatcher.repository.domain.SolCommOutboxEntry;
+import com.solmod.notifications.dispatcher.service.domain.DeliverySummary;
+import com.solmod.notifications.dispatcher.service.domain.OutboundDelivery;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.transaction.AfterTransaction;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles(value = "local")
+@Transactional
+class MessageDeliveryServiceTest {
+
+    @Autowired
+    MessageDeliveryService service;
+    @Autowired
+    SolCommOutboxRepo outboxRepo;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("recordDelivery - Counter created on first delivery and incremented on the next")
+    void assertRecordDelivery_Counted() {
+        // Arrange
+        Date earlier = DateUtils.addMinutes(new Date(), -10);
+        Date later = new Date();
+
+        // Act
+        service.recordDelivery(buildDelivery(158L, "counted@somewhere.com", MessageDelivery.Status.D, later));
+        service.recordDelivery(buildDelivery(158L, "counted@somewhere.com", MessageDelivery.Status.PD, earlier));
+
+        // Assert
+        DeliverySummary summary = service.getDeliverySummaries(
+                List.of(158L), "counted@somewhere.com", "order.id", "5").get(158L);
+        assertEquals(2, summary.deliveryCount());
+        assertEquals(later.getTime(), summary.lastDeliveryDate().getTime());
+    }
+
+    @Test
+    @DisplayName("recordDelivery - Deliveries without id metadata counted by one counter")
+    void assertRecordDelivery_NoIdMetadataCounted() {
+        // Arrange
+        MessageDelivery first = buildDelivery(157L, "unkeyed@somewhere.com", MessageDelivery.Status.D, new Date());
+        MessageDelivery second = buildDelivery(157L, "unkeyed@somewhere.com", MessageDelivery.Status.D, new Date());
+        for (MessageDelivery delivery : List.of(first, second)) {
+            delivery.setIdMetadataKey(null);
+            delivery.setIdMetadataValue(null);
+        }
+
+        // Act
+        service.recordDelivery(first);
+        service.recordDelivery(second);
+
+        // Assert
+        DeliverySummary summary = service.getDeliverySummaries(
+                List.of(157L), "unkeyed@somewhere.com", null, null).get(157L);
+        assertEquals(2, summary.deliveryCount());
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM message_delivery_counters WHERE message_template_id = 157", Integer.class));
+    }
+
+    @Test
+    @DisplayName("recordDelivery - Failed deliveries not counted")
+    void assertRecordDelivery_FailedNotCounted() {
+        // Act
+        service.recordDelivery(buildDelivery(159L, "failed@somewhere.com", MessageDelivery.Status.F, new Date()));
+
+        // Assert
+        DeliverySummary summary = service.getDeliverySummaries(
+                List.of(159L), "failed@somewhere.com", "order.id", "5").get(159L);
+        assertEquals(0, summary.deliveryCount());
+        assertNull(summary.lastDeliveryDate());
+    }
+
+    @Test
+    @DisplayName("updateStatus - Delivery taken off the count on failure")
+    void assertUpdateStatus_FailedUncounted() {
+        // Arrange
+        MessageDelivery saved = service.recordDelivery(
+                buildDelivery(160L, "uncounted@somewhere.com", MessageDelivery.Status.PD, new Date()));
+
+        // Act
+        service.updateStatus(saved.getId(), MessageDelivery.Status.F, "Bounced");
+
+        // Assert
+        DeliverySummary summary = service.getDeliverySummaries(
+                List.of(160L), "uncounted@somewhere.com", "order.id", "5").get(160L);
+        assertEquals(0, summary.deliveryCount());
+    }
+
+    @Test
+    @DisplayName("getDeliverySummaries - NONE for templates never delivered")
+    void assertGetDeliverySummaries_NeverDelivered() {
+        // Arrange
+        service.recordDelivery(buildDelivery(161L, "summary@somewhere.com", MessageDelivery.Status.D, new Date()));
+
+        // Act
+        Map<Long, DeliverySummary> summaries = service.getDeliverySummaries(
+                List.of(161L, 162L), "summary@somewhere.com", "order.id", "5");
+
+        // Assert
+        assertEquals(1, summaries.get(161L).deliveryCount());
+        assertEquals(DeliverySummary.NONE, summaries.get(162L));
+    }
+
+    @Test
+    @DisplayName("getDeliverySummaries - Read from the deliveries while counters are yet to be backfilled")
+    void assertGetDeliverySummaries_NotBackfilled() {
+        // Arrange: a delivery made before counters were kept
+        jdbcTemplate.update("INSERT INTO message_deliveries (id, message_template_id, recipient_address, " +
+                        "id_metadata_key, id_metadata_value, delivery_key, status, date_created, retry_count) " +
+                        "VALUES (-169, 169, 'backfill@somewhere.com', 'order.id', '5', ?, 'D', ?, 0)",
+                DeliveryKey.of(169L, "backfill@somewhere.com", "order.id", "5"), new Date());
+
+        // Act
+        service.checkCountersBackfilled();
+        Map<Long, DeliverySummary> summaries = service.getDeliverySummaries(
+                List.of(169L, 170L), "backfill@somewhere.com", "order.id", "5");
+
+        // Assert
+        assertFalse(service.isCountersBackfilled());
+        assertEquals(1, summaries.get(169L).deliveryCount());
+        assertEquals(DeliverySummary.NONE, summaries.get(170L));
+    }
+
+    @AfterTransaction
+    void recheckCountersBackfilled() {
+        service.checkCountersBackfilled();
+    }
+
+    @Test
+    @DisplayName("recordDelivery - Key of a counted delivery added to the loaded delivery key filter")
+    void assertRecordDelivery_KeyFiltered() {
+        // Act
+        service.recordDelivery(buildDelivery(163L, "filtered@somewhere.com", MessageDelivery.Status.D, new Date()));
+
+        // Assert
+        assertTrue(service.isDeliveryKeyFilterLoaded());
+        assertTrue(service.getDeliveryKeyFilter().mightContain(
+                DeliveryKey.of(163L, "filtered@somewhere.com", "order.id", "5")));
+        assertEquals(1, service.getDeliverySummaries(
+                List.of(163L), "filtered@somewhere.com", "order.id", "5").get(163L).deliveryCount());
+    }
+
+    @Test
+    @DisplayName("refreshDeliveryKeyFilter - Key counted by another dispatcher merged into the filter")
+    void assertRefreshDeliveryKeyFilter_MergesOtherDispatchers() {
+        // Arrange
+        String key = DeliveryKey.of(171L, "elsewhere@somewhere.com", "order.id", "5");
+        jdbcTemplate.update("INSERT INTO message_delivery_counters (id, message_template_id, recipient_address, " +
+                "id_metadata_key, id_metadata_value, delivery_count, last_delivery_date, date_modified) " +
+                "VALUES (-171, 171, 'elsewhere@somewhere.com', 'order.id', '5', 1, ?, ?)", new Date(), new Date());
+
+        // Act
+        service.refreshDeliveryKeyFilter();
+
+        // Assert
+        assertTrue(service.getDeliveryKeyFilter().mightContain(key));
+        assertEquals(1, service.getDeliverySummaries(
+                List.of(171L), "elsewhere@somewhere.com", "order.id", "5").get(171L).deliveryCount());
+    }
+
+    @Test
+    @DisplayName("recordOutboundDeliveries - Deliveries counted, each with its communication in the outbox")
+    void assertRecordOutboundDeliveries_Outboxed() {
+        // Arrange
+        SolCommunication first = new SolCommunication();
+        first.setRecipient("outbound@somewhere.com");
+        first.setContent("Your order has shipped");
+        SolCommunication second = new SolCommunication();
+        second.setRecipient("outbound@somewhere.com");
+        second.setCommunicationId(99L);
+
+        // Act
+        List<MessageDelivery> saved = service.recordOutboundDeliveries(List.of(
+                new OutboundDelivery(buildDelivery(164L, "outbound@somewhere.com", MessageDelivery.Status.PD, null), first),
+                new OutboundDelivery(buildDelivery(165L, "outbound@somewhere.com", MessageDelivery.Status.PD, null), second)));
+
+        // Assert
+        assertEquals(2, saved.size());
+        assertEquals(1, service.getDeliverySummaries(
+                List.of(164L), "outbound@somewhere.com", "order.id", "5").get(164L).deliveryCount());
+
+        List<SolCommOutboxEntry> entries = new ArrayList<>();
+        outboxRepo.findAll().forEach(entries::add);
+        entries.sort(Comparator.comparing(SolCommOutboxEntry::getId));
+        assertEquals(List.of(saved.get(0).getId(), saved.get(1).getId()),
+                entries.stream().map(SolCommOutboxEntry::getMessageDeliveryId).toList());
+        assertTrue(entries.get(0).getPayload().contains("\"communicationId\":" + saved.get(0).getId()));
+        assertTrue(entries.get(0).getPayload().contains("Your order has shipped"));
+        assertTrue(entries.get(1).getPayload().contains("\"communicationId\":99"));
+        assertNull(entries.get(0).getDatePublished());
+    }
+
+    @Test
+    @DisplayName("releaseDeferredDeliveries - Deliveries still pending moved on, their communications made available, once")
+    void assertReleaseDeferredDeliveries_ClaimedOnce() {
+        // Arrange
+        List<MessageDelivery> saved = service.recordOutboundDeliveries(List.of(
+                new OutboundDelivery(buildDelivery(166L, "released@somewhere.com", MessageDelivery.Status.PT, null),
+                        new SolCommunication()),
+                new OutboundDelivery(buildDelivery(167L, "released@somewhere.com", MessageDelivery.Status.PT, null),
+                        new SolCommunication())));
+        Long released = saved.get(0).getId();
+        Long failed = saved.get(1).getId();
+        service.updateStatus(failed, MessageDelivery.Status.F, "Cancelled");
+        DeferredDeliveriesReleasedEvent event = new DeferredDeliveriesReleasedEvent(List.of(released, failed));
+
+        // Act
+        service.releaseDeferredDeliveries(event);
+        Date availableAt = outboxAvailableAt(released);
+        service.releaseDeferredDeliveries(event);
+
+        // Assert
+        assertEquals("PD", jdbcTemplate.queryForObject(
+                "SELECT status FROM message_deliveries WHERE id = ?", String.class, released));
+        assertNotNull(availableAt);
+        assertEquals(availableAt, outboxAvailableAt(released));
+        assertNull(outboxAvailableAt(failed));
+    }
+
+    @Test
+    @DisplayName("recordDeliveries - Burst counted once per key, up to the latest delivery date; failures not counted")
+    void assertRecordDeliveries_CountedPerKey() {
+        // Arrange
+        Date earlier = DateUtils.addMinutes(new Date(), -10);
+        Date later = new Date();
+
+        // Act
+        List<MessageDelivery> saved = service.recordDeliveries(List.of(
+                buildDelivery(166L, "burst@somewhere.com", MessageDelivery.Status.D, later),
+                buildDelivery(166L, "burst@somewhere.com", MessageDelivery.Status.PD, earlier),
+                buildDelivery(166L, "burst@somewhere.com", MessageDelivery.Status.F, earlier),
+                buildDelivery(167L, "burst@somewhere.com", MessageDelivery.Status.PD, earlier)));
+
+        // Assert
+        assertTrue(saved.stream().allMatch(delivery -> delivery.getId() != null));
+        Map<Long, DeliverySummary> summaries = service.getDeliverySummaries(
+                List.of(166L, 167L), "burst@somewhere.com", "order.id", "5");
+        assertEquals(2, summaries.get(166L).deliveryCount());
+        assertEquals(later.getTime(), summaries.get(166L).lastDeliveryDate().getTime());
+        assertEquals(1, summaries.get(167L).deliveryCount());
+    }
+
+    @Test
+    @DisplayName("recordDelivery - Metadata written to the delivery's own column, with no metadata rows")
+    void assertRecordDelivery_MetadataCompacted() {
+        // Arrange
+        MessageDelivery delivery = buildDelivery(168L, "compact@somewhere.com", MessageDelivery.Status.PD, new Date());
+        delivery.setMessageMetadata(Set.of(
+                new MessageMetadata(delivery, "order.id", "5"),
+                new MessageMetadata(delivery, "customer.id", "12")));
+
+        // Act
+        MessageDelivery saved = service.recordDelivery(delivery);
+
+        // Assert
+        assertEquals(Map.of("order.id", "5", "customer.id", "12"), saved.getMetadata());
+        assertEquals(saved.getMetadata(), saved.getAllMetadata());
+        assertEquals("{\"customer.id\":\"12\",\"order.id\":\"5\"}", jdbcTemplate.queryForObject(
+                "SELECT metadata FROM message_deliveries WHERE id = ?", String.class, saved.getId()));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM message_metadata WHERE message_delivery_id = ?", Integer.class, saved.getId()));
+    }
+
+    private Date outboxAvailableAt(Long deliveryId) {
+        return jdbcTemplate.queryForObject("SELECT available_at FROM sol_comm_outbox WHERE message_delivery_id = ?",
+                Date.class, deliveryId);
+    }
+
+    private MessageDelivery buildDelivery(Long templateId, String recipientAddress, MessageDelivery.Status status,
+                                          Date dateCreated) {
+        MessageDelivery delivery = new MessageDelivery();
+        delivery.setDateCreated(dateCreated);
+        delivery.setMessageTemplateId(templateId);
+        delivery.setStatus(status);
+        delivery.setRecipientAddress(recipientAddress);
+        delivery.setIdMetadataKey("order.id");
+        delivery.setIdMetadataValue("5");
+        return delivery;
+    }
+}
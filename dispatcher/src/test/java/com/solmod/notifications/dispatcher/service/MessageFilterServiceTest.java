@@ -0,0 +1,216 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.domain.SolMessage;
+import com.solmod.notifications.dispatcher.filter.FilterException;
+import com.solmod.notifications.dispatcher.filter.FilterResponse;
+import com.solmod.notifications.dispatcher.filter.MessageDeliveryFilter;
+import com.solmod.notifications.dispatcher.service.domain.DeliveryPermission;
+import com.solmod.notifications.dispatcher.service.domain.TriggeredMessageTemplateGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.solmod.notifications.dispatcher.service.domain.DeliveryPermission.Verdict.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageFilterServiceTest {
+
+    DispatchExecutor dispatchExecutor;
+
+    @AfterEach
+    void tearDown() {
+        dispatchExecutor.close();
+    }
+
+    @ParameterizedTest(name = "concurrent={0}, parallel filters={1}")
+    @CsvSource({"false, false", "false, true", "true, false", "true, true"})
+    @DisplayName("runThroughFilters - SEND_NEVER prevails over SEND_LATER over SEND_NOW")
+    void runThroughFilters_MostRestrictivePrevails(boolean concurrent, boolean parallelFilters) throws FilterException {
+        // Arrange
+        MessageDeliveryFilter sendLaterForAll = (group, message) -> verdictForAll("later", group, SEND_LATER);
+        MessageDeliveryFilter sendNeverFor1 = (group, message) -> verdictFor("never", group, 1L, SEND_NEVER);
+        MessageDeliveryFilter sendNowForAll = (group, message) -> verdictForAll("now", group, SEND_NOW);
+        MessageFilterService service = buildService(concurrent, parallelFilters,
+                List.of(sendLaterForAll, sendNeverFor1, sendNowForAll));
+        TriggeredMessageTemplateGroup group = buildGroup(1L, 2L, 3L);
+
+        // Act
+        FilterResponse response = service.runThroughFilters(group, new SolMessage());
+
+        // Assert
+        assertEquals(SEND_NEVER, response.getPermissions().get(1L).getVerdict());
+        assertEquals(SEND_LATER, response.getPermissions().get(2L).getVerdict());
+        assertEquals(SEND_LATER, response.getPermissions().get(3L).getVerdict());
+    }
+
+    @ParameterizedTest(name = "concurrent={0}, parallel filters={1}")
+    @CsvSource({"false, false", "false, true", "true, false", "true, true"})
+    @DisplayName("runThroughFilters - SEND_NEVER templates removed from the group")
+    void runThroughFilters_SendNeverRemoved(boolean concurrent, boolean parallelFilters) throws FilterException {
+        // Arrange
+        MessageDeliveryFilter sendNeverFor2 = (group, message) -> verdictFor("never", group, 2L, SEND_NEVER);
+        MessageDeliveryFilter sendLaterFor3 = (group, message) -> verdictFor("later", group, 3L, SEND_LATER);
+        MessageFilterService service = buildService(concurrent, parallelFilters, List.of(sendNeverFor2, sendLaterFor3));
+        TriggeredMessageTemplateGroup group = buildGroup(1L, 2L, 3L);
+
+        // Act
+        service.runThroughFilters(group, new SolMessage());
+
+        // Assert
+        Set<Long> remaining = new HashSet<>();
+        group.getQualifiedTemplates().forEach(t -> remaining.add(t.getMessageTemplateID()));
+        assertEquals(Set.of(1L, 3L), remaining);
+    }
+
+    @ParameterizedTest(name = "concurrent={0}, parallel filters={1}")
+    @CsvSource({"false, false", "false, true", "true, false", "true, true"})
+    @DisplayName("runThroughFilters - FilterException from a filter is rethrown")
+    void runThroughFilters_FilterExceptionRethrown(boolean concurrent, boolean parallelFilters) {
+        // Arrange
+        MessageDeliveryFilter failing = (group, message) -> {
+            throw new FilterException("failed");
+        };
+        MessageFilterService service = buildService(concurrent, parallelFilters, List.of(failing));
+
+        // Act & Assert
+        FilterException e = assertThrows(FilterException.class,
+                () -> service.runThroughFilters(buildGroup(1L), new SolMessage()));
+        assertEquals("failed", e.getMessage());
+    }
+
+    @Test
+    @DisplayName("runThroughFilters - Concurrently, filters prefetch once for the whole group before it is split")
+    void runThroughFilters_PrefetchedOncePerGroup() throws FilterException {
+        // Arrange
+        List<Set<Long>> prefetched = new ArrayList<>();
+        MessageDeliveryFilter prefetching = new MessageDeliveryFilter() {
+            @Override
+            public FilterResponse apply(TriggeredMessageTemplateGroup templateGroup, SolMessage solMessage) {
+                return verdictForAll("now", templateGroup, SEND_NOW);
+            }
+
+            @Override
+            public void prefetch(TriggeredMessageTemplateGroup templateGroup, SolMessage solMessage) {
+                Set<Long> templateIds = new HashSet<>();
+                templateGroup.getQualifiedTemplates().forEach(t -> templateIds.add(t.getMessageTemplateID()));
+                prefetched.add(templateIds);
+            }
+        };
+        MessageFilterService service = buildService(true, false, List.of(prefetching));
+
+        // Act
+        service.runThroughFilters(buildGroup(1L, 2L, 3L), new SolMessage());
+
+        // Assert
+        assertEquals(List.of(Set.of(1L, 2L, 3L)), prefetched);
+    }
+
+    @Test
+    @DisplayName("runThroughFilters - Filters run cheapest first, and templates rejected earlier are not evaluated later")
+    void runThroughFilters_CheapestFirstShortCircuits() throws FilterException {
+        // Arrange
+        List<Set<Long>> evaluated = new ArrayList<>();
+        MessageDeliveryFilter expensive = new RecordingFilter(MessageDeliveryFilter.QUERY_COST, evaluated, 99L);
+        MessageDeliveryFilter cheap = new RecordingFilter(MessageDeliveryFilter.IN_MEMORY_COST, evaluated, 1L);
+        MessageFilterService service = buildService(false, false, List.of(expensive, cheap));
+        TriggeredMessageTemplateGroup group = buildGroup(1L, 2L);
+
+        // Act
+        service.runThroughFilters(group, new SolMessage());
+
+        // Assert
+        assertEquals(List.of(cheap, expensive), service.getFilterChain());
+        assertEquals(List.of(Set.of(1L, 2L), Set.of(2L)), evaluated);
+    }
+
+    @Test
+    @DisplayName("runThroughFilters - Adaptive ordering runs the cheapest filter per rejection first once sampled")
+    void runThroughFilters_AdaptiveOrdering() throws FilterException {
+        // Arrange: the "cheap" filter never rejects, so it is better run after the one which does
+        List<Set<Long>> evaluated = new ArrayList<>();
+        MessageDeliveryFilter neverRejects = new RecordingFilter(MessageDeliveryFilter.IN_MEMORY_COST, evaluated, 99L);
+        MessageDeliveryFilter rejects = new RecordingFilter(MessageDeliveryFilter.QUERY_COST, evaluated, 1L);
+        dispatchExecutor = new DispatchExecutor(false, 1);
+        MessageFilterService service = new MessageFilterService(List.of(neverRejects, rejects), dispatchExecutor,
+                false, true, 4);
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            service.runThroughFilters(buildGroup(1L, 2L), new SolMessage());
+        }
+
+        // Assert
+        assertEquals(List.of(rejects, neverRejects), service.getFilterChain());
+        assertEquals(0.5, service.getStatistics(rejects).getRejectionRate());
+    }
+
+    private MessageFilterService buildService(boolean concurrent, boolean parallelFilters,
+                                              List<MessageDeliveryFilter> filters) {
+        dispatchExecutor = new DispatchExecutor(concurrent, 2);
+        return new MessageFilterService(filters, dispatchExecutor, parallelFilters, false, 0);
+    }
+
+    private FilterResponse verdictForAll(String filterName, TriggeredMessageTemplateGroup group,
+                                         DeliveryPermission.Verdict verdict) {
+        FilterResponse response = new FilterResponse(filterName);
+        group.getQualifiedTemplates().forEach(t ->
+                response.addDeliveryPermission(t.getMessageTemplateID(), new DeliveryPermission(verdict, filterName)));
+        return response;
+    }
+
+    private FilterResponse verdictFor(String filterName, TriggeredMessageTemplateGroup group, Long templateId,
+                                      DeliveryPermission.Verdict verdict) {
+        FilterResponse response = new FilterResponse(filterName);
+        group.getQualifiedTemplates().stream()
+                .filter(t -> t.getMessageTemplateID().equals(templateId))
+                .forEach(t -> response.addDeliveryPermission(templateId, new DeliveryPermission(verdict, filterName)));
+        return response;
+    }
+
+    private TriggeredMessageTemplateGroup buildGroup(Long... templateIds) {
+        Set<MessageTemplate> templates = new HashSet<>();
+        for (Long templateId : templateIds) {
+            MessageTemplate template = new MessageTemplate();
+            template.setMessageTemplateID(templateId);
+            templates.add(template);
+        }
+        TriggeredMessageTemplateGroup group = new TriggeredMessageTemplateGroup();
+        group.setQualifiedTemplates(templates);
+        return group;
+    }
+
+    /**
+     * Rejects a single template, recording the templates it was asked to evaluate
+     */
+    private record RecordingFilter(int costHint, List<Set<Long>> evaluated, Long rejectId)
+            implements MessageDeliveryFilter {
+
+        @Override
+        public FilterResponse apply(TriggeredMessageTemplateGroup templateGroup, SolMessage solMessage) {
+            Set<Long> templateIds = new HashSet<>();
+            FilterResponse response = new FilterResponse("recording");
+            for (MessageTemplate template : templateGroup.getQualifiedTemplates()) {
+                templateIds.add(template.getMessageTemplateID());
+                response.addDeliveryPermission(template.getMessageTemplateID(),
+                        template.getMessageTemplateID().equals(rejectId)
+                                ? new DeliveryPermission(SEND_NEVER, "rejected")
+                                : DeliveryPermission.SEND_NOW_PERMISSION);
+            }
+            evaluated.add(templateIds);
+            return response;
+        }
+
+        @Override
+        public int getCostHint() {
+            return costHint;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.admin.domain.NotificationGroupsChangedEvent;
+import com.solmod.notifications.admin.service.NotificationAccessService;
+import com.solmod.notifications.admin.web.model.MessageTemplateDTO;
+import com.solmod.notifications.admin.web.model.MessageTemplateGroupDTO;
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.service.domain.RoutingKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.openMocks;
+
+class NotificationRoutingIndexTest {
+
+    @Mock
+    NotificationAccessService accessService;
+
+    NotificationRoutingIndex index;
+
+    @BeforeEach
+    void setup() {
+        openMocks(this);
+        index = new NotificationRoutingIndex(accessService);
+    }
+
+    @Test
+    @DisplayName("getTemplates - Loaded groups are returned as dispatch templates")
+    void getTemplates_LoadedGroup() {
+        when(accessService.getAllNotificationTemplateGroups()).thenReturn(List.of(buildGroup("order", "created", 15L)));
+        index.refresh();
+
+        Set<MessageTemplate> result = index.getTemplates(new RoutingKey(1L, "order", "created"));
+
+        assertEquals(1, result.size());
+        assertEquals(15L, result.iterator().next().getMessageTemplateID());
+    }
+
+    @Test
+    @DisplayName("getTemplates - Keys without a NotificationGroup answered without going to the database")
+    void getTemplates_UnroutedKey_NoLookup() {
+        when(accessService.getAllNotificationTemplateGroups()).thenReturn(List.of(buildGroup("order", "created", 15L)));
+        index.refresh();
+
+        Set<MessageTemplate> result = index.getTemplates(new RoutingKey(1L, "order", "deleted"));
+        index.getTemplates(new RoutingKey(1L, "order", "deleted"));
+
+        assertTrue(result.isEmpty());
+        assertEquals(2, index.getUnroutedLookups());
+        verify(accessService, never()).getNotificationTemplateGroup(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("onNotificationGroupsChanged - Index is replaced with the reloaded groups")
+    void onNotificationGroupsChanged_Reloads() {
+        when(accessService.getAllNotificationTemplateGroups())
+                .thenReturn(List.of(buildGroup("order", "created", 15L)))
+                .thenReturn(List.of(buildGroup("order", "created", 16L), buildGroup("order", "deleted", 17L)));
+        index.refresh();
+
+        index.onNotificationGroupsChanged(new NotificationGroupsChangedEvent(1L, "order", "deleted"));
+
+        assertEquals(16L, index.getTemplates(new RoutingKey(1L, "order", "created")).iterator().next().getMessageTemplateID());
+        assertEquals(17L, index.getTemplates(new RoutingKey(1L, "order", "deleted")).iterator().next().getMessageTemplateID());
+    }
+
+    @Test
+    @DisplayName("getTemplates - When the full load fails, individual lookups (including misses) are remembered")
+    void getTemplates_LoadFailed_FallbackRemembered() {
+        when(accessService.getAllNotificationTemplateGroups()).thenThrow(new IllegalStateException("db down"));
+        when(accessService.getNotificationTemplateGroup(1L, "order", "deleted")).thenReturn(null);
+        index.refresh();
+
+        index.getTemplates(new RoutingKey(1L, "order", "deleted"));
+        Set<MessageTemplate> result = index.getTemplates(new RoutingKey(1L, "order", "deleted"));
+
+        assertTrue(result.isEmpty());
+        verify(accessService, times(1)).getNotificationTemplateGroup(1L, "order", "deleted");
+    }
+
+    private MessageTemplateGroupDTO buildGroup(String subject, String verb, Long templateId) {
+        MessageTemplateDTO template = new MessageTemplateDTO();
+        template.setMessageTemplateID(templateId);
+        MessageTemplateGroupDTO group = new MessageTemplateGroupDTO();
+        group.setTenantId(1L);
+        group.setSubject(subject);
+        group.setVerb(verb);
+        group.setMessageTemplates(Set.of(template));
+        return group;
+    }
+}
@@ -0,0 +1,154 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.SolCommunication;
+import com.solmod.notifications.dispatcher.repository.SolCommOutboxRepo;
+import com.solmod.notifications.dispatcher.repository.domain.MessageDelivery;
+import com.solmod.notifications.dispatcher.repository.domain.SolCommOutboxEntry;
+import com.solmod.notifications.dispatcher.service.domain.OutboundDelivery;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = "solmod.notification-engine.outbox.batch-size=2")
+@ActiveProfiles(value = "local")
+@Transactional
+class SolCommOutboxRelayTest {
+
+    @MockBean
+    SolCommPublisher publisher;
+
+    @Autowired
+    SolCommOutboxRelay relay;
+    @Autowired
+    MessageDeliveryService deliveryService;
+    @Autowired
+    SolCommOutboxRepo outboxRepo;
+
+    @Test
+    @DisplayName("relayBatch - Oldest entries sent as one batch and marked published once acknowledged")
+    void assertRelayBatch_Published() {
+        // Arrange
+        List<MessageDelivery> saved = recordDeliveries(3);
+        when(publisher.publish(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act
+        int published = relay.relayBatch();
+
+        // Assert
+        assertEquals(2, published);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SolCommunication>> sent = ArgumentCaptor.forClass(List.class);
+        verify(publisher).publish(sent.capture());
+        assertEquals(List.of(saved.get(0).getId(), saved.get(1).getId()),
+                sent.getValue().stream().map(SolCommunication::getCommunicationId).toList());
+        assertEquals(1, relay.getUnpublishedCount());
+    }
+
+    @Test
+    @DisplayName("relayBatch - Entries left unpublished when the batch is rejected, and not claimed again until backed off")
+    void assertRelayBatch_RejectedBackedOff() {
+        // Arrange
+        recordDeliveries(2);
+        when(publisher.publish(anyList())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Down")));
+        Date rejectedAt = new Date();
+
+        // Act
+        int claimed = relay.relayBatch();
+
+        // Assert
+        assertEquals(2, claimed);
+        assertEquals(2, relay.getUnpublishedCount());
+        assertEquals(0, relay.relayBatch());
+        verify(publisher, times(1)).publish(anyList());
+        for (SolCommOutboxEntry entry : outboxRepo.findAll()) {
+            assertEquals(1, entry.getAttempts());
+            assertFalse(entry.getClaimedUntil().before(new Date(rejectedAt.getTime() + 1_000)));
+        }
+    }
+
+    @Test
+    @DisplayName("getRetryBackoff - Doubled for each attempt after the first, up to the maximum")
+    void assertGetRetryBackoff_Doubled() {
+        assertEquals(Duration.ofSeconds(1), relay.getRetryBackoff(1));
+        assertEquals(Duration.ofSeconds(4), relay.getRetryBackoff(3));
+        assertEquals(Duration.ofMinutes(5), relay.getRetryBackoff(40));
+    }
+
+    @Test
+    @DisplayName("relayBatch - Unreadable entry quarantined; the rest of its batch published")
+    void assertRelayBatch_UnreadableQuarantined() {
+        // Arrange
+        List<MessageDelivery> saved = recordDeliveries(1);
+        SolCommOutboxEntry unreadable = new SolCommOutboxEntry(-1L, "{not json", new Date(0));
+        unreadable.setAvailableAt(new Date(0));
+        outboxRepo.save(unreadable);
+        when(publisher.publish(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Act
+        int claimed = relay.relayBatch();
+
+        // Assert
+        assertEquals(2, claimed);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SolCommunication>> sent = ArgumentCaptor.forClass(List.class);
+        verify(publisher).publish(sent.capture());
+        assertEquals(List.of(saved.get(0).getId()),
+                sent.getValue().stream().map(SolCommunication::getCommunicationId).toList());
+        assertEquals(0, relay.getUnpublishedCount());
+        assertEquals(1, relay.getQuarantinedCount());
+        assertNotNull(outboxRepo.findById(unreadable.getId()).orElseThrow().getQuarantineReason());
+    }
+
+    @Test
+    @DisplayName("relayBatch - Communications of deliveries pending their send window held")
+    void assertRelayBatch_DeferredHeld() {
+        // Arrange
+        deliveryService.recordOutboundDeliveries(List.of(buildOutbound(0, MessageDelivery.Status.PT)));
+
+        // Act
+        int claimed = relay.relayBatch();
+
+        // Assert
+        assertEquals(0, claimed);
+        verify(publisher, never()).publish(anyList());
+        assertEquals(1, relay.getUnpublishedCount());
+    }
+
+    private List<MessageDelivery> recordDeliveries(int count) {
+        return deliveryService.recordOutboundDeliveries(IntStream.range(0, count)
+                .mapToObj(i -> buildOutbound(i, MessageDelivery.Status.PD))
+                .toList());
+    }
+
+    private OutboundDelivery buildOutbound(int i, MessageDelivery.Status status) {
+        MessageDelivery delivery = new MessageDelivery();
+        delivery.setMessageTemplateId(180L + i);
+        delivery.setStatus(status);
+        delivery.setRecipientAddress("relayed@somewhere.com");
+        delivery.setIdMetadataKey("order.id");
+        delivery.setIdMetadataValue("5");
+        SolCommunication communication = new SolCommunication();
+        communication.setRecipient("relayed@somewhere.com");
+        return new OutboundDelivery(delivery, communication);
+    }
+}
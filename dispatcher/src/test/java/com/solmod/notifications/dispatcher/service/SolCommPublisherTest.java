@@ -0,0 +1,155 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.dispatcher.domain.SolCommunication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SolCommPublisherTest {
+
+    private final List<List<SolCommunication>> sent = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<Void>> acks = new CopyOnWriteArrayList<>();
+    private volatile boolean acknowledging;
+    private SolCommPublisher publisher;
+
+    @AfterEach
+    void teardown() throws InterruptedException {
+        acknowledgeAll();
+        publisher.close();
+    }
+
+    @Test
+    @DisplayName("publish - Full batches sent straight away, the remainder once it has lingered")
+    void assertPublish_BatchedBySizeAndTime() throws InterruptedException {
+        // Arrange
+        publisher = start(1_000, 100, Duration.ofMillis(200), 4, true);
+
+        // Act
+        CompletableFuture<Void> acknowledged = publisher.publish(communications(250));
+
+        // Assert
+        awaitSent(3);
+        assertEquals(List.of(100, 100, 50), sent.stream().map(List::size).toList());
+        awaitPublished(250);
+        assertEquals(0, publisher.getFailedCount());
+        assertDoesNotThrow(() -> acknowledged.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("publish - Completed only once every batch holding its communications is acknowledged")
+    void assertPublish_CompletedOnAcknowledgement() throws InterruptedException {
+        // Arrange
+        publisher = start(100, 10, Duration.ofMillis(10), 4, false);
+
+        // Act
+        CompletableFuture<Void> acknowledged = publisher.publish(communications(15));
+        awaitSent(2);
+        acks.get(0).complete(null);
+
+        // Assert
+        assertFalse(acknowledged.isDone());
+        acks.get(1).complete(null);
+        assertDoesNotThrow(() -> acknowledged.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("publish - Waits for room once batches in flight are unacknowledged and the buffer is full")
+    void assertPublish_Backpressure() throws InterruptedException {
+        // Arrange: one batch in flight, unacknowledged; the next batch waiting to go, and a buffer of 10
+        publisher = start(10, 10, Duration.ofMillis(10), 1, false);
+        publisher.publish(communications(20));
+        awaitSent(1);
+
+        CountDownLatch published = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            publisher.publish(communications(20));
+            published.countDown();
+        });
+
+        // Act
+        producer.start();
+
+        // Assert
+        assertFalse(published.await(300, TimeUnit.MILLISECONDS));
+        acknowledgeAll();
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("publish - Completed exceptionally when a batch is rejected; its communications counted as failed")
+    void assertPublish_RejectedCounted() throws InterruptedException {
+        // Arrange
+        publisher = new SolCommPublisher(communications -> CompletableFuture.failedFuture(new IllegalStateException("Down")),
+                100, 10, Duration.ofMillis(10), 2);
+        publisher.start();
+
+        // Act
+        CompletableFuture<Void> acknowledged = publisher.publish(communications(25));
+        publisher.close();
+
+        // Assert
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> acknowledged.get(5, TimeUnit.SECONDS));
+        assertEquals("Down", rejected.getCause().getMessage());
+        assertEquals(25, publisher.getFailedCount());
+        assertEquals(0, publisher.getPublishedCount());
+    }
+
+    private SolCommPublisher start(int capacity, int batchSize, Duration linger, int maxInFlight, boolean acknowledge) {
+        acknowledging = acknowledge;
+        SolCommPublisher result = new SolCommPublisher(communications -> {
+            sent.add(communications);
+            CompletableFuture<Void> ack = new CompletableFuture<>();
+            acks.add(ack);
+            if (acknowledging) {
+                ack.complete(null);
+            }
+            return ack;
+        }, capacity, batchSize, linger, maxInFlight);
+        result.start();
+        return result;
+    }
+
+    // Acknowledge the batches in flight, and every batch sent from now on
+    private void acknowledgeAll() {
+        acknowledging = true;
+        acks.forEach(ack -> ack.complete(null));
+    }
+
+    private void awaitSent(int batches) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (sent.size() < batches && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void awaitPublished(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (publisher.getPublishedCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, publisher.getPublishedCount());
+    }
+
+    private List<SolCommunication> communications(int count) {
+        return LongStream.range(0, count).mapToObj(id -> {
+            SolCommunication communication = new SolCommunication();
+            communication.setCommunicationId(id);
+            return communication;
+        }).toList();
+    }
+}
@@ -0,0 +1,101 @@
+package com.solmod.notifications.dispatcher.service;
+
+import com.solmod.notifications.admin.domain.RecipientSender;
+import com.solmod.notifications.admin.domain.UserDeliveryPreferencesChangedEvent;
+import com.solmod.notifications.admin.service.UserDeliveryPreferencesService;
+import com.solmod.notifications.admin.web.model.UserDeliveryPreferencesDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.openMocks;
+
+class UserDeliveryPreferencesCacheTest {
+
+    @Mock
+    UserDeliveryPreferencesService preferencesService;
+
+    UserDeliveryPreferencesCache cache;
+
+    @BeforeEach
+    void setup() {
+        openMocks(this);
+        cache = new UserDeliveryPreferencesCache(preferencesService, 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    @DisplayName("getDeliveryPreferences - Preferences looked up once")
+    void getDeliveryPreferences_Cached() {
+        // Arrange
+        UserDeliveryPreferencesDTO prefs = new UserDeliveryPreferencesDTO();
+        when(preferencesService.getDeliveryPreferences("someone@somewhere.com", "email")).thenReturn(prefs);
+
+        // Act
+        cache.getDeliveryPreferences("someone@somewhere.com", "email");
+        UserDeliveryPreferencesDTO result = cache.getDeliveryPreferences("someone@somewhere.com", "email");
+
+        // Assert
+        assertSame(prefs, result);
+        verify(preferencesService, times(1)).getDeliveryPreferences("someone@somewhere.com", "email");
+    }
+
+    @Test
+    @DisplayName("getDeliveryPreferences - Absence of preferences looked up once")
+    void getDeliveryPreferences_AbsenceCached() {
+        // Act
+        cache.getDeliveryPreferences("someone@somewhere.com", "email");
+        UserDeliveryPreferencesDTO result = cache.getDeliveryPreferences("someone@somewhere.com", "email");
+
+        // Assert
+        assertNull(result);
+        verify(preferencesService, times(1)).getDeliveryPreferences("someone@somewhere.com", "email");
+    }
+
+    @Test
+    @DisplayName("getDeliveryPreferences - Only pairs not cached looked up, together")
+    void getDeliveryPreferences_BulkLoadsMissing() {
+        // Arrange
+        RecipientSender email = new RecipientSender("someone@somewhere.com", "email");
+        RecipientSender sms = new RecipientSender("someone@somewhere.com", "sms");
+        UserDeliveryPreferencesDTO prefs = new UserDeliveryPreferencesDTO();
+        cache.getDeliveryPreferences("someone@somewhere.com", "email");
+        when(preferencesService.getDeliveryPreferences(Set.of(sms))).thenReturn(Map.of(sms, prefs));
+
+        // Act
+        Map<RecipientSender, UserDeliveryPreferencesDTO> result = cache.getDeliveryPreferences(List.of(email, sms));
+        cache.getDeliveryPreferences(List.of(email, sms));
+
+        // Assert
+        assertEquals(Map.of(sms, prefs), result);
+        verify(preferencesService, times(1)).getDeliveryPreferences(Set.of(sms));
+    }
+
+    @Test
+    @DisplayName("onUserDeliveryPreferencesChanged - Only the changed preferences looked up again")
+    void onUserDeliveryPreferencesChanged_Invalidated() {
+        // Arrange
+        cache.getDeliveryPreferences("someone@somewhere.com", "email");
+        cache.getDeliveryPreferences("someone@somewhere.com", "sms");
+
+        // Act
+        cache.onUserDeliveryPreferencesChanged(new UserDeliveryPreferencesChangedEvent("someone@somewhere.com", "email"));
+        cache.getDeliveryPreferences("someone@somewhere.com", "email");
+        cache.getDeliveryPreferences("someone@somewhere.com", "sms");
+
+        // Assert
+        verify(preferencesService, times(2)).getDeliveryPreferences("someone@somewhere.com", "email");
+        verify(preferencesService, times(1)).getDeliveryPreferences("someone@somewhere.com", "sms");
+    }
+}
@@ -0,0 +1,68 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import com.solmod.notifications.admin.web.model.DeliveryCriterionSetDTO;
+import com.solmod.notifications.dispatcher.domain.MessageTemplate;
+import com.solmod.notifications.dispatcher.domain.SolMessage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static com.solmod.notifications.dispatcher.service.domain.DeliveryPermission.Verdict.SEND_NEVER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class CriteriaIndexTest {
+
+    @Test
+    @DisplayName("evaluate - Templates sharing criteria qualify or not together, templates without criteria always qualify")
+    void assertSharedCriteriaEvaluated() {
+        // Arrange
+        CriteriaIndex index = new CriteriaIndex(Set.of(
+                buildTemplate(1L, Map.of("region", "east", "tier", "gold")),
+                buildTemplate(2L, Map.of("region", "east")),
+                buildTemplate(3L, Map.of("region", "west")),
+                buildTemplate(4L, Map.of())));
+        SolMessage solMessage = new SolMessage();
+        solMessage.setData(Map.of("region", "east", "tier", "silver"));
+
+        // Act
+        Map<Long, DeliveryPermission> result = index.evaluate(solMessage);
+
+        // Assert
+        assertEquals(SEND_NEVER, result.get(1L).getVerdict());
+        assertEquals("Message metadata has incorrect value for template criterion tier", result.get(1L).getMessage());
+        assertEquals(DeliveryPermission.SEND_NOW_PERMISSION, result.get(2L));
+        assertEquals("Message metadata has incorrect value for template criterion region", result.get(3L).getMessage());
+        assertEquals(DeliveryPermission.SEND_NOW_PERMISSION, result.get(4L));
+    }
+
+    @Test
+    @DisplayName("evaluate - Each distinct metadata key looked up once, however many templates refer to it")
+    void assertKeyLookedUpOnce() {
+        // Arrange
+        CriteriaIndex index = new CriteriaIndex(Set.of(
+                buildTemplate(1L, Map.of("region", "east")),
+                buildTemplate(2L, Map.of("region", "west")),
+                buildTemplate(3L, Map.of("region", "north", "tier", "gold"))));
+        SolMessage solMessage = spy(new SolMessage());
+        solMessage.setData(Map.of("tier", "gold"));
+
+        // Act
+        Map<Long, DeliveryPermission> result = index.evaluate(solMessage);
+
+        // Assert
+        verify(solMessage, times(1)).getMetadata("region");
+        assertEquals("Message metadata missing template criterion region", result.get(3L).getMessage());
+    }
+
+    private MessageTemplate buildTemplate(Long id, Map<String, String> criteria) {
+        MessageTemplate template = new MessageTemplate();
+        template.setMessageTemplateID(id);
+        DeliveryCriterionSetDTO criteriaSet = new DeliveryCriterionSetDTO();
+        criteriaSet.setCriteria(criteria);
+        template.setDeliveryCriteria(criteriaSet);
+        return template;
+    }
+}
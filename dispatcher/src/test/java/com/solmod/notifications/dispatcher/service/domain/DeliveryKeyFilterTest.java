@@ -0,0 +1,66 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import com.solmod.notifications.dispatcher.repository.domain.DeliveryKey;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeliveryKeyFilterTest {
+
+    @Test
+    @DisplayName("mightContain - Every key added is present")
+    void assertMightContain_AddedKeysPresent() {
+        // Arrange
+        DeliveryKeyFilter filter = new DeliveryKeyFilter(10_000, 0.01);
+        for (long i = 0; i < 10_000; i++) {
+            filter.add(DeliveryKey.of(i, "someone@somewhere.com", "order.id", "5"));
+        }
+
+        // Act & Assert
+        for (long i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(DeliveryKey.of(i, "someone@somewhere.com", "order.id", "5")));
+        }
+    }
+
+    @Test
+    @DisplayName("mightContain - Keys not added are mostly absent, at about the configured rate")
+    void assertMightContain_FalsePositiveRate() {
+        // Arrange
+        DeliveryKeyFilter filter = new DeliveryKeyFilter(10_000, 0.01);
+        for (long i = 0; i < 10_000; i++) {
+            filter.add(DeliveryKey.of(i, "someone@somewhere.com", "order.id", "5"));
+        }
+
+        // Act
+        int falsePositives = 0;
+        for (long i = 0; i < 10_000; i++) {
+            if (filter.mightContain(DeliveryKey.of(i, "someone.else@somewhere.com", "order.id", "5"))) {
+                falsePositives++;
+            }
+        }
+
+        // Assert
+        assertTrue(falsePositives < 200, "False positives: " + falsePositives);
+        assertTrue(filter.getFalsePositiveRate() < 0.02, "Estimated rate: " + filter.getFalsePositiveRate());
+    }
+
+    @Test
+    @DisplayName("mightContain - Nothing present in an empty filter")
+    void assertMightContain_Empty() {
+        DeliveryKeyFilter filter = new DeliveryKeyFilter(100, 0.01);
+
+        assertFalse(filter.mightContain(DeliveryKey.of(1L, "someone@somewhere.com", "order.id", "5")));
+        assertEquals(0, filter.getFalsePositiveRate());
+    }
+
+    @Test
+    @DisplayName("DeliveryKeyFilter - Sizing out of range refused")
+    void assertConstructor_InvalidSizing() {
+        assertThrows(IllegalArgumentException.class, () -> new DeliveryKeyFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new DeliveryKeyFilter(100, 1));
+    }
+}
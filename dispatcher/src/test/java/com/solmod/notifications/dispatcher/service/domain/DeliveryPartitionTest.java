@@ -0,0 +1,45 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeliveryPartitionTest {
+
+    @Test
+    @DisplayName("of - Bound read from the information schema's description, MAXVALUE unbounded")
+    void assertOf_Described() {
+        assertEquals(LocalDateTime.of(2026, 11, 1, 0, 0), DeliveryPartition.of("p_initial", "'2026-11-01 00:00:00'").lessThan());
+        assertEquals(LocalDateTime.of(2026, 11, 1, 0, 0), DeliveryPartition.of("p_initial", "'2026-11-01'").lessThan());
+        assertTrue(DeliveryPartition.of("p_future", "MAXVALUE").isUnbounded());
+    }
+
+    @Test
+    @DisplayName("of - Names that aren't plain identifiers refused")
+    void assertOf_InvalidName() {
+        assertThrows(IllegalArgumentException.class, () -> DeliveryPartition.of("p1; DROP TABLE x", "MAXVALUE"));
+    }
+
+    @Test
+    @DisplayName("ofMonth - Named for the month, bounded by the start of the next")
+    void assertOfMonth() {
+        DeliveryPartition partition = DeliveryPartition.ofMonth(YearMonth.of(2026, 12));
+
+        assertEquals("p202612", partition.name());
+        assertEquals("PARTITION p202612 VALUES LESS THAN ('2027-01-01 00:00:00')", partition.toDefinition());
+    }
+
+    @Test
+    @DisplayName("isExpired - Expired only once its bound is no later than the cutoff; never when unbounded")
+    void assertIsExpired() {
+        DeliveryPartition partition = DeliveryPartition.ofMonth(YearMonth.of(2026, 12));
+
+        assertTrue(partition.isExpired(LocalDateTime.of(2027, 1, 1, 0, 0)));
+        assertFalse(partition.isExpired(LocalDateTime.of(2026, 12, 31, 23, 59)));
+        assertFalse(DeliveryPartition.of("p_future", "MAXVALUE").isExpired(LocalDateTime.MAX));
+    }
+}
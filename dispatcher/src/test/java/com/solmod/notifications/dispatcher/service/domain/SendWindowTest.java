@@ -0,0 +1,65 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SendWindowTest {
+
+    @Test
+    @DisplayName("isOpen - Both hours of the window are inclusive")
+    void assertIsOpen_HoursInclusive() {
+        SendWindow window = new SendWindow(ZoneOffset.UTC, 8, 18);
+
+        assertFalse(window.isOpen(Instant.parse("2024-03-12T07:59:59Z")));
+        assertTrue(window.isOpen(Instant.parse("2024-03-12T08:00:00Z")));
+        assertTrue(window.isOpen(Instant.parse("2024-03-12T18:59:59Z")));
+        assertFalse(window.isOpen(Instant.parse("2024-03-12T19:00:00Z")));
+    }
+
+    @Test
+    @DisplayName("isOpen - A window without both hours is always open")
+    void assertIsOpen_AlwaysOpen() {
+        SendWindow window = new SendWindow(ZoneOffset.UTC, 8, null);
+
+        assertTrue(window.isAlwaysOpen());
+        assertTrue(window.isOpen(Instant.parse("2024-03-12T03:00:00Z")));
+    }
+
+    @Test
+    @DisplayName("nextOpening - Same day when before the window, the next day when after it")
+    void assertNextOpening_SameOrNextDay() {
+        SendWindow window = new SendWindow(ZoneOffset.UTC, 8, 18);
+
+        assertEquals(Instant.parse("2024-03-12T08:00:00Z"), window.nextOpening(Instant.parse("2024-03-12T05:30:00Z")));
+        assertEquals(Instant.parse("2024-03-13T08:00:00Z"), window.nextOpening(Instant.parse("2024-03-12T21:30:00Z")));
+        assertEquals(Instant.parse("2024-03-12T12:00:00Z"), window.nextOpening(Instant.parse("2024-03-12T12:00:00Z")));
+    }
+
+    @Test
+    @DisplayName("nextOpening - A window spanning midnight opens at its start hour")
+    void assertNextOpening_SpansMidnight() {
+        SendWindow window = new SendWindow(ZoneOffset.UTC, 22, 6);
+
+        assertTrue(window.isOpen(Instant.parse("2024-03-12T23:00:00Z")));
+        assertTrue(window.isOpen(Instant.parse("2024-03-12T06:30:00Z")));
+        assertEquals(Instant.parse("2024-03-12T22:00:00Z"), window.nextOpening(Instant.parse("2024-03-12T07:00:00Z")));
+    }
+
+    @Test
+    @DisplayName("nextOpening - Evaluated in the window's zone, opening after a daylight saving gap")
+    void assertNextOpening_DaylightSavingGap() {
+        SendWindow window = new SendWindow(ZoneId.of("America/New_York"), 2, 5);
+
+        // 2024-03-10 02:00 does not exist in New York; clocks move from 02:00 EST to 03:00 EDT
+        assertEquals(Instant.parse("2024-03-10T07:00:00Z"), window.nextOpening(Instant.parse("2024-03-10T05:00:00Z")));
+        assertTrue(window.isOpen(Instant.parse("2024-03-10T07:00:00Z")));
+    }
+}
@@ -0,0 +1,97 @@
+package com.solmod.notifications.dispatcher.service.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    @DisplayName("advance - Ids released once their deadline is reached, not before")
+    void assertAdvance_ReleasedAtDeadline() {
+        // Arrange
+        TimingWheel wheel = new TimingWheel(1000, 8, 3, START);
+        wheel.add(1, START + 5_000);
+        wheel.add(2, START + 5_500);
+        List<Long> released = new ArrayList<>();
+
+        // Act & Assert
+        wheel.advance(START + 4_999, released::add);
+        assertTrue(released.isEmpty());
+
+        wheel.advance(START + 5_000, released::add);
+        assertEquals(List.of(1L), released);
+
+        // Deadlines between ticks are rounded up to the next
+        wheel.advance(START + 5_999, released::add);
+        assertEquals(List.of(1L), released);
+        wheel.advance(START + 6_000, released::add);
+        assertEquals(List.of(1L, 2L), released);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("advance - Ids already overdue when added released on the next advance")
+    void assertAdvance_Overdue() {
+        // Arrange
+        TimingWheel wheel = new TimingWheel(1000, 8, 3, START);
+        wheel.add(1, START - 60_000);
+        List<Long> released = new ArrayList<>();
+
+        // Act
+        wheel.advance(START, released::add);
+
+        // Assert
+        assertEquals(List.of(1L), released);
+    }
+
+    @Test
+    @DisplayName("advance - Ids cascade through every level, including deadlines beyond the top level's span")
+    void assertAdvance_Cascades() {
+        // Arrange: 8 buckets of 3 levels span 512 ticks
+        TimingWheel wheel = new TimingWheel(1000, 8, 3, START);
+        Random random = new Random(7);
+        long[] deadlines = new long[2_000];
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = START + random.nextInt(2_000_000);
+            wheel.add(i, deadlines[i]);
+        }
+        assertEquals(deadlines.length, wheel.size());
+
+        // Act & Assert: every id released within a tick after its deadline
+        for (long now = START; now <= START + 2_001_000; now += 1_000) {
+            long at = now;
+            wheel.advance(now, id -> {
+                long deadline = deadlines[(int) id];
+                assertTrue(deadline <= at && deadline > at - 1_000, "Id " + id + " due " + deadline + " at " + at);
+            });
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("advance - Advancing by more than a tick releases all ids due in between")
+    void assertAdvance_CatchesUp() {
+        // Arrange
+        TimingWheel wheel = new TimingWheel(1000, 8, 3, START);
+        for (int i = 0; i < 100; i++) {
+            wheel.add(i, START + 1_000L * (i * 7));
+        }
+        List<Long> released = new ArrayList<>();
+
+        // Act
+        wheel.advance(START + 350_000, released::add);
+
+        // Assert
+        assertEquals(51, released.size());
+        assertEquals(49, wheel.size());
+    }
+}